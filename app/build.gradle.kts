@@ -33,6 +33,12 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        unitTests.all {
+            // IndexCodecBenchmark only runs with -Pbenchmark
+            it.systemProperty("televault.benchmark", project.hasProperty("benchmark"))
+        }
+    }
     packaging {
         resources {
             excludes += setOf(
@@ -82,5 +88,6 @@ dependencies {
     implementation("com.github.bumptech.glide:glide:4.16.0")
     annotationProcessor("com.github.bumptech.glide:compiler:4.16.0")
     implementation(libs.photoview)
+    implementation(libs.viewpager2)
 
 }
\ No newline at end of file
@@ -1,6 +1,15 @@
 package com.moorixlabs.televault;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CloudFile {
+
+    /**
+     * Largest single-document image fetched whole as its own preview when it has no thumbnail.
+     */
+    public static final long MAX_FULL_PREVIEW_SIZE = 1024 * 1024;
+
     private String id;
     private String name;
     private long size;
@@ -10,6 +19,9 @@ public class CloudFile {
     private int uploadProgress;
     private String fileId;      // Telegram file_id
     private String messageId;   // Telegram message_id
+    private String thumbFileId; // Telegram file_id of the thumbnail sent with it, empty if none
+    private List<FilePart> parts = new ArrayList<>(); // Part manifest for chunked files
+    private FileCategory category; // Derived from the name on first use
 
     // Constructor for new files (without Telegram IDs)
     public CloudFile(String id, String name, long size, long date, String path, boolean uploaded) {
@@ -22,6 +34,7 @@ public class CloudFile {
         this.uploadProgress = 0;
         this.fileId = "";
         this.messageId = "";
+        this.thumbFileId = "";
     }
 
     // Constructor for uploaded files (with Telegram IDs)
@@ -36,6 +49,17 @@ public class CloudFile {
         this.uploadProgress = uploaded ? 100 : 0;
         this.fileId = fileId != null ? fileId : "";
         this.messageId = messageId != null ? messageId : "";
+        this.thumbFileId = "";
+    }
+
+    // Copy, e.g. for stores that must not share instances with the UI
+    public CloudFile(CloudFile other) {
+        this(other.id, other.name, other.size, other.date, other.path,
+                other.uploaded, other.fileId, other.messageId);
+        this.uploadProgress = other.uploadProgress;
+        this.parts = new ArrayList<>(other.parts);
+        this.thumbFileId = other.thumbFileId;
+        this.category = other.category;
     }
 
     // Getters
@@ -75,6 +99,45 @@ public class CloudFile {
         return messageId;
     }
 
+    /**
+     * Telegram file_id of the small JPEG sent along with an image or video;
+     * empty for other files and for uploads made before thumbnails were sent.
+     */
+    public String getThumbFileId() {
+        return thumbFileId;
+    }
+
+    public boolean hasThumbnail() {
+        return !thumbFileId.isEmpty();
+    }
+
+    /**
+     * Part manifest for files stored as several Telegram documents.
+     * Empty when the file was uploaded as a single document.
+     */
+    public List<FilePart> getParts() {
+        return parts;
+    }
+
+    public boolean isChunked() {
+        return !parts.isEmpty();
+    }
+
+    /**
+     * All Telegram message ids backing this file, in part order.
+     */
+    public List<String> getMessageIds() {
+        List<String> messageIds = new ArrayList<>();
+        if (isChunked()) {
+            for (FilePart part : parts) {
+                messageIds.add(part.getMessageId());
+            }
+        } else if (messageId != null && !messageId.isEmpty()) {
+            messageIds.add(messageId);
+        }
+        return messageIds;
+    }
+
     // Setters
     public void setUploaded(boolean uploaded) {
         this.uploaded = uploaded;
@@ -92,7 +155,22 @@ public class CloudFile {
         this.messageId = messageId != null ? messageId : "";
     }
 
+    public void setThumbFileId(String thumbFileId) {
+        this.thumbFileId = thumbFileId != null ? thumbFileId : "";
+    }
+
+    public void setParts(List<FilePart> parts) {
+        this.parts = parts != null ? new ArrayList<>(parts) : new ArrayList<>();
+    }
+
     // Utility methods
+    public FileCategory getCategory() {
+        if (category == null) {
+            category = FileCategory.of(name);
+        }
+        return category;
+    }
+
     public String getFileExtension() {
         int lastDot = name.lastIndexOf('.');
         if (lastDot > 0 && lastDot < name.length() - 1) {
@@ -109,6 +187,22 @@ public class CloudFile {
         return uploaded && fileId != null && !fileId.isEmpty();
     }
 
+    /**
+     * Telegram file_id of an image to show as this file's preview: its
+     * thumbnail, or the file itself if it is a small image.
+     *
+     * @return the file_id, or null if there is nothing to fetch
+     */
+    public String getPreviewFileId() {
+        if (!uploaded) return null;
+        if (hasThumbnail()) return thumbFileId;
+        if (canDownload() && !isChunked() && size <= MAX_FULL_PREVIEW_SIZE
+                && getCategory() == FileCategory.IMAGE) {
+            return fileId;
+        }
+        return null;
+    }
+
     @Override
     public String toString() {
         return "CloudFile{" +
@@ -118,6 +212,7 @@ public class CloudFile {
                 ", uploaded=" + uploaded +
                 ", fileId='" + fileId + '\'' +
                 ", messageId='" + messageId + '\'' +
+                ", parts=" + parts.size() +
                 '}';
     }
 }
\ No newline at end of file
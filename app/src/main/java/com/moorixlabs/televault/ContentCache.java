@@ -0,0 +1,256 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloaded file content kept under the app cache dir, so opening,
+ * playing or sharing a file again needs no network. Keyed by Telegram
+ * file_id; each file sits in a folder of its own under its real name, which
+ * is what a share target sees.
+ *
+ * The total size is kept under a budget from {@link SettingsUtils} by
+ * evicting the least recently used files. Use order survives restarts as the
+ * folders' modification times. Downloads in progress live in a staging
+ * folder that does not count against the budget.
+ */
+public final class ContentCache {
+
+    private static final String TAG = "ContentCache";
+    private static final String FOLDER = "content";
+    private static final String STAGING_FOLDER = ".staging";
+    // Partial downloads not resumed for this long are dropped
+    private static final long STALE_STAGING_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static volatile ContentCache instance;
+
+    private static final class Entry {
+        final File file;
+        final long size;
+
+        Entry(File file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    private final File root;
+    private final File stagingFolder;
+    // Least recently used first
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long totalBytes;
+    private boolean loaded;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong evictedBytes = new AtomicLong();
+
+    public static ContentCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ContentCache.class) {
+                if (instance == null) {
+                    Context appContext = context.getApplicationContext();
+                    instance = new ContentCache(new File(appContext.getCacheDir(), FOLDER),
+                            SettingsUtils.getContentCacheBytes(appContext));
+                }
+            }
+        }
+        return instance;
+    }
+
+    ContentCache(File root, long maxBytes) {
+        this.root = root;
+        this.stagingFolder = new File(root, STAGING_FOLDER);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The cached content of {@code fileId}, marked as just used; null on a miss.
+     */
+    public synchronized File get(String fileId) {
+        load();
+        Entry entry = entries.get(keyOf(fileId));
+        if (entry != null && !entry.file.isFile()) {
+            // Cleared behind our back, e.g. by the system under storage pressure
+            remove(keyOf(fileId), entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        entry.file.getParentFile().setLastModified(System.currentTimeMillis());
+        return entry.file;
+    }
+
+    /**
+     * Moves a finished download into the cache, replacing any earlier copy,
+     * and evicts what no longer fits. The newest file is always kept, even
+     * when it alone is over budget.
+     *
+     * @return where the content now is; {@code download} itself if it could not be moved
+     */
+    public synchronized File put(String fileId, String fileName, File download) {
+        load();
+        String key = keyOf(fileId);
+        Entry previous = entries.get(key);
+        if (previous != null) remove(key, previous);
+
+        File folder = new File(root, key);
+        File target = new File(folder, safeName(fileName));
+        if (!folder.isDirectory() && !folder.mkdirs() || !download.renameTo(target)) {
+            Log.w(TAG, "Could not move " + download + " into the cache");
+            return download;
+        }
+        folder.setLastModified(System.currentTimeMillis());
+        entries.put(key, new Entry(target, target.length()));
+        totalBytes += target.length();
+        trim();
+        return target;
+    }
+
+    /**
+     * Drops the cached content of {@code fileId}, if any.
+     */
+    public synchronized void remove(String fileId) {
+        load();
+        String key = keyOf(fileId);
+        Entry entry = entries.get(key);
+        if (entry != null) remove(key, entry);
+    }
+
+    /**
+     * Where downloads bound for the cache are written until {@link #put}.
+     */
+    public File getStagingFolder() {
+        if (!stagingFolder.isDirectory() && !stagingFolder.mkdirs()) {
+            Log.w(TAG, "Could not create " + stagingFolder);
+        }
+        return stagingFolder;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        if (loaded) trim();
+    }
+
+    public synchronized long getTotalBytes() {
+        load();
+        return totalBytes;
+    }
+
+    public String getMetricsSummary() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        synchronized (this) {
+            return String.format(Locale.US,
+                    "content cache: %d files, %d/%d bytes, %d hits of %d lookups (%.0f%%), %d evicted (%d bytes)",
+                    entries.size(), totalBytes, maxBytes, hitCount, lookups,
+                    lookups == 0 ? 0.0 : 100.0 * hitCount / lookups, evictions.get(), evictedBytes.get());
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && entries.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            it.remove();
+            deleteEntry(eldest.getValue());
+            totalBytes -= eldest.getValue().size;
+            evictions.incrementAndGet();
+            evictedBytes.addAndGet(eldest.getValue().size);
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        totalBytes -= entry.size;
+        deleteEntry(entry);
+    }
+
+    /**
+     * Reads what earlier runs left, oldest use first. Runs once, under the lock.
+     */
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+
+        File[] folders = root.listFiles();
+        if (folders == null) return;
+        List<File> candidates = new ArrayList<>(Arrays.asList(folders));
+        candidates.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long now = System.currentTimeMillis();
+        for (File folder : candidates) {
+            if (folder.getName().equals(STAGING_FOLDER)) {
+                dropStaleStaging(folder, now);
+                continue;
+            }
+            File[] files = folder.listFiles();
+            if (files == null || files.length != 1 || !files[0].isFile()) {
+                // Not written by put(); nothing to serve from it
+                deleteRecursively(folder);
+                continue;
+            }
+            entries.put(folder.getName(), new Entry(files[0], files[0].length()));
+            totalBytes += files[0].length();
+        }
+        trim();
+    }
+
+    private static void dropStaleStaging(File folder, long now) {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (now - file.lastModified() > STALE_STAGING_MILLIS) {
+                deleteRecursively(file);
+            }
+        }
+    }
+
+    private static void deleteEntry(Entry entry) {
+        deleteRecursively(entry.file.getParentFile());
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete() && file.exists()) {
+            Log.w(TAG, "Could not delete " + file);
+        }
+    }
+
+    /**
+     * Folder name of a file_id. Telegram ids are already URL-safe base64; anything else is replaced.
+     */
+    static String keyOf(String fileId) {
+        StringBuilder key = new StringBuilder(fileId.length());
+        for (int i = 0; i < fileId.length(); i++) {
+            char c = fileId.charAt(i);
+            boolean safe = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_';
+            key.append(safe ? c : '_');
+        }
+        return key.toString();
+    }
+
+    private static String safeName(String fileName) {
+        String name = fileName.replace('/', '_').replace('\0', '_');
+        return name.isEmpty() || name.equals(".") || name.equals("..") ? "file" : name;
+    }
+}
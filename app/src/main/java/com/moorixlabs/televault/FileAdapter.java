@@ -4,6 +4,8 @@ import android.content.Context;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.text.format.DateUtils;
+import android.text.format.Formatter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,15 +19,27 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog; // Stays androidx
 import androidx.appcompat.app.AppCompatActivity; // NEW IMPORT
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.io.File; // NEW IMPORT
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.transition.Transition;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
 import android.content.Intent;
 import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider; // NEW IMPORT
@@ -33,10 +47,67 @@ import android.os.Handler; // NEW IMPORT
 import android.os.Looper; // NEW IMPORT
 import android.util.Log; // NEW IMPORT
 
-public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder> {
+/**
+ * Lists vault files. Callers hand over the whole list with
+ * {@link #submitList}; it is diffed against the shown one off the UI thread,
+ * so only rows that changed are rebound and moves animate. Register it as a
+ * {@link TransferProgress} listener for live upload progress; each frame's
+ * changes redraw just the progress of the rows concerned.
+ */
+public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder>
+        implements TransferProgress.Listener {
+
+    // Payload of a bind that only redraws upload progress
+    public static final Object PAYLOAD_PROGRESS = new Object();
+
+    private static final String TAG = "FileAdapter";
+
+    private static final DiffUtil.ItemCallback<FileRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<FileRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull FileRow oldRow, @NonNull FileRow newRow) {
+            return oldRow.id.equals(newRow.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull FileRow oldRow, @NonNull FileRow newRow) {
+            return oldRow.sameContent(newRow);
+        }
+    };
 
     private final Context context;
-    private final List<CloudFile> files;
+    private final AsyncListDiffer<FileRow> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    // CloudFile id -> adapter item id; ids are never reused while the adapter lives
+    private final Map<String, Long> stableIds = new HashMap<>();
+    // White-tinted icons, tinted once; each row gets its own drawable from the shared state
+    private final Map<FileIcon, Drawable.ConstantState> tintedIcons = new EnumMap<>(FileIcon.class);
+    // Order of the list, for the image viewer to page in; see FileSort
+    private int sortType = FileSort.NONE;
+    // Upload percentages as shown, built on first use
+    private final String[] progressTexts = new String[101];
+    private final RequestOptions thumbnailOptions = new RequestOptions()
+            .centerCrop()
+            .placeholder(R.drawable.ic_file_general)
+            .error(R.drawable.ic_file_general)
+            .override(200, 200);
+    // Previews from Telegram; both the download and the scaled tile stay on disk
+    private final RequestOptions remoteThumbnailOptions = thumbnailOptions.clone()
+            .diskCacheStrategy(DiskCacheStrategy.ALL);
+    private final RequestListener<Drawable> thumbnailListener = new RequestListener<Drawable>() {
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
+            Log.w(TAG, "Thumbnail failed to load: " + model, e);
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
+            return false;
+        }
+    };
+    // CloudFile id -> position in the shown list
+    private final Map<String, Integer> positions = new HashMap<>();
+    // CloudFile id -> its running upload, as of the last frame
+    private final Map<String, TransferProgress.Sample> transfers = new HashMap<>();
     private final SimpleDateFormat dateFormat;
     private final FileActionListener actionListener;
 
@@ -47,220 +118,184 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
         void onCancelUpload(CloudFile file, int position);
     }
 
-    public FileAdapter(Context context, List<CloudFile> files, FileActionListener actionListener) {
+    public FileAdapter(Context context, FileActionListener actionListener) {
         this.context = context;
-        this.files = files;
         this.actionListener = actionListener;
         this.dateFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.getDefault());
+        setHasStableIds(true);
+        differ.addListListener((previousList, currentList) -> {
+            positions.clear();
+            for (int i = 0; i < currentList.size(); i++) {
+                positions.put(currentList.get(i).id, i);
+            }
+        });
     }
 
-    @NonNull
-    @Override
-    public FileViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(context).inflate(R.layout.item_file, parent, false);
-        return new FileViewHolder(view);
+    /**
+     * The order the list was sorted in, for the image viewer to page in.
+     */
+    public void setSortType(int sortType) {
+        this.sortType = sortType;
     }
 
-    @Override
-    public void onBindViewHolder(@NonNull FileViewHolder holder, int position) {
-        CloudFile file = files.get(position);
-
-        // Set basic info
-        holder.tvFileName.setText(file.getName());
-        holder.tvFileSize.setText(FileUtils.formatFileSize(file.getSize()));
-        holder.tvFileDate.setText(dateFormat.format(new Date(file.getDate())));
-
-        // Set file icon/thumbnail
-        setFileIcon(holder.ivFileIcon, file);
+    /**
+     * Shows {@code files}, in their current state. The list is copied, so the
+     * caller may keep changing it.
+     */
+    public void submitList(List<CloudFile> files) {
+        List<FileRow> current = differ.getCurrentList();
+        List<FileRow> rows = new ArrayList<>(files.size());
+        for (CloudFile file : files) {
+            Integer position = positions.get(file.getId());
+            FileRow previous = position != null ? current.get(position) : null;
+            rows.add(FileRow.of(file, previous, itemIdOf(file.getId()), dateFormat));
+        }
+        differ.submitList(rows);
+    }
 
-        // Simple upload status - just show "Uploading..." or hide it
-        if (file.isUploaded()) {
-            // File is uploaded - hide upload status, show cloud status
-            holder.layoutUploadStatus.setVisibility(View.GONE);
-            holder.layoutCloudStatus.setVisibility(View.VISIBLE);
-        } else {
-            // File is uploading - show upload status, hide cloud status
-            holder.layoutCloudStatus.setVisibility(View.GONE);
-            holder.layoutUploadStatus.setVisibility(View.VISIBLE);
+    @Override
+    public void onTransferProgress(List<TransferProgress.Sample> changed) {
+        for (int i = 0; i < changed.size(); i++) {
+            TransferProgress.Sample sample = changed.get(i);
+            if (sample.finished) {
+                transfers.remove(sample.key);
+            } else {
+                transfers.put(sample.key, sample);
+            }
+            // Downloads and uploads of files not shown find no row
+            notifyProgress(sample.key);
         }
+    }
 
-        // Menu button click
-        holder.btnFileMenu.setOnClickListener(v -> showFileOptionsMenu(file, position));
+    /**
+     * Redraws the upload progress of the file's row, if it is shown.
+     */
+    public void notifyProgress(String cloudFileId) {
+        Integer position = positions.get(cloudFileId);
+        if (position != null) {
+            notifyItemChanged(position, PAYLOAD_PROGRESS);
+        }
+    }
 
-        // Item click - Show image viewer for uploaded images
+    @NonNull
+    @Override
+    public FileViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.item_file, parent, false);
+        FileViewHolder holder = new FileViewHolder(view);
+
+        // Set once per holder; they look the row up when clicked, as it
+        // may have moved since it was bound
+        holder.btnFileMenu.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                showFileOptionsMenu(getRow(position).file, position);
+            }
+        });
         holder.itemView.setOnClickListener(v -> {
-            if (file.isUploaded()) {
-                // Check if it's an image file
-                if (FileUtils.isImage(file.getName())) {
-                    showImageViewerDialog(file);
-
-                    // --- NEW BLOCK ---
-                } else if (FileUtils.isVideo(file.getName())) {
-                    showVideoViewerDialog(file);
-                    // --- END NEW BLOCK ---
-
-                } else {
-                    Toast.makeText(context, R.string.tap_for_options, Toast.LENGTH_SHORT).show();
-                }
-            } else {
-                Toast.makeText(context, "Uploading...", Toast.LENGTH_SHORT).show();
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                onFileClicked(getRow(position).file);
             }
         });
-
-        // Long click
         holder.itemView.setOnLongClickListener(v -> {
-            showFileOptionsMenu(file, position);
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) return false;
+            showFileOptionsMenu(getRow(position).file, position);
             return true;
         });
+        return holder;
     }
 
     @Override
-    public int getItemCount() {
-        return files.size();
+    public void onBindViewHolder(@NonNull FileViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && onlyProgress(payloads)) {
+            FileRow row = getRow(position);
+            row.bindProgressTo(holder, transfers.get(row.id));
+            return;
+        }
+        onBindViewHolder(holder, position);
     }
 
-    /**
-     * Loads a thumbnail if the file is an image/video.
-     * Otherwise, loads a specific icon based on the file type.
-     */
-    private void setFileIcon(ImageView imageView, CloudFile file) {
-        String fileName = file.getName();
-        String fileExtension = file.getFileExtension();
-        String localPath = file.getPath();
-        View iconContainer = (View) imageView.getParent();
-
-        // ADD LOGGING HERE - This will help you debug
-        android.util.Log.d("FileAdapter", "=== Loading File Icon ===");
-        android.util.Log.d("FileAdapter", "File Name: " + fileName);
-        android.util.Log.d("FileAdapter", "Extension: " + fileExtension);
-        android.util.Log.d("FileAdapter", "Local Path: " + localPath);
-        android.util.Log.d("FileAdapter", "Is Image: " + FileUtils.isImage(fileName));
-        android.util.Log.d("FileAdapter", "Is Video: " + FileUtils.isVideo(fileName));
-
-        // 1. Handle Images and Videos with Thumbnails
-        if (localPath != null && !localPath.isEmpty() &&
-                (FileUtils.isImage(fileName) || FileUtils.isVideo(fileName))) {
-
-            android.util.Log.d("FileAdapter", "Loading THUMBNAIL for: " + fileName);
-
-            try {
-                // Clear background color to let the thumbnail fill the space
-                iconContainer.setBackgroundColor(Color.TRANSPARENT);
-
-                // Clear any color filter/tint
-                imageView.setColorFilter(null);
-
-                Uri fileUri = Uri.parse(localPath);
-
-                android.util.Log.d("FileAdapter", "Parsed URI: " + fileUri.toString());
-
-                Glide.with(context)
-                        .load(fileUri)
-                        .centerCrop()
-                        .placeholder(R.drawable.ic_file_general)
-                        .error(R.drawable.ic_file_general)
-                        .listener(new com.bumptech.glide.request.RequestListener<android.graphics.drawable.Drawable>() {
-                            @Override
-                            public boolean onLoadFailed(@androidx.annotation.Nullable com.bumptech.glide.load.engine.GlideException e, Object model, com.bumptech.glide.request.target.Target<android.graphics.drawable.Drawable> target, boolean isFirstResource) {
-                                android.util.Log.e("FileAdapter", "Glide FAILED to load: " + fileName);
-                                if (e != null) {
-                                    android.util.Log.e("FileAdapter", "Error: " + e.getMessage());
-                                    e.logRootCauses("FileAdapter");
-                                }
-                                return false;
-                            }
-
-                            @Override
-                            public boolean onResourceReady(android.graphics.drawable.Drawable resource, Object model, com.bumptech.glide.request.target.Target<android.graphics.drawable.Drawable> target, com.bumptech.glide.load.DataSource dataSource, boolean isFirstResource) {
-                                android.util.Log.d("FileAdapter", "Glide SUCCESS loading: " + fileName);
-                                return false;
-                            }
-                        })
-                        .override(200, 200) // Add size limit for better performance
-                        .into(imageView);
-                return;
-            } catch (Exception e) {
-                // If thumbnail loading fails, fall through to icon display
-                android.util.Log.e("FileAdapter", "Error loading thumbnail: " + e.getMessage());
-                e.printStackTrace();
-            }
-        } else {
-            android.util.Log.d("FileAdapter", "NOT a media file, showing ICON instead");
-        }
+    @Override
+    public void onBindViewHolder(@NonNull FileViewHolder holder, int position) {
+        FileRow row = getRow(position);
+        row.bindTo(holder, transfers.get(row.id));
+    }
 
-        // 2. Handle other file types with icons and colored backgrounds
-        int iconRes;
-        int colorRes;
+    @Override
+    public void onViewRecycled(@NonNull FileViewHolder holder) {
+        // Stops a preview download for a row that scrolled away
+        holder.clearThumbnail();
+    }
 
-        switch (fileExtension.toLowerCase()) {
-            case "pdf":
-                iconRes = R.drawable.ic_pdf;
-                colorRes = Color.parseColor("#F44336");
-                break;
-            case "doc":
-            case "docx":
-                iconRes = android.R.drawable.ic_menu_edit;
-                colorRes = Color.parseColor("#2196F3");
-                break;
-            case "xls":
-            case "xlsx":
-                iconRes = android.R.drawable.ic_menu_agenda;
-                colorRes = Color.parseColor("#4CAF50");
-                break;
-            case "ppt":
-            case "pptx":
-                iconRes = android.R.drawable.ic_menu_slideshow;
-                colorRes = Color.parseColor("#FF9800");
-                break;
-            case "mp3":
-            case "wav":
-            case "flac":
-            case "aac":
-                iconRes = android.R.drawable.ic_lock_silent_mode_off;
-                colorRes = Color.parseColor("#00BCD4");
-                break;
-            case "zip":
-            case "rar":
-            case "7z":
-                iconRes = android.R.drawable.ic_menu_save;
-                colorRes = Color.parseColor("#795548");
-                break;
-            case "apk":
-                iconRes = android.R.drawable.ic_menu_preferences;
-                colorRes = Color.parseColor("#4CAF50");
-                break;
-            default:
-                iconRes = R.drawable.ic_file_general;
-                colorRes = Color.parseColor("#607D8B");
-                break;
+    private Drawable getTintedIcon(FileIcon icon) {
+        Drawable.ConstantState state = tintedIcons.get(icon);
+        if (state == null) {
+            Drawable drawable = ContextCompat.getDrawable(context, icon.drawableRes).mutate();
+            drawable.setTint(Color.WHITE);
+            state = drawable.getConstantState();
+            // Drawables without shareable state are tinted per row
+            if (state == null) return drawable;
+            tintedIcons.put(icon, state);
         }
+        // Bounds, level and callback are per view; only the tinted state is shared
+        return state.newDrawable(context.getResources());
+    }
 
-        // Set the background color for the icon
-        iconContainer.setBackgroundColor(colorRes);
+    private String getProgressText(int progress) {
+        progress = Math.max(0, Math.min(100, progress));
+        String text = progressTexts[progress];
+        if (text == null) {
+            text = context.getString(R.string.upload_progress_format, progress);
+            progressTexts[progress] = text;
+        }
+        return text;
+    }
 
-        // Clear any tint first
-        imageView.setColorFilter(null);
+    private static boolean onlyProgress(List<Object> payloads) {
+        // Indexed, as an iterator would be an allocation per bind
+        for (int i = 0; i < payloads.size(); i++) {
+            if (payloads.get(i) != PAYLOAD_PROGRESS) return false;
+        }
+        return true;
+    }
 
-        // Load the icon drawable and apply white tint
-        Glide.with(context)
-                .load(iconRes)
-                .into(new com.bumptech.glide.request.target.CustomTarget<android.graphics.drawable.Drawable>() {
+    private void onFileClicked(CloudFile file) {
+        if (file.isUploaded()) {
+            // Check if it's an image file
+            if (FileUtils.isImage(file.getName())) {
+                showImageViewerDialog(file);
+            } else if (FileUtils.isVideo(file.getName())) {
+                showVideoViewerDialog(file);
+            } else {
+                Toast.makeText(context, R.string.tap_for_options, Toast.LENGTH_SHORT).show();
+            }
+        } else {
+            Toast.makeText(context, "Uploading...", Toast.LENGTH_SHORT).show();
+        }
+    }
 
-                    public void onResourceReady(@androidx.annotation.NonNull android.graphics.drawable.Drawable resource, @androidx.annotation.Nullable com.bumptech.glide.load.DataSource dataSource, @androidx.annotation.Nullable com.bumptech.glide.request.transition.Transition<? super android.graphics.drawable.Drawable> transition) {
-                        resource.setTint(Color.WHITE); // Apply white tint to icons only
-                        imageView.setImageDrawable(resource);
-                    }
+    private FileRow getRow(int position) {
+        return differ.getCurrentList().get(position);
+    }
 
-                    @Override
-                    public void onResourceReady(@NonNull Drawable resource, @Nullable Transition<? super Drawable> transition) {
+    @Override
+    public int getItemCount() {
+        return differ.getCurrentList().size();
+    }
 
-                    }
+    @Override
+    public long getItemId(int position) {
+        return getRow(position).itemId;
+    }
 
-                    @Override
-                    public void onLoadCleared(@androidx.annotation.Nullable android.graphics.drawable.Drawable placeholder) {
-                        imageView.setImageDrawable(placeholder);
-                    }
-                });
+    private long itemIdOf(String id) {
+        Long itemId = stableIds.get(id);
+        if (itemId == null) {
+            itemId = (long) stableIds.size();
+            stableIds.put(id, itemId);
+        }
+        return itemId;
     }
 
     private void showFileOptionsMenu(CloudFile file, int position) {
@@ -352,15 +387,17 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
     }
 
     /**
-     * Launch ImageViewerActivity
+     * Launch ImageViewerActivity as a gallery of the file's category, in the
+     * list's order, opened at {@code file}. The viewer reads the images from
+     * the repository; only where to start travels in the intent.
      */
     private void openImageViewer(CloudFile file) {
         Toast.makeText(context, R.string.starting_image_viewer, Toast.LENGTH_SHORT).show();
 
         Intent intent = new Intent(context, ImageViewerActivity.class);
-        intent.putExtra(ImageViewerActivity.EXTRA_FILE_ID, file.getFileId());
-        intent.putExtra(ImageViewerActivity.EXTRA_FILE_NAME, file.getName());
-        intent.putExtra(ImageViewerActivity.EXTRA_BOT_TOKEN, SettingsUtils.getBotToken(context));
+        intent.putExtra(ImageViewerActivity.EXTRA_CATEGORY, file.getCategory().name());
+        intent.putExtra(ImageViewerActivity.EXTRA_SORT_TYPE, sortType);
+        intent.putExtra(ImageViewerActivity.EXTRA_FILE_ID, file.getId());
         context.startActivity(intent);
     }
 
@@ -402,12 +439,13 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
         String botToken = SettingsUtils.getBotToken(context);
 
         // 2. Start the download
-        new Thread(() -> {
+        TransferManager.getInstance().submitDownload(TransferManager.Lane.INTERACTIVE, file.getSize(), () -> {
             TelegramDownloader downloader = new TelegramDownloader(
                     context.getApplicationContext(),
                     botToken,
                     file.getFileId(),
                     file.getName(),
+                    file.getParts(),
                     new TelegramDownloader.DownloadCallback() {
                         @Override
                         public void onDownloadProgress(int progress) {
@@ -441,10 +479,6 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
 
                                         // Use string from MainActivity
                                         context.startActivity(Intent.createChooser(viewIntent, context.getString(R.string.open_file)));
-
-                                        // 5. Schedule the temp file for deletion
-                                        scheduleTempFileDeletion(downloadedFile);
-
                                     } catch (Exception e) {
                                         Log.e("FileAdapter", "Error launching video player", e);
                                         // Use string from MainActivity
@@ -470,44 +504,149 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.FileViewHolder
                         }
                     }
             );
+            // Played again later without downloading; the player reads it as it goes
+            downloader.setContentCache(ContentCache.getInstance(context));
             downloader.download();
-        }).start();
-    }
-
-    /**
-     * Helper method to delete the temp file after a delay.
-     * (Copied from MainActivity)
-     */
-    private void scheduleTempFileDeletion(File file) {
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-            if (file != null && file.exists()) {
-                if (file.delete()) {
-                    android.util.Log.i("FileAdapter", "Temp video file deleted: " + file.getName());
-                } else {
-                    android.util.Log.w("FileAdapter", "Failed to delete temp video: " + file.getName());
-                }
-            }
-        }, 15000); // 15-second delay
+        });
     }
 
     // ==================== VIEW HOLDER ====================
 
-    static class FileViewHolder extends RecyclerView.ViewHolder {
+    class FileViewHolder extends RecyclerView.ViewHolder implements FileRow.Target {
         ImageView ivFileIcon;
-        TextView tvFileName, tvFileSize, tvFileDate, tvUploadProgress;
+        View iconContainer;
+        TextView tvFileName, tvFileSize, tvFileDate, tvUploadStatus, tvUploadProgress, tvTransferRate;
         View btnFileMenu;
         LinearLayout layoutUploadStatus, layoutCloudStatus;
         ProgressBar progressBarUpload;
+        // What the views show now; rebinding the same thing is skipped
+        // Local path or preview file_id; the CloudFile itself stays the same when its preview changes
+        private Object boundThumbnail;
+        private FileIcon boundIcon;
+        private long boundBytesPerSecond;
+        private long boundEtaSeconds = TransferProgress.UNKNOWN;
+        private boolean boundPaused;
 
         public FileViewHolder(@NonNull View itemView) {
             super(itemView);
             ivFileIcon = itemView.findViewById(R.id.ivFileIcon);
+            iconContainer = (View) ivFileIcon.getParent();
             tvFileName = itemView.findViewById(R.id.tvFileName);
             tvFileSize = itemView.findViewById(R.id.tvFileSize);
             tvFileDate = itemView.findViewById(R.id.tvFileDate);
             btnFileMenu = itemView.findViewById(R.id.btnFileMenu);
             layoutUploadStatus = itemView.findViewById(R.id.layoutUploadStatus);
             layoutCloudStatus = itemView.findViewById(R.id.layoutCloudStatus);
+            tvUploadStatus = itemView.findViewById(R.id.tvUploadStatus);
+            tvUploadProgress = itemView.findViewById(R.id.tvUploadProgress);
+            progressBarUpload = itemView.findViewById(R.id.progressBarUpload);
+            tvTransferRate = itemView.findViewById(R.id.tvTransferRate);
+        }
+
+        @Override
+        public void setName(String name) {
+            setTextIfChanged(tvFileName, name);
+        }
+
+        @Override
+        public void setSize(String size) {
+            setTextIfChanged(tvFileSize, size);
+        }
+
+        @Override
+        public void setDate(String date) {
+            setTextIfChanged(tvFileDate, date);
+        }
+
+        @Override
+        public void showThumbnail(Object model, Object fallback) {
+            Object key = model instanceof CloudFile ? ((CloudFile) model).getPreviewFileId() : model;
+            if (Objects.equals(key, boundThumbnail)) return;
+            boundThumbnail = key;
+            boundIcon = null;
+            // Let the thumbnail fill the space
+            iconContainer.setBackgroundColor(Color.TRANSPARENT);
+            RequestBuilder<Drawable> request = load(model);
+            if (fallback != null) {
+                request = request.error(load(fallback));
+            }
+            request.into(ivFileIcon);
+        }
+
+        private RequestBuilder<Drawable> load(Object model) {
+            return Glide.with(context)
+                    .load(model)
+                    .apply(model instanceof CloudFile ? remoteThumbnailOptions : thumbnailOptions)
+                    .listener(thumbnailListener);
+        }
+
+        void clearThumbnail() {
+            if (boundThumbnail == null) return;
+            Glide.with(context).clear(ivFileIcon);
+            boundThumbnail = null;
+        }
+
+        @Override
+        public void showIcon(FileIcon icon) {
+            if (icon == boundIcon) return;
+            // Or a late thumbnail would replace the icon
+            clearThumbnail();
+            boundIcon = icon;
+            iconContainer.setBackgroundColor(icon.backgroundColor);
+            ivFileIcon.setImageDrawable(getTintedIcon(icon));
+        }
+
+        @Override
+        public void showUploaded() {
+            layoutUploadStatus.setVisibility(View.GONE);
+            layoutCloudStatus.setVisibility(View.VISIBLE);
+        }
+
+        @Override
+        public void showUploading(int progress, long bytesPerSecond, long etaMillis) {
+            layoutCloudStatus.setVisibility(View.GONE);
+            layoutUploadStatus.setVisibility(View.VISIBLE);
+            if (boundPaused) {
+                boundPaused = false;
+                tvUploadStatus.setText(R.string.uploading_status);
+                progressBarUpload.setVisibility(View.VISIBLE);
+            }
+            progressBarUpload.setProgress(progress);
+            setTextIfChanged(tvUploadProgress, getProgressText(progress));
+
+            // Formatted only when what it shows changes, at most about once a second
+            long etaSeconds = etaMillis == TransferProgress.UNKNOWN ? TransferProgress.UNKNOWN : etaMillis / 1000;
+            if (bytesPerSecond == boundBytesPerSecond && etaSeconds == boundEtaSeconds) return;
+            boundBytesPerSecond = bytesPerSecond;
+            boundEtaSeconds = etaSeconds;
+            if (bytesPerSecond <= 0 || etaSeconds == TransferProgress.UNKNOWN) {
+                tvTransferRate.setVisibility(View.GONE);
+                return;
+            }
+            tvTransferRate.setText(context.getString(R.string.transfer_rate_format,
+                    Formatter.formatShortFileSize(context, bytesPerSecond),
+                    DateUtils.formatElapsedTime(etaSeconds)));
+            tvTransferRate.setVisibility(View.VISIBLE);
+        }
+
+        @Override
+        public void showUploadPaused() {
+            layoutCloudStatus.setVisibility(View.GONE);
+            layoutUploadStatus.setVisibility(View.VISIBLE);
+            if (boundPaused) return;
+            boundPaused = true;
+            tvUploadStatus.setText(R.string.upload_paused_status);
+            tvUploadProgress.setText(null);
+            progressBarUpload.setVisibility(View.GONE);
+            tvTransferRate.setVisibility(View.GONE);
+            // The next running upload formats its rate afresh
+            boundBytesPerSecond = 0;
+            boundEtaSeconds = TransferProgress.UNKNOWN;
+        }
+
+        private void setTextIfChanged(TextView view, String text) {
+            // Rows hold their strings, so an unchanged row passes the same instance
+            if (view.getText() != text) view.setText(text);
         }
     }
-}
\ No newline at end of file
+}
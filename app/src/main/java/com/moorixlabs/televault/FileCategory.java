@@ -0,0 +1,19 @@
+package com.moorixlabs.televault;
+
+/**
+ * The dashboard categories. Names match the {@link FilteredFilesActivity}
+ * TYPE_ constants and the category column of the index.
+ */
+public enum FileCategory {
+    IMAGE,
+    VIDEO,
+    PDF,
+    OTHER;
+
+    public static FileCategory of(String fileName) {
+        if (FileUtils.isImage(fileName)) return IMAGE;
+        if (FileUtils.isVideo(fileName)) return VIDEO;
+        if (fileName.toLowerCase().endsWith(".pdf")) return PDF;
+        return OTHER;
+    }
+}
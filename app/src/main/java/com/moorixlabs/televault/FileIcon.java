@@ -0,0 +1,56 @@
+package com.moorixlabs.televault;
+
+/**
+ * The icon and background colour a file row shows when it has no thumbnail.
+ * The icon itself is tinted white.
+ */
+public enum FileIcon {
+    PDF(R.drawable.ic_pdf, 0xFFF44336),
+    DOCUMENT(android.R.drawable.ic_menu_edit, 0xFF2196F3),
+    SPREADSHEET(android.R.drawable.ic_menu_agenda, 0xFF4CAF50),
+    PRESENTATION(android.R.drawable.ic_menu_slideshow, 0xFFFF9800),
+    AUDIO(android.R.drawable.ic_lock_silent_mode_off, 0xFF00BCD4),
+    ARCHIVE(android.R.drawable.ic_menu_save, 0xFF795548),
+    APK(android.R.drawable.ic_menu_preferences, 0xFF4CAF50),
+    GENERAL(R.drawable.ic_file_general, 0xFF607D8B);
+
+    public final int drawableRes;
+    public final int backgroundColor;
+
+    FileIcon(int drawableRes, int backgroundColor) {
+        this.drawableRes = drawableRes;
+        this.backgroundColor = backgroundColor;
+    }
+
+    /**
+     * @param extension lower case, without the dot
+     */
+    public static FileIcon of(String extension) {
+        switch (extension) {
+            case "pdf":
+                return PDF;
+            case "doc":
+            case "docx":
+                return DOCUMENT;
+            case "xls":
+            case "xlsx":
+                return SPREADSHEET;
+            case "ppt":
+            case "pptx":
+                return PRESENTATION;
+            case "mp3":
+            case "wav":
+            case "flac":
+            case "aac":
+                return AUDIO;
+            case "zip":
+            case "rar":
+            case "7z":
+                return ARCHIVE;
+            case "apk":
+                return APK;
+            default:
+                return GENERAL;
+        }
+    }
+}
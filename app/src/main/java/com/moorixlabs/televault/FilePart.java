@@ -0,0 +1,89 @@
+package com.moorixlabs.televault;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One Telegram document holding a slice of a chunked CloudFile.
+ * Parts are stored in upload order; the byte offset of a part is the sum of
+ * the sizes of the parts before it.
+ */
+public class FilePart {
+
+    private static final String PART_SEPARATOR = ";";
+    private static final String FIELD_SEPARATOR = ":";
+
+    private final int index;
+    private final long size;
+    private final String messageId;
+    private final String fileId;
+
+    public FilePart(int index, long size, String messageId, String fileId) {
+        this.index = index;
+        this.size = size;
+        this.messageId = messageId != null ? messageId : "";
+        this.fileId = fileId != null ? fileId : "";
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    /**
+     * Serialize a part manifest as "index:size:messageId:fileId;..." so it fits
+     * in a single column of the files database.
+     */
+    public static String encodeManifest(List<FilePart> parts) {
+        if (parts == null || parts.isEmpty()) return "";
+
+        StringBuilder builder = new StringBuilder();
+        for (FilePart part : parts) {
+            if (builder.length() > 0) builder.append(PART_SEPARATOR);
+            builder.append(part.index).append(FIELD_SEPARATOR)
+                    .append(part.size).append(FIELD_SEPARATOR)
+                    .append(part.messageId).append(FIELD_SEPARATOR)
+                    .append(part.fileId);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parse a manifest written by {@link #encodeManifest(List)}.
+     * Returns an empty list for files stored as a single document.
+     */
+    public static List<FilePart> decodeManifest(String manifest) {
+        List<FilePart> parts = new ArrayList<>();
+        if (manifest == null || manifest.isEmpty()) return parts;
+
+        for (String entry : manifest.split(PART_SEPARATOR)) {
+            String[] fields = entry.split(FIELD_SEPARATOR);
+            if (fields.length < 4) continue;
+            parts.add(new FilePart(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+                    fields[2], fields[3]));
+        }
+        parts.sort((p1, p2) -> Integer.compare(p1.index, p2.index));
+        return parts;
+    }
+
+    @Override
+    public String toString() {
+        return "FilePart{" +
+                "index=" + index +
+                ", size=" + size +
+                ", messageId='" + messageId + '\'' +
+                ", fileId='" + fileId + '\'' +
+                '}';
+    }
+}
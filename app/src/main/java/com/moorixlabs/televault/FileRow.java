@@ -0,0 +1,161 @@
+package com.moorixlabs.televault;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * What one {@link FileAdapter} row shows, taken when the list is submitted.
+ * CloudFile instances are shared and changed in place, so the adapter diffs
+ * these snapshots instead of the files themselves.
+ *
+ * Everything a bind needs is worked out here, once per change of the file,
+ * so that {@link #bindTo} allocates nothing. Upload progress is not part of
+ * the snapshot; it comes from the live {@link TransferProgress} sample, or
+ * the file when no transfer is running.
+ */
+public final class FileRow {
+
+    /**
+     * Where a row is drawn; implemented by the adapter's view holder.
+     */
+    public interface Target {
+        void setName(String name);
+        void setSize(String size);
+        void setDate(String date);
+        /**
+         * @param model a local path, or the file to fetch its preview from Telegram
+         * @param fallback loaded if {@code model} fails, or null
+         */
+        void showThumbnail(Object model, Object fallback);
+        void showIcon(FileIcon icon);
+        void showUploaded();
+        /**
+         * @param bytesPerSecond 0 while not known
+         * @param etaMillis {@link TransferProgress#UNKNOWN} while not known
+         */
+        void showUploading(int progress, long bytesPerSecond, long etaMillis);
+        /**
+         * Not uploaded and not uploading right now: queued, failed, or
+         * waiting for the next start to resume.
+         */
+        void showUploadPaused();
+    }
+
+    public final CloudFile file;
+    public final String id;
+    // Adapter item id, kept for as long as the adapter shows the file
+    public final long itemId;
+    public final String name;
+    public final long size;
+    public final long date;
+    public final boolean uploaded;
+    public final String fileId;
+    public final String path;
+    public final String thumbFileId;
+
+    // Display fields
+    public final String sizeText;
+    public final String dateText;
+    // Glide model of the thumbnail, or null to show the icon
+    public final Object thumbnail;
+    // Tried when the thumbnail fails, e.g. a moved source; may be null
+    public final Object fallbackThumbnail;
+    public final FileIcon icon;
+
+    public FileRow(CloudFile file, long itemId, DateFormat dateFormat) {
+        this.file = file;
+        this.id = file.getId();
+        this.itemId = itemId;
+        this.name = file.getName();
+        this.size = file.getSize();
+        this.date = file.getDate();
+        this.uploaded = file.isUploaded();
+        this.fileId = file.getFileId();
+        this.path = file.getPath();
+        this.thumbFileId = file.getThumbFileId();
+
+        this.sizeText = FileUtils.formatFileSize(size);
+        this.dateText = dateFormat.format(new Date(date));
+        FileCategory category = file.getCategory();
+        boolean media = category == FileCategory.IMAGE || category == FileCategory.VIDEO;
+        String localThumbnail = media && path != null && !path.isEmpty() ? path : null;
+        CloudFile remoteThumbnail = file.getPreviewFileId() != null ? file : null;
+        if (file.hasThumbnail()) {
+            // A few KB from Telegram, or the disk cache, beat decoding the original
+            this.thumbnail = remoteThumbnail;
+            this.fallbackThumbnail = localThumbnail;
+        } else if (localThumbnail != null) {
+            this.thumbnail = localThumbnail;
+            this.fallbackThumbnail = remoteThumbnail;
+        } else {
+            this.thumbnail = remoteThumbnail;
+            this.fallbackThumbnail = null;
+        }
+        this.icon = FileIcon.of(file.getFileExtension());
+    }
+
+    /**
+     * Returns {@code previous} if it still describes {@code file}, else a new row.
+     */
+    public static FileRow of(CloudFile file, FileRow previous, long itemId, DateFormat dateFormat) {
+        if (previous != null && previous.describes(file)) return previous;
+        return new FileRow(file, itemId, dateFormat);
+    }
+
+    /**
+     * Whether this row was taken from {@code file} and the file has not changed since.
+     */
+    public boolean describes(CloudFile file) {
+        return this.file == file
+                && size == file.getSize()
+                && date == file.getDate()
+                && uploaded == file.isUploaded()
+                && name.equals(file.getName())
+                && Objects.equals(fileId, file.getFileId())
+                && Objects.equals(path, file.getPath())
+                && Objects.equals(thumbFileId, file.getThumbFileId());
+    }
+
+    /**
+     * Whether both rows would draw the same, progress aside.
+     */
+    public boolean sameContent(FileRow other) {
+        return size == other.size
+                && date == other.date
+                && uploaded == other.uploaded
+                && name.equals(other.name)
+                && Objects.equals(fileId, other.fileId)
+                && Objects.equals(path, other.path)
+                && Objects.equals(thumbFileId, other.thumbFileId);
+    }
+
+    /**
+     * @param transfer the row's running upload, or null
+     */
+    public void bindTo(Target target, TransferProgress.Sample transfer) {
+        target.setName(name);
+        target.setSize(sizeText);
+        target.setDate(dateText);
+        if (thumbnail != null) {
+            target.showThumbnail(thumbnail, fallbackThumbnail);
+        } else {
+            target.showIcon(icon);
+        }
+        if (uploaded) {
+            target.showUploaded();
+        } else {
+            bindProgressTo(target, transfer);
+        }
+    }
+
+    public void bindProgressTo(Target target, TransferProgress.Sample transfer) {
+        if (uploaded) return;
+        if (transfer != null) {
+            target.showUploading(transfer.getPercent(), transfer.bytesPerSecond, transfer.etaMillis);
+        } else {
+            // Only a running upload knows how far it got; the journal has it on disk
+            target.showUploadPaused();
+        }
+    }
+}
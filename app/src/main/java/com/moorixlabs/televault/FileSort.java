@@ -0,0 +1,46 @@
+package com.moorixlabs.televault;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The orders the file lists offer, numbered as in their sort dialogs. Kept
+ * in one place so the image viewer pages in the order the list shows.
+ */
+public final class FileSort {
+
+    // As the repository keeps them: newest first
+    public static final int NONE = -1;
+    public static final int NAME_ASC = 0;
+    public static final int NAME_DESC = 1;
+    public static final int NEWEST = 2;
+    public static final int OLDEST = 3;
+    public static final int LARGEST = 4;
+    public static final int SMALLEST = 5;
+
+    private FileSort() {
+    }
+
+    /**
+     * @return null for {@link #NONE} and unknown orders
+     */
+    public static Comparator<CloudFile> comparator(int sortType) {
+        switch (sortType) {
+            case NAME_ASC: return (f1, f2) -> f1.getName().compareToIgnoreCase(f2.getName());
+            case NAME_DESC: return (f1, f2) -> f2.getName().compareToIgnoreCase(f1.getName());
+            case NEWEST: return (f1, f2) -> Long.compare(f2.getDate(), f1.getDate());
+            case OLDEST: return (f1, f2) -> Long.compare(f1.getDate(), f2.getDate());
+            case LARGEST: return (f1, f2) -> Long.compare(f2.getSize(), f1.getSize());
+            case SMALLEST: return (f1, f2) -> Long.compare(f1.getSize(), f2.getSize());
+            default: return null;
+        }
+    }
+
+    /**
+     * Sorts {@code files} in place; leaves them as they are for {@link #NONE}.
+     */
+    public static void sort(List<CloudFile> files, int sortType) {
+        Comparator<CloudFile> comparator = comparator(sortType);
+        if (comparator != null) files.sort(comparator);
+    }
+}
@@ -6,7 +6,6 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
-import android.util.Log;
 import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -19,11 +18,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.snackbar.Snackbar;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,7 +33,6 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
     private String botToken;
     private String chatId;
 
-    private static final String FILES_DATABASE = "televault_files.txt";
     private static final String APP_FOLDER = "TeleVault";
     private static final String ZARCHIVER_PACKAGE_NAME = "ru.zdevs.zarchiver";
 
@@ -47,9 +41,13 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
     private ImageButton btnBack, btnSort;
 
     private FileAdapter fileAdapter;
-    private List<CloudFile> allCloudFiles;
     private List<CloudFile> filteredFiles;
     private String currentFilterType;
+    private FileCategory currentCategory;
+    private int sortType = FileSort.NONE;
+
+    private VaultRepository repository;
+    private final VaultRepository.Listener vaultListener = this::onVaultChanged;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -64,14 +62,29 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
             finish();
             return;
         }
+        // TYPE_ values are FileCategory names
+        currentCategory = FileCategory.valueOf(currentFilterType);
+
+        repository = VaultRepository.getInstance(this);
 
         initializeViews();
         setupRecyclerView();
         setupClickListeners();
 
+        repository.addListener(vaultListener);
+        TransferProgress.getInstance().addListener(fileAdapter);
         loadAndFilterFiles();
     }
 
+    @Override
+    protected void onDestroy() {
+        if (repository != null) {
+            repository.removeListener(vaultListener);
+            TransferProgress.getInstance().removeListener(fileAdapter);
+        }
+        super.onDestroy();
+    }
+
     private void initializeViews() {
         recyclerViewFiles = findViewById(R.id.recyclerViewFilteredFiles);
         tvFilteredTitle = findViewById(R.id.tvFilteredTitle);
@@ -99,9 +112,8 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
     }
 
     private void setupRecyclerView() {
-        allCloudFiles = new ArrayList<>();
         filteredFiles = new ArrayList<>();
-        fileAdapter = new FileAdapter(this, filteredFiles, this);
+        fileAdapter = new FileAdapter(this, this);
 
         recyclerViewFiles.setLayoutManager(new LinearLayoutManager(this));
         recyclerViewFiles.setAdapter(fileAdapter);
@@ -120,45 +132,20 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
             return;
         }
 
-        allCloudFiles.clear();
-        filteredFiles.clear();
-
-        File dbFile = getDatabaseFile();
-        if (dbFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(dbFile);
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(fis))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    CloudFile file = parseFileLine(line.split("\\|"));
-                    if (file != null) allCloudFiles.add(file);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
-        for (CloudFile file : allCloudFiles) {
-            String fileName = file.getName();
-            boolean matches = false;
-
-            if (currentFilterType.equals(TYPE_IMAGE) && FileUtils.isImage(fileName)) {
-                matches = true;
-            } else if (currentFilterType.equals(TYPE_VIDEO) && FileUtils.isVideo(fileName)) {
-                matches = true;
-            } else if (currentFilterType.equals(TYPE_PDF) && "pdf".equals(file.getFileExtension())) {
-                matches = true;
-            } else if (currentFilterType.equals(TYPE_OTHER) &&
-                    !FileUtils.isImage(fileName) && !FileUtils.isVideo(fileName) && !"pdf".equals(file.getFileExtension())) {
-                matches = true;
-            }
-
-            if (matches) {
-                filteredFiles.add(file);
-            }
+        // Served from memory once the main screen has loaded the index;
+        // otherwise the list fills in when the LOADED change arrives
+        repository.load();
+        if (repository.isLoaded()) {
+            showFilteredFiles();
         }
+    }
 
-        filteredFiles.sort((f1, f2) -> Long.compare(f2.getDate(), f1.getDate()));
-        fileAdapter.notifyDataSetChanged();
+    private void showFilteredFiles() {
+        filteredFiles.clear();
+        // Kept per category by the repository; no scan of the vault
+        filteredFiles.addAll(repository.getByCategory(currentCategory));
+        FileSort.sort(filteredFiles, sortType);
+        fileAdapter.submitList(filteredFiles);
 
         if (filteredFiles.isEmpty()) {
             String filterName;
@@ -178,10 +165,6 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
         return new File(documentsDir, APP_FOLDER);
     }
 
-    private File getDatabaseFile() {
-        return new File(getAppFolder(), FILES_DATABASE);
-    }
-
     private boolean hasStoragePermission() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
             return Environment.isExternalStorageManager();
@@ -190,19 +173,44 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
         }
     }
 
-    private CloudFile parseFileLine(String[] parts) {
-        try {
-            if (parts.length >= 8) {
-                return new CloudFile(parts[0], parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]),
-                        parts[4], Boolean.parseBoolean(parts[5]), parts[6], parts[7]);
-            } else if (parts.length == 6) {
-                return new CloudFile(parts[0], parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]),
-                        parts[4], Boolean.parseBoolean(parts[5]));
+    /**
+     * Keeps the list in step with changes made on any screen, including
+     * uploads that finish while this one is open.
+     */
+    private void onVaultChanged(VaultRepository.ChangeType type, List<String> ids) {
+        if (type == VaultRepository.ChangeType.LOADED) {
+            showFilteredFiles();
+            return;
+        }
+        for (String id : ids) {
+            int position = indexOfFiltered(id);
+            switch (type) {
+                case INSERTED:
+                    CloudFile inserted = repository.get(id);
+                    if (inserted == null || position >= 0 || inserted.getCategory() != currentCategory) {
+                        break;
+                    }
+                    filteredFiles.add(0, inserted);
+                    break;
+                case UPDATED:
+                    CloudFile updated = repository.get(id);
+                    if (updated == null || position < 0) break;
+                    filteredFiles.set(position, updated);
+                    break;
+                case REMOVED:
+                    if (position < 0) break;
+                    filteredFiles.remove(position);
+                    break;
             }
-        } catch (Exception e) {
-            Log.e("FilteredActivity", "Error parsing file line: " + e.getMessage());
         }
-        return null;
+        fileAdapter.submitList(filteredFiles);
+    }
+
+    private int indexOfFiltered(String id) {
+        for (int i = 0; i < filteredFiles.size(); i++) {
+            if (filteredFiles.get(i).getId().equals(id)) return i;
+        }
+        return -1;
     }
 
     // ==================== ACTIONS (Delegated from FileAdapter) ====================
@@ -214,7 +222,7 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
 
     @Override
     public void onDeleteFile(CloudFile file, int position) {
-        deleteFileFromVault(file, position);
+        deleteFileFromVault(file);
     }
 
     @Override
@@ -224,11 +232,11 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
 
     // ==================== CORE LOGIC (Copied/Adapted from MainActivity) ====================
 
-    private void deleteFileFromVault(CloudFile file, int position) {
+    private void deleteFileFromVault(CloudFile file) {
         if (!file.isUploaded() || file.getMessageId() == null || file.getMessageId().isEmpty()) {
-            filteredFiles.remove(position);
-            fileAdapter.notifyItemRemoved(position);
-            deleteFileFromDatabase(file);
+            // Still uploading: cancelling it removes the row and the parts already sent
+            if (TransferManager.getInstance().cancelUpload(file.getId())) return;
+            repository.remove(file.getId());
             Snackbar.make(findViewById(android.R.id.content),
                     getString(R.string.removed_local_snackbar, file.getName()),
                     Snackbar.LENGTH_SHORT).show();
@@ -247,17 +255,15 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
                 .create();
         progressDialog.show();
 
-        new Thread(() -> {
+        TransferManager.getInstance().submitControl(() -> {
             TelegramDeleter deleter = new TelegramDeleter(
-                    botToken, chatId, file.getMessageId(),
+                    botToken, chatId, file.getMessageIds(),
                     new TelegramDeleter.DeleteCallback() {
                         @Override
                         public void onDeleteSuccess() {
                             runOnUiThread(() -> {
                                 progressDialog.dismiss();
-                                filteredFiles.remove(position);
-                                fileAdapter.notifyItemRemoved(position);
-                                deleteFileFromDatabase(file);
+                                repository.remove(file.getId());
                                 Snackbar.make(findViewById(android.R.id.content),
                                         getString(R.string.delete_success_snackbar, file.getName()),
                                         Snackbar.LENGTH_LONG).show();
@@ -278,7 +284,7 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
                     }
             );
             deleter.delete();
-        }).start();
+        });
     }
 
     private void downloadFromTelegram(CloudFile file) {
@@ -294,9 +300,9 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
                 .create();
         progressDialog.show();
 
-        new Thread(() -> {
+        TransferManager.getInstance().submitDownload(TransferManager.Lane.USER, file.getSize(), () -> {
             TelegramDownloader downloader = new TelegramDownloader(
-                    getApplicationContext(), botToken, file.getFileId(), file.getName(),
+                    getApplicationContext(), botToken, file.getFileId(), file.getName(), file.getParts(),
                     new TelegramDownloader.DownloadCallback() {
                         @Override
                         public void onDownloadProgress(int progress) {
@@ -331,7 +337,7 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
                     }
             );
             downloader.download();
-        }).start();
+        });
     }
 
     private void shareDownloadedFile(CloudFile file) {
@@ -347,9 +353,9 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
                 .create();
         progressDialog.show();
 
-        new Thread(() -> {
+        TransferManager.getInstance().submitDownload(TransferManager.Lane.INTERACTIVE, file.getSize(), () -> {
             TelegramDownloader downloader = new TelegramDownloader(
-                    getApplicationContext(), botToken, file.getFileId(), file.getName(),
+                    getApplicationContext(), botToken, file.getFileId(), file.getName(), file.getParts(),
                     new TelegramDownloader.DownloadCallback() {
                         @Override
                         public void onDownloadProgress(int progress) {}
@@ -366,7 +372,6 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
                                     shareIntent.putExtra(Intent.EXTRA_STREAM, contentUri);
                                     shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
                                     startActivity(Intent.createChooser(shareIntent, getString(R.string.menu_share_file)));
-                                    scheduleTempFileDeletion(fileToShare);
                                 } catch (Exception e) {
                                     Toast.makeText(FilteredFilesActivity.this, getString(R.string.error_sharing_file, e.getMessage()), Toast.LENGTH_LONG).show();
                                 }
@@ -386,8 +391,10 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
                         }
                     }
             );
+            // Shared again later without downloading; the target may read it long after
+            downloader.setContentCache(ContentCache.getInstance(this));
             downloader.download();
-        }).start();
+        });
     }
 
     private void openDownloadedFile(Uri fileUri, String fileName) {
@@ -453,68 +460,17 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
 
     @Override
     public void onCancelUpload(CloudFile file, int position) {
-        // "Cancelling" from this screen just removes it from the list and database.
-        // The main activity's upload will eventually stop on its own.
-        filteredFiles.remove(position);
-        fileAdapter.notifyItemRemoved(position);
-        deleteFileFromDatabase(file);
+        // The upload's onUploadCancelled removes the row once its parts are gone
+        if (TransferManager.getInstance().cancelUpload(file.getId())) return;
+
+        // Not uploading any more, e.g. failed; just remove it
+        repository.remove(file.getId());
 
         Snackbar.make(findViewById(android.R.id.content),
                 getString(R.string.removed_local_snackbar, file.getName()),
                 Snackbar.LENGTH_SHORT).show();
     }
 
-    private void scheduleTempFileDeletion(File file) {
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-            if (file != null && file.exists()) {
-                if (file.delete()) {
-                    android.util.Log.i("FileCleanup", "Temp share file deleted: " + file.getName());
-                } else {
-                    android.util.Log.w("FileCleanup", "Failed to delete temp file: " + file.getName());
-                }
-            }
-        }, 15000);
-    }
-
-    private void deleteFileFromDatabase(CloudFile file) {
-        if (!hasStoragePermission()) return;
-        List<CloudFile> filesToRewrite = new ArrayList<>();
-        File dbFile = getDatabaseFile();
-        if (dbFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(dbFile);
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(fis))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 6 && !parts[0].equals(file.getId())) {
-                        CloudFile existingFile = parseFileLine(parts);
-                        if (existingFile != null) filesToRewrite.add(existingFile);
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        rewriteDatabase(filesToRewrite);
-    }
-
-    private void rewriteDatabase(List<CloudFile> files) {
-        if (!hasStoragePermission()) return;
-        try {
-            File dbFile = getDatabaseFile();
-            try (FileOutputStream fos = new FileOutputStream(dbFile, false)) {
-                for (CloudFile file : files) {
-                    String line = String.format("%s|%s|%d|%d|%s|%b|%s|%s\n",
-                            file.getId(), file.getName(), file.getSize(), file.getDate(),
-                            file.getPath(), file.isUploaded(), file.getFileId(), file.getMessageId());
-                    fos.write(line.getBytes());
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
     private void showSortDialog() {
         String[] options = {
                 getString(R.string.sort_name_asc),
@@ -531,14 +487,10 @@ public class FilteredFilesActivity extends AppCompatActivity implements FileAdap
     }
 
     private void sortFiles(int sortType) {
-        switch (sortType) {
-            case 0: filteredFiles.sort((f1, f2) -> f1.getName().compareToIgnoreCase(f2.getName())); break;
-            case 1: filteredFiles.sort((f1, f2) -> f2.getName().compareToIgnoreCase(f1.getName())); break;
-            case 2: filteredFiles.sort((f1, f2) -> Long.compare(f2.getDate(), f1.getDate())); break;
-            case 3: filteredFiles.sort((f1, f2) -> Long.compare(f1.getDate(), f2.getDate())); break;
-            case 4: filteredFiles.sort((f1, f2) -> Long.compare(f2.getSize(), f1.getSize())); break;
-            case 5: filteredFiles.sort((f1, f2) -> Long.compare(f1.getSize(), f2.getSize())); break;
-        }
-        fileAdapter.notifyDataSetChanged();
+        this.sortType = sortType;
+        FileSort.sort(filteredFiles, sortType);
+        // The image viewer pages in the same order
+        fileAdapter.setSortType(sortType);
+        fileAdapter.submitList(filteredFiles);
     }
 }
\ No newline at end of file
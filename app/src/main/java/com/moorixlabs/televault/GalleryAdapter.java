@@ -0,0 +1,400 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.github.chrisbanes.photoview.PhotoView;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pages of the image viewer, one image each. Pages come from a
+ * {@link GalleryPrefetcher}; until theirs is decoded they show the
+ * thumbnail sent with the image, if any, under a progress indicator. Only
+ * the current page draws full-resolution tiles when zoomed in.
+ */
+public class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.PageHolder>
+        implements GalleryPrefetcher.Listener {
+
+    private static final String TAG = "GalleryAdapter";
+
+    private static final Object PAYLOAD_PROGRESS = new Object();
+    private static final Object PAYLOAD_STATE = new Object();
+
+    // Deepest zoom of a tiled image, in screen pixels per image pixel
+    private static final float MAX_ZOOM_SCREEN_PIXELS = 2f;
+
+    private final List<CloudFile> files;
+    private final GalleryPrefetcher prefetcher;
+    private final Runnable onClose;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Position -> last download progress / error, for pages not decoded yet
+    private final Map<Integer, Integer> progress = new HashMap<>();
+    private final Map<Integer, String> errors = new HashMap<>();
+
+    private RecyclerView recyclerView;
+    private int current = RecyclerView.NO_POSITION;
+    private boolean released;
+
+    // The page opened with the viewer is timed from the viewer opening, later ones from their swipe
+    private long selectedAtNanos;
+    private boolean opening = true;
+    private boolean firstPixelShown;
+    private boolean fullImagePending;
+
+    /**
+     * @param screenWidth   with {@code screenHeight}, what pages are decoded for
+     * @param openedAtNanos when the viewer opened, to time the first page from
+     * @param onClose       closes the viewer, from a page that failed to load
+     */
+    public GalleryAdapter(Context context, List<CloudFile> files, String botToken,
+                          int screenWidth, int screenHeight, long openedAtNanos, Runnable onClose) {
+        this.files = files;
+        this.onClose = onClose;
+        this.selectedAtNanos = openedAtNanos;
+        this.prefetcher = new GalleryPrefetcher(context, botToken, files, screenWidth, screenHeight, this);
+    }
+
+    /**
+     * Makes {@code position} the page on screen: it loads first, its
+     * neighbours are prefetched, and only it draws tiles.
+     */
+    public void setCurrent(int position) {
+        if (position == current || released) return;
+        int previous = current;
+        current = position;
+        if (previous != RecyclerView.NO_POSITION) {
+            opening = false;
+            selectedAtNanos = System.nanoTime();
+            PageHolder holder = findHolder(previous);
+            if (holder != null) holder.leaveCurrent();
+        }
+        fullImagePending = true;
+        prefetcher.setCurrent(position);
+
+        PageHolder holder = findHolder(position);
+        if (holder != null) holder.enterCurrent();
+    }
+
+    /**
+     * Stops loading and drops the decoded pages. Call when the viewer closes.
+     */
+    public void release() {
+        released = true;
+        prefetcher.release();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    public void onPageProgress(int position, int value) {
+        errors.remove(position);
+        progress.put(position, value);
+        notifyItemChanged(position, PAYLOAD_PROGRESS);
+    }
+
+    @Override
+    public void onPageReady(int position, GalleryPrefetcher.Page page) {
+        errors.remove(position);
+        progress.remove(position);
+        notifyItemChanged(position, PAYLOAD_STATE);
+    }
+
+    @Override
+    public void onPageFailed(int position, String error) {
+        Log.e(TAG, "Page " + position + " failed: " + error);
+        errors.put(position, error);
+        notifyItemChanged(position, PAYLOAD_STATE);
+    }
+
+    @NonNull
+    @Override
+    public PageHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_image_page, parent, false);
+        return new PageHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PageHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && !payloads.contains(PAYLOAD_STATE)) {
+            holder.showProgress(getProgress(position));
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PageHolder holder, int position) {
+        holder.current = position == current;
+        GalleryPrefetcher.Page page = prefetcher.get(position);
+        if (page != null) {
+            holder.showPage(page);
+        } else if (errors.containsKey(position)) {
+            holder.showError(errors.get(position));
+        } else {
+            holder.showLoading(files.get(position), getProgress(position));
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull PageHolder holder) {
+        holder.clear();
+    }
+
+    @Override
+    public int getItemCount() {
+        return files.size();
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = null;
+    }
+
+    private int getProgress(int position) {
+        Integer value = progress.get(position);
+        return value != null ? value : 0;
+    }
+
+    private PageHolder findHolder(int position) {
+        if (recyclerView == null) return null;
+        return (PageHolder) recyclerView.findViewHolderForAdapterPosition(position);
+    }
+
+    /**
+     * Records the time since the current page was selected once the frame
+     * showing its new pixels is drawn.
+     */
+    private void reportShownOnNextFrame(boolean fullImage) {
+        if (fullImage) {
+            if (!fullImagePending) return;
+            fullImagePending = false;
+        } else if (!opening || firstPixelShown) {
+            // Previews are only timed for the page the viewer opened with
+            return;
+        }
+        long startNanos = selectedAtNanos;
+        boolean firstPage = opening;
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
+            long millis = (System.nanoTime() - startNanos) / 1_000_000;
+            if (firstPage && !firstPixelShown) {
+                firstPixelShown = true;
+                ViewerMetrics.getInstance().record(ViewerMetrics.Stage.FIRST_PIXEL, millis);
+            }
+            if (fullImage) {
+                ViewerMetrics.getInstance().record(
+                        firstPage ? ViewerMetrics.Stage.FULL_IMAGE : ViewerMetrics.Stage.SWIPE, millis);
+            }
+        });
+    }
+
+    class PageHolder extends RecyclerView.ViewHolder {
+        final PhotoView photoView;
+        final TiledImageView tileView;
+        final View loadingLayout;
+        final TextView tvProgress;
+        final View errorLayout;
+        final TextView tvErrorMessage;
+
+        boolean current;
+        // What the page shows; at most one is set
+        private GalleryPrefetcher.Page page;
+        private String loadingFileId;
+        private boolean tilesRequested;
+        private boolean zoomLimitSet;
+        private final float defaultMaximumScale;
+
+        PageHolder(View itemView) {
+            super(itemView);
+            photoView = itemView.findViewById(R.id.photoView);
+            tileView = itemView.findViewById(R.id.tileView);
+            loadingLayout = itemView.findViewById(R.id.loadingLayout);
+            tvProgress = itemView.findViewById(R.id.tvProgress);
+            errorLayout = itemView.findViewById(R.id.errorLayout);
+            tvErrorMessage = itemView.findViewById(R.id.tvErrorMessage);
+            defaultMaximumScale = photoView.getMaximumScale();
+
+            photoView.setOnMatrixChangeListener(this::onDisplayRectChanged);
+            // Allow clicking error layout to close
+            errorLayout.setOnClickListener(v -> onClose.run());
+        }
+
+        void showLoading(CloudFile file, int value) {
+            if (!file.getFileId().equals(loadingFileId)) {
+                clear();
+                loadingFileId = file.getFileId();
+                showPreview(file);
+            }
+            errorLayout.setVisibility(View.GONE);
+            loadingLayout.setVisibility(View.VISIBLE);
+            showProgress(value);
+        }
+
+        void showProgress(int value) {
+            tvProgress.setText(value + "%");
+        }
+
+        void showPage(GalleryPrefetcher.Page page) {
+            if (this.page != page) {
+                clear();
+                this.page = page;
+                photoView.setImageBitmap(page.bitmap);
+                Log.i(TAG, "Bitmap shown: " + page.bitmap.getWidth() + "x" + page.bitmap.getHeight()
+                        + " " + page.bitmap.getConfig());
+            }
+            loadingLayout.setVisibility(View.GONE);
+            errorLayout.setVisibility(View.GONE);
+            photoView.setVisibility(View.VISIBLE);
+            if (current) {
+                requestTiles();
+                reportShownOnNextFrame(true);
+            }
+        }
+
+        void showError(String message) {
+            clear();
+            loadingLayout.setVisibility(View.GONE);
+            photoView.setVisibility(View.GONE);
+            errorLayout.setVisibility(View.VISIBLE);
+            tvErrorMessage.setText(message);
+        }
+
+        void enterCurrent() {
+            current = true;
+            if (page != null) {
+                requestTiles();
+                reportShownOnNextFrame(true);
+            }
+        }
+
+        void leaveCurrent() {
+            current = false;
+            tilesRequested = false;
+            tileView.release();
+            // Back at the fitted zoom when swiped to again
+            photoView.setScale(1f);
+        }
+
+        /**
+         * Shows the thumbnail sent with the image while the image itself loads.
+         * It comes from Glide's caches when the list already showed it.
+         */
+        private void showPreview(CloudFile file) {
+            if (!file.hasThumbnail()) {
+                photoView.setVisibility(View.GONE);
+                return;
+            }
+            photoView.setVisibility(View.VISIBLE);
+            Glide.with(photoView)
+                    .load(file)
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .listener(new RequestListener<Drawable>() {
+                        @Override
+                        public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                                    Target<Drawable> target, boolean isFirstResource) {
+                            // The download goes on; there is just nothing to show until it is done
+                            Log.w(TAG, "No preview for " + file.getName(), e);
+                            return false;
+                        }
+
+                        @Override
+                        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                                       DataSource dataSource, boolean isFirstResource) {
+                            if (current) reportShownOnNextFrame(false);
+                            return false;
+                        }
+                    })
+                    .into(photoView);
+        }
+
+        /**
+         * Lets the tile view add detail beyond the page's bitmap when zooming
+         * in. The region decoder is opened off the main thread.
+         */
+        private void requestTiles() {
+            GalleryPrefetcher.Page tiled = page;
+            if (tilesRequested || !tiled.tileable) return;
+            tilesRequested = true;
+            ImageDecoding.getExecutor().execute(() -> {
+                BitmapRegionDecoder regionDecoder = ImageDecoding.openRegionDecoder(tiled.file);
+                if (regionDecoder == null) return;
+                mainHandler.post(() -> {
+                    if (released || page != tiled || !current) {
+                        ImageDecoding.getExecutor().execute(regionDecoder::recycle);
+                        return;
+                    }
+                    showTiles(regionDecoder, tiled);
+                });
+            });
+        }
+
+        /**
+         * Allows zooming until one image pixel covers {@link #MAX_ZOOM_SCREEN_PIXELS}.
+         */
+        private void showTiles(BitmapRegionDecoder regionDecoder, GalleryPrefetcher.Page tiled) {
+            int baseSampleSize = Math.round(regionDecoder.getWidth() / (float) tiled.bitmap.getWidth());
+            if (baseSampleSize <= 1) {
+                // Already shown at full resolution
+                ImageDecoding.getExecutor().execute(regionDecoder::recycle);
+                return;
+            }
+            tileView.setSource(regionDecoder, baseSampleSize);
+            zoomLimitSet = false;
+            RectF displayRect = photoView.getDisplayRect();
+            if (displayRect != null) onDisplayRectChanged(displayRect);
+        }
+
+        private void onDisplayRectChanged(RectF displayRect) {
+            tileView.setDisplayRect(displayRect);
+            int imageWidth = tileView.getImageWidth();
+            if (zoomLimitSet || imageWidth <= 0 || displayRect.width() <= 0) return;
+
+            // Screen pixels per image pixel at the fitted zoom
+            float fitScale = displayRect.width() / imageWidth / photoView.getScale();
+            float maxScale = MAX_ZOOM_SCREEN_PIXELS / fitScale;
+            if (maxScale > photoView.getMaximumScale()) {
+                photoView.setMaximumScale(maxScale);
+            }
+            zoomLimitSet = true;
+        }
+
+        /**
+         * Empties the page for another image.
+         */
+        void clear() {
+            Glide.with(photoView).clear(photoView);
+            photoView.setImageDrawable(null);
+            page = null;
+            loadingFileId = null;
+            tilesRequested = false;
+            tileView.release();
+            photoView.setMaximumScale(defaultMaximumScale);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Downloads and decodes the pages of the image viewer around the one on
+ * screen, so swiping to a neighbour shows it at once. The current page goes
+ * to the interactive lane, its neighbours to the background lane. Pages
+ * that leave the window stop loading; decoded ones stay in a memory cache
+ * of bounded size, and the downloaded files in the {@link ContentCache}.
+ *
+ * Used on the main thread; listener calls come there too.
+ */
+final class GalleryPrefetcher {
+
+    private static final String TAG = "GalleryPrefetcher";
+
+    // Neighbours on each side, when the memory budget allows
+    private static final int MAX_RADIUS = 2;
+    // Largest side of a page that cannot be tiled; larger ones are downsampled
+    private static final int MAX_DIMENSION = 2048;
+
+    interface Listener {
+        void onPageProgress(int position, int progress);
+        void onPageReady(int position, Page page);
+        void onPageFailed(int position, String error);
+    }
+
+    /**
+     * A decoded page.
+     */
+    static final class Page {
+        final File file;
+        final Bitmap bitmap;
+        // Decoded to screen size; full-resolution tiles can add the detail
+        final boolean tileable;
+
+        Page(File file, Bitmap bitmap, boolean tileable) {
+            this.file = file;
+            this.bitmap = bitmap;
+            this.tileable = tileable;
+        }
+    }
+
+    private final Context context;
+    private final String botToken;
+    private final List<CloudFile> files;
+    private final int screenMaxDimension;
+    private final int radius;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Telegram file_id -> decoded page
+    private final LruCache<String, Page> pages;
+    // Position -> page being loaded
+    private final Map<Integer, Load> loads = new HashMap<>();
+
+    private boolean released;
+    private int readyHits;
+    private int readyMisses;
+    private int cancelledLoads;
+
+    /**
+     * @param screenWidth  with {@code screenHeight}, the size pages are decoded
+     *                     for and the memory budget is counted in
+     */
+    GalleryPrefetcher(Context context, String botToken, List<CloudFile> files,
+                      int screenWidth, int screenHeight, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.botToken = botToken;
+        this.files = files;
+        this.screenMaxDimension = Math.max(screenWidth, screenHeight);
+        this.listener = listener;
+
+        // A quarter of the heap, on top of the tile cache's eighth
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4);
+        pages = new LruCache<String, Page>(maxBytes) {
+            @Override
+            protected int sizeOf(String fileId, Page page) {
+                return page.bitmap.getByteCount();
+            }
+        };
+        // A screen-sized ARGB_8888 bitmap per page
+        radius = GalleryWindow.radiusFor(maxBytes, (long) screenWidth * screenHeight * 4, MAX_RADIUS);
+    }
+
+    /**
+     * The decoded page at {@code position}, or null while it loads.
+     */
+    Page get(int position) {
+        return pages.get(files.get(position).getFileId());
+    }
+
+    /**
+     * Moves the window to {@code position}: loads it first and its
+     * neighbours after it, and stops loading pages outside the window.
+     */
+    void setCurrent(int position) {
+        if (released) return;
+        List<Integer> window = GalleryWindow.positions(position, files.size(), radius);
+
+        Iterator<Map.Entry<Integer, Load>> iterator = loads.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Load> entry = iterator.next();
+            if (!window.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                iterator.remove();
+                cancelledLoads++;
+            }
+        }
+
+        for (int windowPosition : window) {
+            boolean ready = get(windowPosition) != null;
+            if (windowPosition == position) {
+                if (ready) readyHits++; else readyMisses++;
+            }
+            if (ready) continue;
+
+            Load load = loads.get(windowPosition);
+            if (load == null) {
+                start(windowPosition, windowPosition == position);
+            } else if (windowPosition == position && !load.interactive && load.claim()) {
+                // Still queued behind background work; go ahead of it
+                start(windowPosition, true);
+            }
+        }
+        Log.d(TAG, getMetricsSummary());
+    }
+
+    /**
+     * Stops all loads and drops the decoded pages. Call when the viewer closes.
+     */
+    void release() {
+        released = true;
+        for (Load load : loads.values()) {
+            load.cancel();
+        }
+        loads.clear();
+        pages.evictAll();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    String getMetricsSummary() {
+        return "gallery: radius " + radius + ", ready on arrival " + readyHits + "/" + (readyHits + readyMisses)
+                + ", cancelled " + cancelledLoads + ", loading " + loads.size()
+                + ", decoded " + pages.size() / 1024 + "/" + pages.maxSize() / 1024 + " KB";
+    }
+
+    private void start(int position, boolean interactive) {
+        CloudFile file = files.get(position);
+        Load load = new Load(interactive);
+        loads.put(position, load);
+
+        TransferManager.Lane lane = interactive ? TransferManager.Lane.INTERACTIVE : TransferManager.Lane.BACKGROUND;
+        TransferManager.getInstance().submitDownload(lane, file.getSize(), () -> {
+            // Cancelled or taken over while it waited
+            if (!load.claim() || load.cancelled) return;
+
+            TelegramDownloader downloader = new TelegramDownloader(
+                    context,
+                    botToken,
+                    file.getFileId(),
+                    file.getName(),
+                    file.getParts(),
+                    new TelegramDownloader.DownloadCallback() {
+                        @Override
+                        public void onDownloadProgress(int progress) {
+                            mainHandler.post(() -> {
+                                if (loads.get(position) == load) listener.onPageProgress(position, progress);
+                            });
+                        }
+
+                        @Override
+                        public void onDownloadSuccess(Uri fileUri) {
+                            if (load.cancelled) return;
+                            load.decodeTask = ImageDecoding.getExecutor().submit(
+                                    () -> decode(position, load, new File(fileUri.getPath())));
+                        }
+
+                        @Override
+                        public void onDownloadFailed(String error) {
+                            fail(position, load, "Download failed: " + error);
+                        }
+                    });
+            downloader.setContentCache(ContentCache.getInstance(context));
+            load.downloader = downloader;
+            // Cancelled before there was a downloader to stop
+            if (load.cancelled) return;
+            downloader.download();
+        });
+    }
+
+    private void decode(int position, Load load, File file) {
+        if (load.cancelled) return;
+        try {
+            // With tiles for the detail, a page need not be sharper than the screen
+            boolean tileable = ImageDecoding.hasNormalOrientation(file);
+            Bitmap bitmap = ImageDecoding.decode(file, tileable ? screenMaxDimension : MAX_DIMENSION);
+            Page page = new Page(file, bitmap, tileable);
+            mainHandler.post(() -> {
+                if (released) return;
+                // Kept even when it left the window meanwhile; swiping back is then free
+                pages.put(files.get(position).getFileId(), page);
+                if (loads.get(position) == load) loads.remove(position);
+                listener.onPageReady(position, page);
+            });
+        } catch (IOException | OutOfMemoryError e) {
+            Log.e(TAG, "Error decoding " + file.getName(), e);
+            fail(position, load, "Failed to display image: " + e.getMessage());
+        }
+    }
+
+    private void fail(int position, Load load, String error) {
+        mainHandler.post(() -> {
+            // Cancelled loads fail quietly; they are no longer in the map
+            if (released || loads.get(position) != load) return;
+            loads.remove(position);
+            listener.onPageFailed(position, error);
+        });
+    }
+
+    /**
+     * One page's download and decode.
+     */
+    private static final class Load {
+        final boolean interactive;
+        // Set by whoever runs the download first: its task, or a faster lane taking over
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        volatile boolean cancelled;
+        volatile TelegramDownloader downloader;
+        volatile Future<?> decodeTask;
+
+        Load(boolean interactive) {
+            this.interactive = interactive;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        void cancel() {
+            cancelled = true;
+            TelegramDownloader running = downloader;
+            if (running != null) running.cancel();
+            Future<?> decoding = decodeTask;
+            if (decoding != null) decoding.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.moorixlabs.televault;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which pages of the image viewer to have ready around the one on screen.
+ * Pure arithmetic, kept apart from {@link GalleryPrefetcher} so it can be
+ * tested without a device.
+ */
+public final class GalleryWindow {
+
+    private GalleryWindow() {
+    }
+
+    /**
+     * The pages within {@code radius} of {@code current}, most urgent first:
+     * the current page, then the nearest neighbours, the next one before the
+     * previous one since most browsing goes forward.
+     */
+    public static List<Integer> positions(int current, int count, int radius) {
+        List<Integer> positions = new ArrayList<>();
+        if (current < 0 || current >= count) return positions;
+        positions.add(current);
+        for (int distance = 1; distance <= radius; distance++) {
+            if (current + distance < count) positions.add(current + distance);
+            if (current - distance >= 0) positions.add(current - distance);
+        }
+        return positions;
+    }
+
+    /**
+     * How many pages on each side fit in {@code budgetBytes} next to the
+     * current one, at most {@code maxRadius}.
+     *
+     * @param pageBytes what one decoded page is expected to take
+     */
+    public static int radiusFor(long budgetBytes, long pageBytes, int maxRadius) {
+        if (pageBytes <= 0) return maxRadius;
+        long pages = budgetBytes / pageBytes;
+        return (int) Math.max(0, Math.min(maxRadius, (pages - 1) / 2));
+    }
+}
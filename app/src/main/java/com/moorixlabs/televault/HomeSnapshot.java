@@ -0,0 +1,101 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The home screen as of the last change: the newest files and the counters.
+ * Kept in app storage so a cold start can draw the screen before the index
+ * has loaded. Only valid while the index it was taken from is unchanged,
+ * which {@link #indexStamp} records.
+ *
+ * Layout: the stamp line, a counters line, then rows in the
+ * televault_files.txt format.
+ */
+public final class HomeSnapshot {
+
+    private static final String TAG = "HomeSnapshot";
+    private static final String FILE_NAME = "home_snapshot";
+
+    public final String indexStamp;
+    public final VaultSummary summary;
+    public final List<CloudFile> recentFiles;
+
+    public HomeSnapshot(String indexStamp, VaultSummary summary, List<CloudFile> recentFiles) {
+        this.indexStamp = indexStamp;
+        this.summary = summary;
+        this.recentFiles = recentFiles;
+    }
+
+    /**
+     * @return the saved snapshot, or null if there is none or it is unreadable
+     */
+    public static HomeSnapshot read(Context context) {
+        AtomicFile file = getFile(context);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(file.openRead(), StandardCharsets.UTF_8))) {
+            IndexCodec.Tokenizer fields = new IndexCodec.Tokenizer();
+            String stamp = fields.reset(reader.readLine()).next();
+            fields.reset(reader.readLine());
+            VaultSummary summary = new VaultSummary(
+                    (int) fields.nextLong(),
+                    (int) fields.nextLong(),
+                    (int) fields.nextLong(),
+                    (int) fields.nextLong(),
+                    fields.nextLong());
+
+            List<CloudFile> recentFiles = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                CloudFile cloudFile = LegacyIndexImporter.parseLine(line, fields);
+                if (cloudFile != null) recentFiles.add(cloudFile);
+            }
+            return new HomeSnapshot(stamp, summary, recentFiles);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Ignoring unreadable home snapshot", e);
+            return null;
+        }
+    }
+
+    public void write(Context context) {
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            IndexCodec.RowWriter writer = new IndexCodec.RowWriter(stream, 4096);
+            writer.field(indexStamp).endRow();
+            writer.field(summary.imageCount)
+                    .field(summary.videoCount)
+                    .field(summary.pdfCount)
+                    .field(summary.otherCount)
+                    .field(summary.totalSize)
+                    .endRow();
+            for (CloudFile cloudFile : recentFiles) {
+                IndexCodec.writeFile(writer, cloudFile);
+                writer.endRow();
+            }
+            writer.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            if (stream != null) file.failWrite(stream);
+            Log.w(TAG, "Could not save home snapshot", e);
+        }
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+}
@@ -0,0 +1,142 @@
+package com.moorixlabs.televault;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.ImageDecoder;
+import android.media.ExifInterface;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes downloaded images for display, off the main thread.
+ *
+ * From Android 9 this goes through ImageDecoder, which reads the file once,
+ * applies EXIF rotation, handles HEIF and puts the pixels straight into
+ * graphics memory as a hardware bitmap. Older versions decode with
+ * BitmapFactory.
+ */
+public final class ImageDecoding {
+
+    private static final String TAG = "ImageDecoding";
+
+    private static final int THREADS = 2;
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+    private static final ExecutorService executor = createExecutor();
+
+    private ImageDecoding() {
+    }
+
+    /**
+     * Where decodes run. Kept apart from the transfer pools, so a decode
+     * never waits behind a download.
+     */
+    public static ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Decodes {@code file}, downsampled by powers of two until neither side
+     * is over {@code maxDimension}. Call on a worker thread.
+     *
+     * @throws IOException if the file is no image Android can decode
+     */
+    public static Bitmap decode(File file, int maxDimension) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return decodeWithImageDecoder(file, maxDimension);
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not a decodable image: " + file.getName());
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, maxDimension);
+        // Without hardware bitmaps, half the memory is worth the banding
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode " + file.getName());
+        }
+        return bitmap;
+    }
+
+    /**
+     * Opens {@code file} for decoding regions at full resolution, see
+     * {@link TiledImageView}. Call on a worker thread.
+     *
+     * @return null if regions cannot be decoded, or would come out rotated
+     *         against the full image because of an EXIF orientation
+     */
+    public static BitmapRegionDecoder openRegionDecoder(File file) {
+        if (!hasNormalOrientation(file)) return null;
+        try {
+            return BitmapRegionDecoder.newInstance(file.getAbsolutePath(), false);
+        } catch (IOException e) {
+            // Formats without region support, e.g. GIF
+            Log.d(TAG, "No region decoding for " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Whether {@code file} is stored the way up it is shown, as region
+     * decoding needs. Reads only the EXIF header.
+     */
+    public static boolean hasNormalOrientation(File file) {
+        try {
+            int orientation = new ExifInterface(file.getAbsolutePath())
+                    .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            return orientation == ExifInterface.ORIENTATION_NORMAL || orientation == ExifInterface.ORIENTATION_UNDEFINED;
+        } catch (IOException e) {
+            Log.d(TAG, "No EXIF for " + file.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static Bitmap decodeWithImageDecoder(File file, int maxDimension) throws IOException {
+        ImageDecoder.Source source = ImageDecoder.createSource(file);
+        return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+            Size size = info.getSize();
+            decoder.setTargetSampleSize(sampleSize(size.getWidth(), size.getHeight(), maxDimension));
+            decoder.setAllocator(ImageDecoder.ALLOCATOR_HARDWARE);
+        });
+    }
+
+    /**
+     * Power of two that brings the larger side to at most {@code maxDimension}.
+     */
+    static int sampleSize(int width, int height, int maxDimension) {
+        int sampleSize = 1;
+        while (Math.max(width, height) / sampleSize > maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS,
+                IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    // What it decodes is on screen or about to be
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_DISPLAY);
+                    runnable.run();
+                }, "televault-decode-" + count.incrementAndGet()));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -1,206 +1,157 @@
 package com.moorixlabs.televault;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Bundle;
-import android.util.Log;
-import android.view.View;
+import android.util.DisplayMetrics;
 import android.widget.ImageButton;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.viewpager2.widget.ViewPager2;
 
-import com.github.chrisbanes.photoview.PhotoView;
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Swipeable gallery of images. Opens at one image of a list and pages
+ * through the others; neighbours of the image on screen are downloaded and
+ * decoded ahead, see {@link GalleryPrefetcher}.
+ */
 public class ImageViewerActivity extends AppCompatActivity {
 
-    private static final String TAG = "ImageViewerActivity";
+    public static final String EXTRA_CATEGORY = "category"; // FileCategory name of the images to page through
+    public static final String EXTRA_SORT_TYPE = "sort_type"; // FileSort order of the list it was opened from
+    public static final String EXTRA_FILE_ID = "file_id"; // Vault id of the image to open at
 
-    public static final String EXTRA_FILE_ID = "file_id";
-    public static final String EXTRA_FILE_NAME = "file_name";
-    public static final String EXTRA_BOT_TOKEN = "bot_token";
+    private static final String STATE_FILE_ID = "current_file_id";
 
-    private PhotoView photoView;
-    private LinearLayout loadingLayout;
-    private LinearLayout errorLayout;
-    private TextView tvLoadingText;
-    private TextView tvProgress;
-    private TextView tvErrorMessage;
+    private ViewPager2 viewPager;
+    private TextView tvPosition;
     private ImageButton btnClose;
+    private GalleryAdapter galleryAdapter;
 
-    private File downloadedImageFile;
+    private VaultRepository repository;
+    private final VaultRepository.Listener vaultListener = this::onVaultChanged;
+    private FileCategory category;
+    private int sortType;
+    private String startFileId;
+    private List<CloudFile> files;
+    private long openedAtNanos;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        openedAtNanos = System.nanoTime();
         setContentView(R.layout.activity_image_viewer);
 
         initializeViews();
-        setupClickListeners();
+        btnClose.setOnClickListener(v -> finish());
 
         // Get data from intent
-        String fileId = getIntent().getStringExtra(EXTRA_FILE_ID);
-        String fileName = getIntent().getStringExtra(EXTRA_FILE_NAME);
-        String botToken = getIntent().getStringExtra(EXTRA_BOT_TOKEN);
-
-        if (fileId == null || fileName == null || botToken == null) {
-            showError("Missing required information");
+        String categoryName = getIntent().getStringExtra(EXTRA_CATEGORY);
+        startFileId = getIntent().getStringExtra(EXTRA_FILE_ID);
+        sortType = getIntent().getIntExtra(EXTRA_SORT_TYPE, FileSort.NONE);
+        if (savedInstanceState != null && savedInstanceState.getString(STATE_FILE_ID) != null) {
+            startFileId = savedInstanceState.getString(STATE_FILE_ID);
+        }
+        try {
+            category = FileCategory.valueOf(categoryName);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            category = null;
+        }
+        if (category == null || startFileId == null) {
+            showMissingAndFinish();
             return;
         }
 
-        downloadAndDisplayImage(botToken, fileId, fileName);
+        // The list comes from the repository, which is in memory unless the process was restarted
+        repository = VaultRepository.getInstance(this);
+        repository.addListener(vaultListener);
+        if (repository.isLoaded()) {
+            showGallery();
+        } else {
+            repository.load();
+        }
     }
 
-    private void initializeViews() {
-        photoView = findViewById(R.id.photoView);
-        loadingLayout = findViewById(R.id.loadingLayout);
-        errorLayout = findViewById(R.id.errorLayout);
-        tvLoadingText = findViewById(R.id.tvLoadingText);
-        tvProgress = findViewById(R.id.tvProgress);
-        tvErrorMessage = findViewById(R.id.tvErrorMessage);
-        btnClose = findViewById(R.id.btnClose);
+    private void onVaultChanged(VaultRepository.ChangeType type, List<String> ids) {
+        if (type == VaultRepository.ChangeType.LOADED && files == null) {
+            showGallery();
+        }
     }
 
-    private void setupClickListeners() {
-        btnClose.setOnClickListener(v -> finish());
-
-        // Allow clicking error layout to close
-        errorLayout.setOnClickListener(v -> finish());
+    /**
+     * Pages through the downloadable files of the category, in the list's
+     * order, starting at the one that was tapped.
+     */
+    private void showGallery() {
+        repository.removeListener(vaultListener);
+        String botToken = SettingsUtils.getBotToken(this);
+        files = new ArrayList<>();
+        int position = 0;
+        for (CloudFile file : repository.getByCategory(category)) {
+            if (file.isUploaded() && file.canDownload()) files.add(file);
+        }
+        FileSort.sort(files, sortType);
+        for (int i = 0; i < files.size(); i++) {
+            if (files.get(i).getId().equals(startFileId)) {
+                position = i;
+                break;
+            }
+        }
+        if (files.isEmpty() || botToken == null || botToken.isEmpty()) {
+            showMissingAndFinish();
+            return;
+        }
 
-        // Optional: Double-tap photo to close
-        photoView.setOnClickListener(v -> {
-            // Single tap does nothing (let PhotoView handle gestures)
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        galleryAdapter = new GalleryAdapter(this, files, botToken,
+                metrics.widthPixels, metrics.heightPixels, openedAtNanos, this::finish);
+        viewPager.setAdapter(galleryAdapter);
+        // The pages either side stay laid out, so a prefetched one is on screen as the swipe starts
+        viewPager.setOffscreenPageLimit(1);
+        viewPager.setCurrentItem(position, false);
+        showPosition(position);
+        galleryAdapter.setCurrent(position);
+
+        viewPager.registerOnPageChangeCallback(new ViewPager2.OnPageChangeCallback() {
+            @Override
+            public void onPageSelected(int selected) {
+                showPosition(selected);
+                galleryAdapter.setCurrent(selected);
+            }
         });
     }
 
-    private void downloadAndDisplayImage(String botToken, String fileId, String fileName) {
-        showLoading();
-
-        new Thread(() -> {
-            TelegramDownloader downloader = new TelegramDownloader(
-                    getApplicationContext(),
-                    botToken,
-                    fileId,
-                    fileName,
-                    new TelegramDownloader.DownloadCallback() {
-                        @Override
-                        public void onDownloadProgress(int progress) {
-                            runOnUiThread(() -> {
-                                tvProgress.setText(progress + "%");
-                            });
-                        }
-
-                        @Override
-                        public void onDownloadSuccess(Uri fileUri) {
-                            runOnUiThread(() -> {
-                                try {
-                                    // Store reference to downloaded file for cleanup
-                                    downloadedImageFile = new File(fileUri.getPath());
-
-                                    // Load image from file
-                                    displayImage(downloadedImageFile);
-
-                                    hideLoading();
-                                    photoView.setVisibility(View.VISIBLE);
-
-                                    Log.i(TAG, "Image loaded successfully: " + fileName);
-
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error displaying image", e);
-                                    showError("Failed to display image: " + e.getMessage());
-                                }
-                            });
-                        }
-
-                        @Override
-                        public void onDownloadFailed(String error) {
-                            runOnUiThread(() -> {
-                                Log.e(TAG, "Download failed: " + error);
-                                showError("Download failed: " + error);
-                            });
-                        }
-                    }
-            );
-
-            downloader.download();
-        }).start();
-    }
-
-    private void displayImage(File imageFile) throws Exception {
-        // Use efficient image loading with downsampling for large images
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-
-        // First decode to get dimensions
-        BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
-
-        // Calculate sample size (downsample if image is too large)
-        int maxDimension = 2048; // Max width/height
-        int sampleSize = 1;
-
-        if (options.outWidth > maxDimension || options.outHeight > maxDimension) {
-            int scale = Math.max(
-                    options.outWidth / maxDimension,
-                    options.outHeight / maxDimension
-            );
-            sampleSize = Integer.highestOneBit(scale);
-        }
-
-        // Now decode with sample size
-        options.inJustDecodeBounds = false;
-        options.inSampleSize = sampleSize;
-        options.inPreferredConfig = Bitmap.Config.RGB_565; // Use less memory
-
-        Bitmap bitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
-
-        if (bitmap != null) {
-            photoView.setImageBitmap(bitmap);
-            Log.i(TAG, "Bitmap loaded: " + bitmap.getWidth() + "x" + bitmap.getHeight());
-        } else {
-            throw new Exception("Failed to decode bitmap");
-        }
+    private void showMissingAndFinish() {
+        Toast.makeText(this, "Missing required information", Toast.LENGTH_SHORT).show();
+        finish();
     }
 
-    private void showLoading() {
-        loadingLayout.setVisibility(View.VISIBLE);
-        photoView.setVisibility(View.GONE);
-        errorLayout.setVisibility(View.GONE);
+    private void initializeViews() {
+        viewPager = findViewById(R.id.viewPager);
+        tvPosition = findViewById(R.id.tvPosition);
+        btnClose = findViewById(R.id.btnClose);
     }
 
-    private void hideLoading() {
-        loadingLayout.setVisibility(View.GONE);
+    private void showPosition(int position) {
+        tvPosition.setText((position + 1) + " / " + files.size());
     }
 
-    private void showError(String message) {
-        loadingLayout.setVisibility(View.GONE);
-        photoView.setVisibility(View.GONE);
-        errorLayout.setVisibility(View.VISIBLE);
-        tvErrorMessage.setText(message);
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        // By id; the list may differ by the time it is rebuilt
+        if (files != null && !files.isEmpty()) {
+            outState.putString(STATE_FILE_ID, files.get(viewPager.getCurrentItem()).getId());
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-
-        // Clean up: Delete the downloaded image file
-        if (downloadedImageFile != null && downloadedImageFile.exists()) {
-            if (downloadedImageFile.delete()) {
-                Log.i(TAG, "✓ Temp image file deleted: " + downloadedImageFile.getName());
-            } else {
-                Log.w(TAG, "Failed to delete temp image: " + downloadedImageFile.getName());
-            }
-        }
-
-        // Also recycle bitmap to free memory
-        if (photoView != null && photoView.getDrawable() != null) {
-            photoView.setImageDrawable(null);
-        }
+        if (repository != null) repository.removeListener(vaultListener);
+        // The downloaded images stay in the content cache for the next view
+        if (galleryAdapter != null) galleryAdapter.release();
     }
-}
\ No newline at end of file
+}
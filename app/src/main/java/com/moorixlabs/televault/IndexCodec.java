@@ -0,0 +1,337 @@
+package com.moorixlabs.televault;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads and writes the pipe-delimited rows of the vault index: the legacy
+ * televault_files.txt, the journal's snapshot and log, the home snapshot.
+ *
+ * Fields are escaped, so a name may hold any character: a backslash is
+ * written as "\\", a pipe as "\p", a newline as "\n", a carriage return as
+ * "\r". Rows written before escaping existed read back unchanged unless a
+ * field holds a backslash followed by one of those letters.
+ *
+ * Neither side goes through regex or String.format; a {@link Tokenizer} and
+ * a {@link RowWriter} are meant to be reused across all rows of a file.
+ */
+public final class IndexCodec {
+
+    public static final char SEPARATOR = '|';
+    private static final char ESCAPE = '\\';
+
+    private IndexCodec() {
+    }
+
+    /**
+     * Reads the fields of a file row: id|name|size|date|path|uploaded[|fileId|messageId[|manifest[|thumbFileId]]].
+     *
+     * @return the file, or null if the row is malformed
+     */
+    public static CloudFile readFile(Tokenizer fields) {
+        try {
+            String id = fields.next();
+            String name = fields.next();
+            long size = fields.nextLong();
+            long date = fields.nextLong();
+            String path = fields.next();
+            boolean uploaded = fields.nextBoolean();
+            if (!fields.hasNext()) {
+                return new CloudFile(id, name, size, date, path, uploaded);
+            }
+
+            String fileId = fields.next();
+            String messageId = fields.hasNext() ? fields.next() : "";
+            CloudFile file = new CloudFile(id, name, size, date, path, uploaded, fileId, messageId);
+            if (fields.hasNext()) {
+                file.setParts(FilePart.decodeManifest(fields.next()));
+            }
+            if (fields.hasNext()) {
+                file.setThumbFileId(fields.next());
+            }
+            return file;
+        } catch (NumberFormatException | NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the fields of a file row, without ending the row.
+     */
+    public static void writeFile(RowWriter writer, CloudFile file) throws IOException {
+        writer.field(file.getId())
+                .field(file.getName())
+                .field(file.getSize())
+                .field(file.getDate())
+                .field(file.getPath())
+                .field(file.isUploaded())
+                .field(file.getFileId())
+                .field(file.getMessageId())
+                .field(FilePart.encodeManifest(file.getParts()))
+                .field(file.getThumbFileId());
+    }
+
+    /**
+     * Splits a row into fields in one pass. {@link #reset} it for each row.
+     */
+    public static final class Tokenizer {
+
+        private final StringBuilder unescaped = new StringBuilder();
+        private String row = "";
+        // Start of the next field; past the end once the last one is read
+        private int position;
+        // Whether the field fieldEnd() last found holds an escape
+        private boolean fieldEscaped;
+
+        public Tokenizer reset(String row) {
+            this.row = row;
+            this.position = 0;
+            return this;
+        }
+
+        /**
+         * An empty row has one empty field.
+         */
+        public boolean hasNext() {
+            return position <= row.length();
+        }
+
+        /**
+         * Fields not read yet; counts them, so it costs a scan of the rest of the row.
+         */
+        public int remaining() {
+            if (!hasNext()) return 0;
+            int count = 1;
+            for (int i = position; i < row.length(); i++) {
+                char c = row.charAt(i);
+                if (c == ESCAPE) {
+                    i++;
+                } else if (c == SEPARATOR) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public String next() {
+            int start = position;
+            int end = fieldEnd();
+            String field = fieldEscaped ? unescape(start, end) : row.substring(start, end);
+            advance(end);
+            return field;
+        }
+
+        public long nextLong() {
+            int start = position;
+            int end = fieldEnd();
+            long value = parseLong(row, start, end);
+            advance(end);
+            return value;
+        }
+
+        /**
+         * Like {@link Boolean#parseBoolean}: true only for "true" in any case.
+         */
+        public boolean nextBoolean() {
+            int start = position;
+            int end = fieldEnd();
+            boolean value = end - start == 4 && row.regionMatches(true, start, "true", 0, 4);
+            advance(end);
+            return value;
+        }
+
+        public void skip() {
+            advance(fieldEnd());
+        }
+
+        private int fieldEnd() {
+            if (!hasNext()) throw new NoSuchElementException("No field left in row");
+            fieldEscaped = false;
+            int length = row.length();
+            int i = position;
+            while (i < length) {
+                char c = row.charAt(i);
+                if (c == SEPARATOR) break;
+                if (c == ESCAPE) {
+                    fieldEscaped = true;
+                    i++;
+                }
+                i++;
+            }
+            return Math.min(i, length);
+        }
+
+        private void advance(int fieldEnd) {
+            position = fieldEnd + 1;
+        }
+
+        private String unescape(int start, int end) {
+            unescaped.setLength(0);
+            for (int i = start; i < end; i++) {
+                char c = row.charAt(i);
+                if (c != ESCAPE || i + 1 >= end) {
+                    unescaped.append(c);
+                    continue;
+                }
+                char code = row.charAt(++i);
+                switch (code) {
+                    case ESCAPE: unescaped.append(ESCAPE); break;
+                    case 'p': unescaped.append(SEPARATOR); break;
+                    case 'n': unescaped.append('\n'); break;
+                    case 'r': unescaped.append('\r'); break;
+                    // Not an escape we write; keep it as it was
+                    default: unescaped.append(c).append(code); break;
+                }
+            }
+            return unescaped.toString();
+        }
+
+        private static long parseLong(String s, int start, int end) {
+            if (start >= end) throw new NumberFormatException("Empty number");
+            boolean negative = s.charAt(start) == '-';
+            int i = negative ? start + 1 : start;
+            if (i >= end) throw new NumberFormatException("Bad number: " + s.substring(start, end));
+
+            // Accumulated negatively, which also reaches Long.MIN_VALUE
+            long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+            long result = 0;
+            for (; i < end; i++) {
+                int digit = s.charAt(i) - '0';
+                if (digit < 0 || digit > 9 || result < limit / 10) {
+                    throw new NumberFormatException("Bad number: " + s.substring(start, end));
+                }
+                result *= 10;
+                if (result < limit + digit) {
+                    throw new NumberFormatException("Bad number: " + s.substring(start, end));
+                }
+                result -= digit;
+            }
+            return negative ? result : -result;
+        }
+    }
+
+    /**
+     * Encodes rows straight to UTF-8 in its own buffer and hands the buffer
+     * to the stream when it fills or on {@link #flush}.
+     */
+    public static final class RowWriter {
+
+        private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+        // Largest write of a single char or number
+        private static final int MAX_STEP = 20;
+
+        private final OutputStream out;
+        private final byte[] buffer;
+        private final byte[] digits = new byte[MAX_STEP];
+        private int count;
+        private boolean rowStarted;
+
+        public RowWriter(OutputStream out) {
+            this(out, DEFAULT_BUFFER_SIZE);
+        }
+
+        public RowWriter(OutputStream out, int bufferSize) {
+            this.out = out;
+            this.buffer = new byte[Math.max(bufferSize, MAX_STEP)];
+        }
+
+        public RowWriter field(String value) throws IOException {
+            startField();
+            if (value == null) return this;
+            for (int i = 0; i < value.length(); i++) {
+                ensureRoom(4);
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    switch (c) {
+                        case ESCAPE: put(ESCAPE); put(ESCAPE); break;
+                        case SEPARATOR: put(ESCAPE); put('p'); break;
+                        case '\n': put(ESCAPE); put('n'); break;
+                        case '\r': put(ESCAPE); put('r'); break;
+                        default: put(c); break;
+                    }
+                } else if (c < 0x800) {
+                    put(0xC0 | (c >> 6));
+                    put(0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    put(0xF0 | (codePoint >> 18));
+                    put(0x80 | ((codePoint >> 12) & 0x3F));
+                    put(0x80 | ((codePoint >> 6) & 0x3F));
+                    put(0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired, replaced like String.getBytes does
+                    put('?');
+                } else {
+                    put(0xE0 | (c >> 12));
+                    put(0x80 | ((c >> 6) & 0x3F));
+                    put(0x80 | (c & 0x3F));
+                }
+            }
+            return this;
+        }
+
+        public RowWriter field(long value) throws IOException {
+            startField();
+            ensureRoom(MAX_STEP);
+            if (value == 0) {
+                put('0');
+                return this;
+            }
+            if (value < 0) put('-');
+            // Digits come out last first; negative so Long.MIN_VALUE works too
+            long remaining = value < 0 ? value : -value;
+            int length = 0;
+            while (remaining != 0) {
+                digits[length++] = (byte) ('0' - remaining % 10);
+                remaining /= 10;
+            }
+            while (length > 0) {
+                buffer[count++] = digits[--length];
+            }
+            return this;
+        }
+
+        public RowWriter field(boolean value) throws IOException {
+            return field(value ? "true" : "false");
+        }
+
+        public RowWriter endRow() throws IOException {
+            ensureRoom(1);
+            put('\n');
+            rowStarted = false;
+            return this;
+        }
+
+        /**
+         * Writes out the buffer and flushes the stream.
+         */
+        public void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        private void startField() throws IOException {
+            if (rowStarted) {
+                ensureRoom(1);
+                put(SEPARATOR);
+            }
+            rowStarted = true;
+        }
+
+        private void ensureRoom(int bytes) throws IOException {
+            if (count + bytes > buffer.length) drain();
+        }
+
+        private void drain() throws IOException {
+            if (count == 0) return;
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+
+        private void put(int b) {
+            buffer[count++] = (byte) b;
+        }
+    }
+}
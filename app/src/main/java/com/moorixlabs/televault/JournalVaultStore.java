@@ -0,0 +1,494 @@
+package com.moorixlabs.televault;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link VaultStore} kept as a snapshot plus an append-only log of changes.
+ *
+ * Every change is one appended, fsynced line: an add with the whole row, an
+ * update with the upload fields only, or a tombstone. Nothing is ever
+ * rewritten in place. Once the log grows past {@link #COMPACT_THRESHOLD}
+ * records it is folded into a new snapshot in the background; the snapshot
+ * is written through {@link AtomicFile}, so a crash leaves either the old or
+ * the new one. The log being folded is set aside until the snapshot is in
+ * place and replayed on the next start if it is still there. Replay is
+ * last-writer-wins per id, so replaying records already in the snapshot is
+ * harmless.
+ *
+ * The whole index is held in memory; reads never touch the disk. A change
+ * that cannot be appended is taken back out of memory and the write throws
+ * {@link UncheckedIOException}, so memory never holds what the disk lacks.
+ */
+public class JournalVaultStore implements VaultStore {
+
+    private static final String TAG = "JournalVaultStore";
+
+    static final String SNAPSHOT_NAME = "televault_index.snapshot";
+    static final String LOG_NAME = "televault_index.log";
+    static final String COMPACTING_SUFFIX = ".compacting";
+
+    // Log records before the log is folded into the snapshot
+    static final int COMPACT_THRESHOLD = 1000;
+
+    private static final String OP_ADD = "A";
+    private static final String OP_UPDATE = "U";
+    private static final String OP_DELETE = "D";
+
+    private final AtomicFile snapshot;
+    private final File logFile;
+    private final File compactingFile;
+    private final Executor compactor;
+
+    // Stored instances are never changed after being put, so a compaction
+    // can write them out while new changes arrive
+    private final Map<String, CloudFile> files = new HashMap<>();
+    private FileOutputStream log;
+    private IndexCodec.RowWriter logWriter;
+    private int logRecords = 0;
+    private boolean compacting = false;
+
+    /**
+     * @param compactor runs compactions, off the caller's thread
+     */
+    public JournalVaultStore(File folder, Executor compactor) {
+        folder.mkdirs();
+        this.snapshot = new AtomicFile(new File(folder, SNAPSHOT_NAME));
+        this.logFile = new File(folder, LOG_NAME);
+        this.compactingFile = new File(folder, LOG_NAME + COMPACTING_SUFFIX);
+        this.compactor = compactor;
+        load();
+    }
+
+    @Override
+    public synchronized void add(CloudFile file) {
+        CloudFile stored = new CloudFile(file);
+        CloudFile previous = files.put(stored.getId(), stored);
+        append(writer -> writeAdd(writer, stored), 1, () -> restore(stored.getId(), previous));
+    }
+
+    @Override
+    public synchronized void addAll(List<CloudFile> newFiles) {
+        List<CloudFile> storedFiles = new ArrayList<>(newFiles.size());
+        // Id -> what it replaced, first one per id, for taking them back out
+        Map<String, CloudFile> previous = new HashMap<>();
+        for (CloudFile file : newFiles) {
+            CloudFile stored = new CloudFile(file);
+            CloudFile replaced = files.put(stored.getId(), stored);
+            if (!previous.containsKey(stored.getId())) previous.put(stored.getId(), replaced);
+            storedFiles.add(stored);
+        }
+        append(writer -> {
+            for (CloudFile stored : storedFiles) {
+                writeAdd(writer, stored);
+            }
+        }, storedFiles.size(), () -> {
+            for (Map.Entry<String, CloudFile> entry : previous.entrySet()) {
+                restore(entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    @Override
+    public synchronized void update(CloudFile file) {
+        if (!files.containsKey(file.getId())) {
+            add(file);
+            return;
+        }
+        CloudFile stored = new CloudFile(file);
+        CloudFile previous = files.put(stored.getId(), stored);
+        append(writer -> writeUpdate(writer, stored), 1, () -> restore(stored.getId(), previous));
+    }
+
+    @Override
+    public synchronized void delete(String id) {
+        CloudFile removed = files.remove(id);
+        if (removed != null) {
+            append(writer -> writeDelete(writer, id), 1, () -> restore(id, removed));
+        }
+    }
+
+    @Override
+    public synchronized List<CloudFile> getAll() {
+        List<CloudFile> result = new ArrayList<>(files.size());
+        for (CloudFile file : files.values()) {
+            result.add(new CloudFile(file));
+        }
+        result.sort((f1, f2) -> Long.compare(f2.getDate(), f1.getDate()));
+        return result;
+    }
+
+    @Override
+    public synchronized List<CloudFile> getByCategory(FileCategory category) {
+        List<CloudFile> result = new ArrayList<>();
+        for (CloudFile file : files.values()) {
+            if (file.getCategory() == category) {
+                result.add(new CloudFile(file));
+            }
+        }
+        result.sort((f1, f2) -> Long.compare(f2.getDate(), f1.getDate()));
+        return result;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    // ==================== LOG ====================
+
+    private interface Records {
+        void writeTo(IndexCodec.RowWriter writer) throws IOException;
+    }
+
+    /**
+     * Appends records and syncs them to disk.
+     *
+     * @param rollback takes the records' change back out of memory if they could not be appended
+     * @throws UncheckedIOException if they could not be appended
+     */
+    private void append(Records records, int count, Runnable rollback) {
+        long start = -1;
+        try {
+            if (log == null) {
+                log = new FileOutputStream(logFile, true);
+                logWriter = new IndexCodec.RowWriter(log);
+            }
+            start = log.getChannel().size();
+            records.writeTo(logWriter);
+            logWriter.flush();
+            // Durable before the caller moves on, e.g. deletes an upload journal
+            log.getFD().sync();
+            logRecords += count;
+        } catch (IOException e) {
+            closeLog();
+            if (start >= 0) truncateLog(start);
+            rollback.run();
+            throw new UncheckedIOException("Could not append to " + logFile, e);
+        }
+
+        if (logRecords >= COMPACT_THRESHOLD && !compacting) {
+            compacting = true;
+            compactor.execute(this::compact);
+        }
+    }
+
+    /**
+     * Puts back what a change replaced; null means there was nothing.
+     */
+    private void restore(String id, CloudFile previous) {
+        if (previous == null) {
+            files.remove(id);
+        } else {
+            files.put(id, previous);
+        }
+    }
+
+    /**
+     * Cuts off what a failed append left behind, so the next record starts
+     * on a line of its own instead of merging with a partial one.
+     */
+    private void truncateLog(long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            if (raf.length() > length) raf.setLength(length);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not cut a failed append off " + logFile, e);
+        }
+    }
+
+    private void closeLog() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not close " + logFile, e);
+        }
+        log = null;
+        logWriter = null;
+    }
+
+    // ==================== COMPACTION ====================
+
+    /**
+     * Folds the log into a new snapshot. Only the hand-over of the log holds
+     * the lock; the snapshot is written while changes keep being appended
+     * to a fresh log.
+     */
+    private void compact() {
+        List<CloudFile> state;
+        synchronized (this) {
+            try {
+                setLogAside();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not set the log aside, compaction skipped", e);
+                compacting = false;
+                return;
+            }
+            state = new ArrayList<>(files.values());
+        }
+
+        try {
+            writeSnapshot(state);
+            if (!compactingFile.delete()) {
+                Log.w(TAG, "Could not delete " + compactingFile + "; it will be replayed once more");
+            }
+            Log.d(TAG, "Compacted the index into " + state.size() + " rows");
+        } catch (IOException e) {
+            // The set-aside log still holds everything since the last snapshot
+            Log.e(TAG, "Compaction failed", e);
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Moves the current log behind the set-aside one and starts a new log.
+     * Must hold the lock.
+     */
+    private void setLogAside() throws IOException {
+        closeLog();
+        if (logFile.exists()) {
+            if (!compactingFile.exists()) {
+                if (!logFile.renameTo(compactingFile)) {
+                    throw new IOException("Could not rename " + logFile);
+                }
+            } else {
+                // A failed compaction left its log behind; keep both in order
+                try (FileOutputStream out = new FileOutputStream(compactingFile, true)) {
+                    out.write(readFully(logFile));
+                    out.getFD().sync();
+                }
+                if (!logFile.delete()) {
+                    throw new IOException("Could not delete " + logFile);
+                }
+            }
+        }
+        logRecords = 0;
+    }
+
+    private void writeSnapshot(List<CloudFile> state) throws IOException {
+        FileOutputStream stream = snapshot.startWrite();
+        try {
+            IndexCodec.RowWriter writer = new IndexCodec.RowWriter(stream);
+            for (CloudFile file : state) {
+                IndexCodec.writeFile(writer, file);
+                writer.endRow();
+            }
+            writer.flush();
+            // finishWrite syncs before renaming into place
+            snapshot.finishWrite(stream);
+        } catch (IOException e) {
+            snapshot.failWrite(stream);
+            throw e;
+        }
+    }
+
+    // ==================== LOADING ====================
+
+    private void load() {
+        IndexCodec.Tokenizer fields = new IndexCodec.Tokenizer();
+        try (InputStream in = snapshot.openRead()) {
+            for (String row : splitCompleteLines(readFully(in))) {
+                CloudFile file = LegacyIndexImporter.parseLine(row, fields);
+                if (file != null) files.put(file.getId(), file);
+            }
+        } catch (IOException e) {
+            // No snapshot yet
+        }
+
+        boolean interrupted = compactingFile.exists();
+        if (interrupted) {
+            replay(compactingFile);
+        }
+        logRecords = replay(logFile);
+
+        if (interrupted) {
+            // Finish the interrupted compaction now, before anything is appended
+            try {
+                writeSnapshot(new ArrayList<>(files.values()));
+                new FileOutputStream(logFile, false).close();
+                compactingFile.delete();
+                logRecords = 0;
+            } catch (IOException e) {
+                Log.e(TAG, "Could not finish an interrupted compaction", e);
+            }
+        }
+        Log.d(TAG, "Loaded " + files.size() + " files, " + logRecords + " log records");
+    }
+
+    /**
+     * Applies a log file. A last line without its newline was torn by a
+     * crash mid-append; it is dropped and cut off the file.
+     *
+     * @return records applied
+     */
+    private int replay(File file) {
+        if (!file.exists()) return 0;
+        try {
+            byte[] data = readFully(file);
+            List<String> lines = splitCompleteLines(data);
+            IndexCodec.Tokenizer fields = new IndexCodec.Tokenizer();
+            int applied = 0;
+            for (String line : lines) {
+                if (applyRecord(files, line, fields)) applied++;
+            }
+
+            int lastNewline = lastIndexOf(data, (byte) '\n');
+            if (lastNewline + 1 < data.length) {
+                Log.w(TAG, "Dropping a torn record at the end of " + file.getName());
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(lastNewline + 1);
+                }
+            }
+            return applied;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not replay " + file, e);
+            return 0;
+        }
+    }
+
+    // ==================== RECORDS ====================
+
+    /**
+     * Applies one log record to {@code files}.
+     *
+     * @return false if the record is malformed
+     */
+    static boolean applyRecord(Map<String, CloudFile> files, String record) {
+        return applyRecord(files, record, new IndexCodec.Tokenizer());
+    }
+
+    /**
+     * {@link #applyRecord(Map, String)} reusing {@code fields} across records.
+     */
+    static boolean applyRecord(Map<String, CloudFile> files, String record, IndexCodec.Tokenizer fields) {
+        String op = fields.reset(record).next();
+        if (!fields.hasNext()) return false;
+
+        switch (op) {
+            case OP_ADD: {
+                CloudFile file = IndexCodec.readFile(fields);
+                if (file == null) return false;
+                files.put(file.getId(), file);
+                return true;
+            }
+            case OP_UPDATE: {
+                if (fields.remaining() < 5) return false;
+                CloudFile existing = files.get(fields.next());
+                if (existing != null) {
+                    CloudFile updated = new CloudFile(existing);
+                    updated.setUploaded(fields.nextBoolean());
+                    updated.setUploadProgress(updated.isUploaded() ? 100 : 0);
+                    updated.setFileId(fields.next());
+                    updated.setMessageId(fields.next());
+                    updated.setParts(FilePart.decodeManifest(fields.next()));
+                    // Records written before thumbnails were sent end at the manifest
+                    if (fields.hasNext()) updated.setThumbFileId(fields.next());
+                    files.put(updated.getId(), updated);
+                }
+                return true;
+            }
+            case OP_DELETE:
+                files.remove(fields.next());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static void writeAdd(IndexCodec.RowWriter writer, CloudFile file) throws IOException {
+        writer.field(OP_ADD);
+        IndexCodec.writeFile(writer, file);
+        writer.endRow();
+    }
+
+    static void writeUpdate(IndexCodec.RowWriter writer, CloudFile file) throws IOException {
+        writer.field(OP_UPDATE)
+                .field(file.getId())
+                .field(file.isUploaded())
+                .field(file.getFileId())
+                .field(file.getMessageId())
+                .field(FilePart.encodeManifest(file.getParts()))
+                .field(file.getThumbFileId())
+                .endRow();
+    }
+
+    static void writeDelete(IndexCodec.RowWriter writer, String id) throws IOException {
+        writer.field(OP_DELETE).field(id).endRow();
+    }
+
+    static String encodeAdd(CloudFile file) {
+        return encode(writer -> writeAdd(writer, file));
+    }
+
+    static String encodeUpdate(CloudFile file) {
+        return encode(writer -> writeUpdate(writer, file));
+    }
+
+    private static String encode(Records records) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IndexCodec.RowWriter writer = new IndexCodec.RowWriter(out, 256);
+        try {
+            records.writeTo(writer);
+            writer.flush();
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static List<String> splitCompleteLines(byte[] data) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                if (i > start) {
+                    lines.add(new String(data, start, i - start, StandardCharsets.UTF_8));
+                }
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    private static int lastIndexOf(byte[] data, byte value) {
+        for (int i = data.length - 1; i >= 0; i--) {
+            if (data[i] == value) return i;
+        }
+        return -1;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return readFully(in);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,94 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One-time import of the pipe-delimited televault_files.txt into the
+ * {@link VaultStore}. The file is streamed line by line and written in
+ * batched transactions, so even a large index never sits in memory whole.
+ * Afterwards it is renamed, not deleted, and kept as a backup.
+ */
+public final class LegacyIndexImporter {
+
+    private static final String TAG = "LegacyIndexImporter";
+    private static final String LEGACY_INDEX = "televault_files.txt";
+    private static final String IMPORTED_SUFFIX = ".imported";
+    private static final int BATCH_SIZE = 500;
+
+    private LegacyIndexImporter() {
+    }
+
+    /**
+     * Imports the legacy index if there is one left to import.
+     *
+     * @return number of files imported
+     */
+    public static synchronized int importIfNeeded(Context context) {
+        File legacyFile = new File(VaultDatabase.getAppFolder(), LEGACY_INDEX);
+        if (!legacyFile.exists()) return 0;
+
+        VaultStore store = VaultStores.get(context);
+        int imported = 0;
+        List<CloudFile> batch = new ArrayList<>(BATCH_SIZE);
+        IndexCodec.Tokenizer fields = new IndexCodec.Tokenizer();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(legacyFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                CloudFile file = parseLine(line, fields);
+                if (file == null) continue;
+                batch.add(file);
+                if (batch.size() == BATCH_SIZE) {
+                    store.addAll(batch);
+                    imported += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                store.addAll(batch);
+                imported += batch.size();
+            }
+        } catch (Exception e) {
+            // Files already added are replaced, so the next attempt simply repeats them
+            Log.e(TAG, "Import of " + legacyFile + " failed after " + imported + " files", e);
+            return imported;
+        }
+
+        File importedFile = new File(legacyFile.getPath() + IMPORTED_SUFFIX);
+        if (!legacyFile.renameTo(importedFile)) {
+            Log.w(TAG, "Could not rename " + legacyFile + "; it will be imported again");
+        }
+        Log.i(TAG, "Imported " + imported + " files from " + LEGACY_INDEX);
+        return imported;
+    }
+
+    /**
+     * Parses one line: id|name|size|date|path|uploaded[|fileId|messageId[|manifest]].
+     *
+     * @return the file, or null if the line is malformed
+     */
+    static CloudFile parseLine(String line) {
+        return parseLine(line, new IndexCodec.Tokenizer());
+    }
+
+    /**
+     * {@link #parseLine(String)} reusing {@code fields} across lines.
+     */
+    static CloudFile parseLine(String line, IndexCodec.Tokenizer fields) {
+        CloudFile file = IndexCodec.readFile(fields.reset(line));
+        if (file == null) {
+            Log.w(TAG, "Skipping malformed line");
+        }
+        return file;
+    }
+}
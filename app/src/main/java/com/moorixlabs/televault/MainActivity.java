@@ -15,8 +15,6 @@ import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
-import java.util.Map; // --- NEW IMPORT ---
-import java.util.HashMap; // --- NEW IMPORT ---
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
@@ -33,11 +31,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.snackbar.Snackbar;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -50,9 +44,8 @@ public class MainActivity extends AppCompatActivity {
     private String chatId;
 
     private static final int PERMISSION_REQUEST_CODE = 100;
-    private static final String FILES_DATABASE = "televault_files.txt";
     private static final String APP_FOLDER = "TeleVault";
-    private static final int RECENT_FILES_LIMIT = 10;
+    private static final int RECENT_FILES_LIMIT = VaultRepository.RECENT_FILES_LIMIT;
 
     private RecyclerView recyclerViewFiles;
     private LinearLayout emptyStateLayout;
@@ -65,7 +58,10 @@ public class MainActivity extends AppCompatActivity {
 
     private FileAdapter fileAdapter;
     private List<CloudFile> recentFiles;
-    private List<CloudFile> allCloudFiles;
+    private VaultRepository repository;
+    // Counters of the saved home screen, shown until the index has loaded
+    private VaultSummary homeSnapshotSummary;
+    private final VaultRepository.Listener vaultListener = this::onVaultChanged;
 
     private ActivityResultLauncher<Intent> filePickerLauncher;
     private ActivityResultLauncher<Intent> allFilesPermissionLauncher;
@@ -73,21 +69,32 @@ public class MainActivity extends AppCompatActivity {
 
     private boolean isCheckingConfiguration = false;
     private boolean hasShownConfigAlert = false;
-    private Map<String, TelegramUploader> activeUploads = new HashMap<>();
+    private static boolean interruptedUploadsResumed = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        repository = VaultRepository.getInstance(this);
+
         initializeViews();
         setupActivityLaunchers();
         setupRecyclerView();
         setupClickListeners();
 
+        repository.addListener(vaultListener);
+        TransferProgress.getInstance().addListener(fileAdapter);
         checkConfigurationAndProceed();
     }
 
+    @Override
+    protected void onDestroy() {
+        repository.removeListener(vaultListener);
+        TransferProgress.getInstance().removeListener(fileAdapter);
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -130,7 +137,6 @@ public class MainActivity extends AppCompatActivity {
             btnSort.setEnabled(false);
             if (recentFiles != null) {
                 recentFiles.clear();
-                fileAdapter.notifyDataSetChanged();
             }
             updateUI();
             isCheckingConfiguration = false;
@@ -138,6 +144,8 @@ public class MainActivity extends AppCompatActivity {
             hasShownConfigAlert = false;
             fabAddFile.setEnabled(true);
             btnSort.setEnabled(true);
+            // Connect now so the first tap on a file skips the handshake
+            TelegramApiClient.getInstance().prewarm(botToken);
             checkAndRequestPermissions();
             isCheckingConfiguration = false;
         }
@@ -156,9 +164,8 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupRecyclerView() {
-        allCloudFiles = new ArrayList<>();
         recentFiles = new ArrayList<>();
-        fileAdapter = new FileAdapter(this, recentFiles, new FileAdapter.FileActionListener() {
+        fileAdapter = new FileAdapter(this, new FileAdapter.FileActionListener() {
             @Override
             public void onDownloadFile(CloudFile file) {
                 downloadFromTelegram(file);
@@ -171,16 +178,13 @@ public class MainActivity extends AppCompatActivity {
 
             @Override
             public void onDeleteFile(CloudFile file, int position) {
-                deleteFileFromVault(file, position);
+                deleteFileFromVault(file);
             }
             @Override
             public void onCancelUpload(CloudFile file, int position) {
                 android.util.Log.d("MainActivity", "Cancel requested for: " + file.getName());
-                TelegramUploader uploader = activeUploads.get(file.getId());
-                if (uploader != null) {
-                    uploader.cancel();
-                    // The onUploadCancelled callback will handle UI removal
-                } else {
+                // When found, the onUploadCancelled callback will handle UI removal
+                if (!TransferManager.getInstance().cancelUpload(file.getId())) {
                     // Uploader not found, maybe already finished or failed? Just remove it.
                     android.util.Log.w("MainActivity", "Uploader not found for cancellation. Removing manually.");
                     handleUploadFailure(file, "Upload cancelled.");
@@ -211,9 +215,7 @@ public class MainActivity extends AppCompatActivity {
                     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
                         if (Environment.isExternalStorageManager()) {
                             Toast.makeText(this, R.string.permission_granted_toast, Toast.LENGTH_SHORT).show();
-                            initializeAppFolder();
-                            loadFilesFromDatabase();
-                            updateUI();
+                            onStorageReady();
                         } else {
                             showPermissionDeniedDialog();
                         }
@@ -279,10 +281,6 @@ public class MainActivity extends AppCompatActivity {
         return new File(documentsDir, APP_FOLDER);
     }
 
-    private File getDatabaseFile() {
-        return new File(getAppFolder(), FILES_DATABASE);
-    }
-
     private void initializeAppFolder() {
         try {
             File appFolder = getAppFolder();
@@ -313,23 +311,31 @@ public class MainActivity extends AppCompatActivity {
             if (!Environment.isExternalStorageManager()) {
                 showAllFilesAccessDialog();
             } else {
-                initializeAppFolder();
-                loadFilesFromDatabase();
-                updateUI();
+                onStorageReady();
             }
         } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             if (!hasStoragePermission()) {
                 requestStoragePermissions();
             } else {
-                initializeAppFolder();
-                loadFilesFromDatabase();
-                updateUI();
+                onStorageReady();
             }
         } else {
-            initializeAppFolder();
-            loadFilesFromDatabase();
+            onStorageReady();
+        }
+    }
+
+    private void onStorageReady() {
+        initializeAppFolder();
+        if (repository.isLoaded()) {
+            refreshRecentFiles();
             updateUI();
+            resumeInterruptedUploads();
+        } else if (recentFiles.isEmpty()) {
+            showHomeSnapshot();
         }
+        // Off the UI thread, and skipped when the index is unchanged on disk;
+        // a finished read arrives as a LOADED change
+        repository.load();
     }
 
     private boolean hasStoragePermission() {
@@ -374,9 +380,7 @@ public class MainActivity extends AppCompatActivity {
         if (requestCode == PERMISSION_REQUEST_CODE) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
                 Toast.makeText(this, R.string.permission_granted_toast, Toast.LENGTH_SHORT).show();
-                initializeAppFolder();
-                loadFilesFromDatabase();
-                updateUI();
+                onStorageReady();
             } else {
                 showPermissionDeniedDialog();
             }
@@ -437,10 +441,8 @@ public class MainActivity extends AppCompatActivity {
                 return;
             }
 
-            if (fileSize > 50 * 1024 * 1024) {
-                Toast.makeText(this, R.string.error_file_too_large, Toast.LENGTH_LONG).show();
-                return;
-            }
+            // No size ceiling: files larger than the uploader's part size
+            // are split into parts and reassembled on download.
 
             CloudFile cloudFile = new CloudFile(
                     UUID.randomUUID().toString(),
@@ -451,112 +453,153 @@ public class MainActivity extends AppCompatActivity {
                     false
             );
 
-            allCloudFiles.add(0, cloudFile);
-            recentFiles.add(0, cloudFile);
-
-            if (recentFiles.size() > RECENT_FILES_LIMIT) {
-                recentFiles.remove(RECENT_FILES_LIMIT);
-            }
-
-            fileAdapter.notifyItemInserted(0);
+            // The list picks it up from the repository's change event
+            repository.add(cloudFile);
             recyclerViewFiles.smoothScrollToPosition(0);
-            updateUI();
-            saveFileToDatabase(cloudFile);
 
             Snackbar.make(findViewById(android.R.id.content),
                     getString(R.string.uploading, fileName),
                     Snackbar.LENGTH_SHORT).show();
 
-            uploadToTelegram(cloudFile, fileUri);
+            // The journal is written off the UI thread; the upload is queued once it is on disk
+            Context appContext = getApplicationContext();
+            String targetChatId = chatId;
+            TransferManager.getInstance().submitControl(() -> {
+                UploadJournal journal = UploadJournal.create(
+                        appContext, cloudFile.getId(), fileUri, fileName, targetChatId);
+                runOnUiThread(() -> {
+                    if (repository.get(cloudFile.getId()) == null) {
+                        // Removed while its journal was written
+                        journal.delete();
+                    } else if (!TransferManager.getInstance().isUploading(cloudFile.getId())) {
+                        // Unless resumeInterruptedUploads found the journal first
+                        uploadToTelegram(cloudFile, journal, TransferManager.Lane.USER);
+                    }
+                });
+            });
 
         } catch (Exception e) {
             Toast.makeText(this, getString(R.string.error_add_file, e.getMessage()), Toast.LENGTH_SHORT).show();
         }
     }
 
-    private void uploadToTelegram(CloudFile cloudFile, Uri fileUri) {
-        new Thread(() -> {
-            TelegramUploader uploader = new TelegramUploader(
-                    getApplicationContext(), botToken, chatId, fileUri, cloudFile.getName(),
-                    new TelegramUploader.UploadCallback() {
-                        // ... (onUploadProgress is unchanged)
+    /**
+     * Picks up uploads that were still running when the process last died.
+     * Runs once per process; uploads started by an earlier activity instance
+     * keep running on their own threads.
+     */
+    private void resumeInterruptedUploads() {
+        if (interruptedUploadsResumed) return;
+        interruptedUploadsResumed = true;
 
-                        @Override
-                        public void onUploadProgress(int progress) {
-                            runOnUiThread(() -> {
-                                android.util.Log.d("MainActivity", "📤 Upload progress: " + progress + "% for " + cloudFile.getName());
-                                cloudFile.setUploadProgress(progress);
-                            });
-                        }
+        for (UploadJournal journal : UploadJournal.loadAll(this)) {
+            // Picked before the vault finished loading; already running and writing its journal
+            if (TransferManager.getInstance().isUploading(journal.getCloudFileId())) continue;
 
-                        @Override
-                        public void onUploadSuccess(String fileId, String messageId) {
-                            runOnUiThread(() -> {
-                                activeUploads.remove(cloudFile.getId()); // --- CLEANUP MAP ---
-
-                                android.util.Log.d("MainActivity", "✅ Upload complete: " + cloudFile.getName());
-
-                                // ... (rest of the method is unchanged)
-                                cloudFile.setUploaded(true);
-                                cloudFile.setUploadProgress(100);
-                                cloudFile.setFileId(fileId);
-                                cloudFile.setMessageId(messageId);
-                                updateFileInDatabase(cloudFile);
-                                loadFilesFromDatabase();
-                                updateUI();
-                                Snackbar.make(findViewById(android.R.id.content),
-                                        getString(R.string.upload_success_snackbar, cloudFile.getName()),
-                                        Snackbar.LENGTH_LONG).show();
-                            });
-                        }
+            CloudFile cloudFile = repository.get(journal.getCloudFileId());
 
-                        @Override
-                        public void onUploadFailed(String error) {
-                            runOnUiThread(() -> {
-                                activeUploads.remove(cloudFile.getId()); // --- CLEANUP MAP ---
+            if (cloudFile == null) {
+                // Removed from the vault while its upload was interrupted
+                discardJournal(journal);
+            } else if (cloudFile.isUploaded()) {
+                // Finished, but the process died before the journal was removed
+                journal.delete();
+            } else {
+                android.util.Log.d("MainActivity", "Resuming interrupted upload of " + cloudFile.getName());
+                uploadToTelegram(cloudFile, journal, TransferManager.Lane.BACKGROUND);
+            }
+        }
+    }
 
-                                new AlertDialog.Builder(MainActivity.this)
-                                        .setTitle(R.string.upload_failed_dialog_title)
-                                        .setMessage(getString(R.string.upload_failed_dialog_message, cloudFile.getName(), error))
-                                        .setPositiveButton(R.string.ok, (dialog, which) -> {
-                                            handleUploadFailure(cloudFile, null); // Call helper
-                                        })
-                                        .show();
-                            });
-                        }
+    private void discardJournal(UploadJournal journal) {
+        List<String> messageIds = new ArrayList<>();
+        for (FilePart part : journal.getCompletedParts()) {
+            messageIds.add(part.getMessageId());
+        }
+        journal.delete();
+        if (messageIds.isEmpty()) return;
 
-                        // --- NEW CALLBACK IMPLEMENTATION ---
-                        @Override
-                        public void onUploadCancelled() {
-                            runOnUiThread(() -> {
-                                android.util.Log.d("MainActivity", "Upload cancelled for " + cloudFile.getName());
-                                activeUploads.remove(cloudFile.getId()); // Clean up map
-                                handleUploadFailure(cloudFile, "Upload cancelled for " + cloudFile.getName());
-                            });
-                        }
-                        // --- END NEW CALLBACK IMPLEMENTATION ---
+        TransferManager.getInstance().submitControl(() -> new TelegramDeleter(botToken, journal.getChatId(), messageIds,
+                new TelegramDeleter.DeleteCallback() {
+                    @Override
+                    public void onDeleteSuccess() {
+                        android.util.Log.d("MainActivity", "Deleted leftover parts of " + journal.getFileName());
                     }
-            );
 
-            // --- STORE THE UPLOADER ---
-            activeUploads.put(cloudFile.getId(), uploader);
-            // --- START THE UPLOAD ---
-            uploader.upload();
+                    @Override
+                    public void onDeleteFailed(String error) {
+                        android.util.Log.w("MainActivity", "Could not delete leftover parts: " + error);
+                    }
+                }).delete());
+    }
+
+    private void uploadToTelegram(CloudFile cloudFile, UploadJournal journal, TransferManager.Lane lane) {
+        TelegramUploader uploader = new TelegramUploader(
+                getApplicationContext(), botToken, journal.getChatId(), journal.getSourceUri(),
+                cloudFile.getName(), journal,
+                new TelegramUploader.UploadCallback() {
+                    // Progress reaches the row through TransferProgress, keyed by the file id
+
+                    @Override
+                    public void onUploadSuccess(String fileId, String messageId, List<FilePart> parts,
+                                                String thumbFileId) {
+                        runOnUiThread(() -> {
+                            android.util.Log.d("MainActivity", "✅ Upload complete: " + cloudFile.getName());
+
+                            // ... (rest of the method is unchanged)
+                            cloudFile.setUploaded(true);
+                            cloudFile.setUploadProgress(100);
+                            cloudFile.setFileId(fileId);
+                            cloudFile.setMessageId(messageId);
+                            cloudFile.setParts(parts);
+                            cloudFile.setThumbFileId(thumbFileId);
+                            // Only once the index has it on disk is the upload safe to forget
+                            repository.update(cloudFile, journal::delete);
+                            Snackbar.make(findViewById(android.R.id.content),
+                                    getString(R.string.upload_success_snackbar, cloudFile.getName()),
+                                    Snackbar.LENGTH_LONG).show();
+                        });
+                    }
 
-        }).start();
-    }
-    private void handleUploadFailure(CloudFile cloudFile, String snackbarMessage) {
-        // 1. Remove the file from the database FIRST
-        deleteFileFromDatabase(cloudFile);
+                    @Override
+                    public void onUploadFailed(String error) {
+                        runOnUiThread(() -> {
+                            new AlertDialog.Builder(MainActivity.this)
+                                    .setTitle(R.string.upload_failed_dialog_title)
+                                    .setMessage(getString(R.string.upload_failed_dialog_message, cloudFile.getName(), error))
+                                    // The journal keeps the sent parts; a retry resumes after them
+                                    .setPositiveButton(R.string.retry, (dialog, which) -> {
+                                        uploadToTelegram(cloudFile, journal, TransferManager.Lane.USER);
+                                    })
+                                    .setNegativeButton(R.string.delete, (dialog, which) -> {
+                                        discardJournal(journal);
+                                        handleUploadFailure(cloudFile, null); // Call helper
+                                    })
+                                    // Dismissed: the next app start resumes it
+                                    .show();
+                        });
+                    }
 
-        // 2. Force the app to re-read the (now updated) database file
-        //    This removes the cancelled/failed item from allCloudFiles and recentFiles lists
-        loadFilesFromDatabase();
+                    // --- NEW CALLBACK IMPLEMENTATION ---
+                    @Override
+                    public void onUploadCancelled() {
+                        runOnUiThread(() -> {
+                            android.util.Log.d("MainActivity", "Upload cancelled for " + cloudFile.getName());
+                            handleUploadFailure(cloudFile, "Upload cancelled for " + cloudFile.getName());
+                        });
+                    }
+                    // --- END NEW CALLBACK IMPLEMENTATION ---
+                }
+        );
 
-        // 3. Update the UI based on the freshly loaded data
-        updateUI(); // This already calls notifyDataSetChanged()
+        // Queued behind other uploads; the registry lets the row cancel it
+        TransferManager.getInstance().submitUpload(cloudFile.getId(), uploader, lane, cloudFile.getSize());
+    }
+    private void handleUploadFailure(CloudFile cloudFile, String snackbarMessage) {
+        // 1. Remove the file from the vault; the lists on screen follow its change event
+        repository.remove(cloudFile.getId());
 
-        // 4. Show a message if provided
+        // 2. Show a message if provided
         if (snackbarMessage != null) {
             Snackbar.make(findViewById(android.R.id.content), snackbarMessage, Snackbar.LENGTH_SHORT).show();
         }
@@ -585,9 +628,9 @@ public class MainActivity extends AppCompatActivity {
                 .create();
         progressDialog.show();
 
-        new Thread(() -> {
+        TransferManager.getInstance().submitDownload(TransferManager.Lane.USER, file.getSize(), () -> {
             TelegramDownloader downloader = new TelegramDownloader(
-                    getApplicationContext(), botToken, file.getFileId(), file.getName(),
+                    getApplicationContext(), botToken, file.getFileId(), file.getName(), file.getParts(),
                     new TelegramDownloader.DownloadCallback() {
                         @Override
                         public void onDownloadProgress(int progress) {
@@ -623,7 +666,7 @@ public class MainActivity extends AppCompatActivity {
                     }
             );
             downloader.download();
-        }).start();
+        });
     }
 
     private void openDownloadedFile(Uri fileUri, String fileName) {
@@ -687,171 +730,101 @@ public class MainActivity extends AppCompatActivity {
                 .show();
     }
 
-    // ==================== DATABASE OPERATIONS (UNMODIFIED) ====================
+    // ==================== VAULT ====================
 
-    private void saveFileToDatabase(CloudFile file) {
-        if (!hasStoragePermission()) return;
-        try {
-            initializeAppFolder();
-            File dbFile = getDatabaseFile();
-            try (FileOutputStream fos = new FileOutputStream(dbFile, true)) {
-                String line = String.format("%s|%s|%d|%d|%s|%b|%s|%s\n",
-                        file.getId(), file.getName(), file.getSize(), file.getDate(),
-                        file.getPath(), file.isUploaded(), file.getFileId(), file.getMessageId());
-                fos.write(line.getBytes());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    /**
+     * Draws the screen as it was last saved while the index loads.
+     */
+    private void showHomeSnapshot() {
+        HomeSnapshot snapshot = repository.readHomeSnapshot();
+        if (snapshot == null) return;
+        homeSnapshotSummary = snapshot.summary;
+        recentFiles.addAll(snapshot.recentFiles);
+        updateUI();
     }
 
-    private void updateFileInDatabase(CloudFile file) {
-        if (!hasStoragePermission()) return;
-        List<CloudFile> allFiles = new ArrayList<>();
-        File dbFile = getDatabaseFile();
-        if (dbFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(dbFile);
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(fis))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 6) {
-                        if (parts[0].equals(file.getId())) {
-                            allFiles.add(file);
-                        } else {
-                            CloudFile existingFile = parseFileLine(parts);
-                            if (existingFile != null) allFiles.add(existingFile);
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        rewriteDatabase(allFiles);
-    }
-
-    private void deleteFileFromDatabase(CloudFile file) {
-        if (!hasStoragePermission()) return;
-        List<CloudFile> allFiles = new ArrayList<>();
-        File dbFile = getDatabaseFile();
-        if (dbFile.exists()) {
-            try (FileInputStream fis = new FileInputStream(dbFile);
-                 BufferedReader reader = new BufferedReader(new InputStreamReader(fis))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 6 && !parts[0].equals(file.getId())) {
-                        CloudFile existingFile = parseFileLine(parts);
-                        if (existingFile != null) allFiles.add(existingFile);
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        rewriteDatabase(allFiles);
+    private void refreshRecentFiles() {
+        recentFiles.clear();
+        recentFiles.addAll(repository.getRecent(RECENT_FILES_LIMIT));
     }
 
-    private void rewriteDatabase(List<CloudFile> files) {
-        if (!hasStoragePermission()) return;
-        try {
-            initializeAppFolder();
-            File dbFile = getDatabaseFile();
-            try (FileOutputStream fos = new FileOutputStream(dbFile, false)) {
-                for (CloudFile file : files) {
-                    String line = String.format("%s|%s|%d|%d|%s|%b|%s|%s\n",
-                            file.getId(), file.getName(), file.getSize(), file.getDate(),
-                            file.getPath(), file.isUploaded(), file.getFileId(), file.getMessageId());
-                    fos.write(line.getBytes());
-                }
+    private void onVaultChanged(VaultRepository.ChangeType type, List<String> ids) {
+        if (type == VaultRepository.ChangeType.LOADED) {
+            homeSnapshotSummary = null;
+            if (SettingsUtils.isConfigured(this)) {
+                refreshRecentFiles();
+                resumeInterruptedUploads();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            updateUI();
+            return;
         }
-    }
-
-    private void loadFilesFromDatabase() {
-        if (!hasStoragePermission()) return;
-        allCloudFiles.clear();
-        recentFiles.clear();
-
-        File dbFile = getDatabaseFile();
-        if (!dbFile.exists()) return;
-
-        try (FileInputStream fis = new FileInputStream(dbFile);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(fis))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                CloudFile file = parseFileLine(line.split("\\|"));
-                if (file != null) allCloudFiles.add(file);
+        for (String id : ids) {
+            int position = indexOfRecent(id);
+            switch (type) {
+                case INSERTED:
+                    CloudFile inserted = repository.get(id);
+                    if (inserted == null || position >= 0) break;
+                    recentFiles.add(0, inserted);
+                    if (recentFiles.size() > RECENT_FILES_LIMIT) {
+                        recentFiles.remove(RECENT_FILES_LIMIT);
+                    }
+                    break;
+                case UPDATED:
+                    if (position < 0) break;
+                    CloudFile updated = repository.get(id);
+                    if (updated != null) recentFiles.set(position, updated);
+                    break;
+                case REMOVED:
+                    if (position < 0) break;
+                    recentFiles.remove(position);
+                    if (repository.isLoaded() && repository.size() > recentFiles.size()
+                            && recentFiles.size() < RECENT_FILES_LIMIT) {
+                        // Backfill the slot with the next newest file
+                        refreshRecentFiles();
+                    }
+                    break;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        allCloudFiles.sort((f1, f2) -> Long.compare(f2.getDate(), f1.getDate()));
-
-        int limit = Math.min(RECENT_FILES_LIMIT, allCloudFiles.size());
-        for (int i = 0; i < limit; i++) {
-            recentFiles.add(allCloudFiles.get(i));
         }
+        fileAdapter.submitList(recentFiles);
+        updateSummary();
     }
 
-    private CloudFile parseFileLine(String[] parts) {
-        try {
-            if (parts.length >= 8) {
-                return new CloudFile(parts[0], parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]),
-                        parts[4], Boolean.parseBoolean(parts[5]), parts[6], parts[7]);
-            } else if (parts.length == 6) {
-                return new CloudFile(parts[0], parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]),
-                        parts[4], Boolean.parseBoolean(parts[5]));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+    private int indexOfRecent(String id) {
+        for (int i = 0; i < recentFiles.size(); i++) {
+            if (recentFiles.get(i).getId().equals(id)) return i;
         }
-        return null;
+        return -1;
     }
 
     // ==================== UI & SORTING ====================
 
     public void updateUI() {
-        int imageCount = 0;
-        int videoCount = 0;
-        int pdfCount = 0;
-        int otherCount = 0;
-        long totalSize = 0;
-
-        for (CloudFile file : allCloudFiles) {
-            totalSize += file.getSize();
-            String extension = file.getFileExtension();
-            if (FileUtils.isImage(file.getName())) {
-                imageCount++;
-            } else if (FileUtils.isVideo(file.getName())) {
-                videoCount++;
-            } else if ("pdf".equals(extension)) {
-                pdfCount++;
-            } else {
-                otherCount++;
-            }
-        }
+        updateSummary();
+        fileAdapter.submitList(recentFiles);
+    }
+
+    /**
+     * Refreshes the counters and the empty state, leaving the list alone.
+     */
+    private void updateSummary() {
+        VaultSummary summary = homeSnapshotSummary != null && !repository.isLoaded()
+                ? homeSnapshotSummary : repository.getSummary();
 
-        tvTotalImages.setText(String.valueOf(imageCount));
-        tvTotalVideos.setText(String.valueOf(videoCount));
-        tvTotalPDFs.setText(String.valueOf(pdfCount));
-        tvTotalOther.setText(String.valueOf(otherCount));
+        tvTotalImages.setText(String.valueOf(summary.imageCount));
+        tvTotalVideos.setText(String.valueOf(summary.videoCount));
+        tvTotalPDFs.setText(String.valueOf(summary.pdfCount));
+        tvTotalOther.setText(String.valueOf(summary.otherCount));
 
-        if (allCloudFiles.isEmpty()) {
+        if (summary.getFileCount() == 0) {
             emptyStateLayout.setVisibility(View.VISIBLE);
             recyclerViewFiles.setVisibility(View.GONE);
             tvStorageInfo.setText(getString(R.string.storage_info_format, 0, "0 B"));
         } else {
             emptyStateLayout.setVisibility(View.GONE);
             recyclerViewFiles.setVisibility(View.VISIBLE);
-            String sizeStr = FileUtils.formatFileSize(totalSize);
-            tvStorageInfo.setText(getString(R.string.storage_info_format, allCloudFiles.size(), sizeStr));
+            String sizeStr = FileUtils.formatFileSize(summary.totalSize);
+            tvStorageInfo.setText(getString(R.string.storage_info_format, summary.getFileCount(), sizeStr));
         }
-        fileAdapter.notifyDataSetChanged();
     }
 
     private void showSortDialog() {
@@ -870,15 +843,10 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void sortFiles(int sortType) {
-        switch (sortType) {
-            case 0: recentFiles.sort((f1, f2) -> f1.getName().compareToIgnoreCase(f2.getName())); break;
-            case 1: recentFiles.sort((f1, f2) -> f2.getName().compareToIgnoreCase(f1.getName())); break;
-            case 2: recentFiles.sort((f1, f2) -> Long.compare(f2.getDate(), f1.getDate())); break;
-            case 3: recentFiles.sort((f1, f2) -> Long.compare(f1.getDate(), f2.getDate())); break;
-            case 4: recentFiles.sort((f1, f2) -> Long.compare(f2.getSize(), f1.getSize())); break;
-            case 5: recentFiles.sort((f1, f2) -> Long.compare(f1.getSize(), f2.getSize())); break;
-        }
-        fileAdapter.notifyDataSetChanged();
+        FileSort.sort(recentFiles, sortType);
+        // The image viewer pages in the same order
+        fileAdapter.setSortType(sortType);
+        fileAdapter.submitList(recentFiles);
     }
 
     private void shareDownloadedFile(CloudFile file) {
@@ -902,9 +870,9 @@ public class MainActivity extends AppCompatActivity {
                 .create();
         progressDialog.show();
 
-        new Thread(() -> {
+        TransferManager.getInstance().submitDownload(TransferManager.Lane.INTERACTIVE, file.getSize(), () -> {
             TelegramDownloader downloader = new TelegramDownloader(
-                    getApplicationContext(), botToken, file.getFileId(), file.getName(),
+                    getApplicationContext(), botToken, file.getFileId(), file.getName(), file.getParts(),
                     new TelegramDownloader.DownloadCallback() {
                         @Override
                         public void onDownloadProgress(int progress) {}
@@ -921,7 +889,6 @@ public class MainActivity extends AppCompatActivity {
                                     shareIntent.putExtra(Intent.EXTRA_STREAM, contentUri);
                                     shareIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
                                     startActivity(Intent.createChooser(shareIntent, getString(R.string.menu_share_file)));
-                                    scheduleTempFileDeletion(fileToShare);
                                 } catch (Exception e) {
                                     Toast.makeText(MainActivity.this, getString(R.string.error_sharing_file, e.getMessage()), Toast.LENGTH_LONG).show();
                                 }
@@ -941,24 +908,16 @@ public class MainActivity extends AppCompatActivity {
                         }
                     }
             );
+            // Shared again later without downloading; the target may read it long after
+            downloader.setContentCache(ContentCache.getInstance(this));
             downloader.download();
-        }).start();
-    }
-
-    private void scheduleTempFileDeletion(File file) {
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
-            if (file != null && file.exists()) {
-                if (file.delete()) {
-                    android.util.Log.i("FileCleanup", "Temp share file deleted: " + file.getName());
-                } else {
-                    android.util.Log.w("FileCleanup", "Failed to delete temp file: " + file.getName());
-                }
-            }
-        }, 15000);
+        });
     }
 
-    private void deleteFileFromVault(CloudFile file, int position) {
+    private void deleteFileFromVault(CloudFile file) {
         if (!file.isUploaded() || file.getMessageId() == null || file.getMessageId().isEmpty()) {
+            // Still uploading: its onUploadCancelled removes the row and the parts already sent
+            if (TransferManager.getInstance().cancelUpload(file.getId())) return;
 
             // --- MODIFIED TO USE HELPER ---
             handleUploadFailure(file, getString(R.string.removed_local_snackbar, file.getName()));
@@ -979,19 +938,15 @@ public class MainActivity extends AppCompatActivity {
                 .create();
         progressDialog.show();
 
-        new Thread(() -> {
+        TransferManager.getInstance().submitControl(() -> {
             TelegramDeleter deleter = new TelegramDeleter(
-                    botToken, chatId, file.getMessageId(),
+                    botToken, chatId, file.getMessageIds(),
                     new TelegramDeleter.DeleteCallback() {
                         @Override
                         public void onDeleteSuccess() {
                             runOnUiThread(() -> {
                                 progressDialog.dismiss();
-                                recentFiles.remove(position);
-                                fileAdapter.notifyItemRemoved(position);
-                                allCloudFiles.remove(file);
-                                deleteFileFromDatabase(file);
-                                updateUI();
+                                repository.remove(file.getId());
                                 Snackbar.make(findViewById(android.R.id.content),
                                         getString(R.string.delete_success_snackbar, file.getName()),
                                         Snackbar.LENGTH_LONG).show();
@@ -1012,6 +967,6 @@ public class MainActivity extends AppCompatActivity {
                     }
             );
             deleter.delete();
-        }).start();
+        });
     }
 }
\ No newline at end of file
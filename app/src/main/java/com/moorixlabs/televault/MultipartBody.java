@@ -0,0 +1,149 @@
+package com.moorixlabs.televault;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A multipart/form-data request body whose exact length is known before any
+ * byte is written. Passing {@link #getContentLength()} to
+ * HttpURLConnection.setFixedLengthStreamingMode lets the file be streamed
+ * straight to the socket instead of being buffered on the heap first.
+ */
+public class MultipartBody {
+
+    private static final String LINE_END = "\r\n";
+    private static final String TWO_HYPHENS = "--";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String boundary;
+    private final List<Part> parts = new ArrayList<>();
+
+    public interface ProgressListener {
+        void onBytesWritten(int bytes);
+    }
+
+    private static class Part {
+        final byte[] header;
+        final byte[] data;          // Inline value, or null when streamed
+        final InputStream source;   // Streamed content, or null for inline values
+        final long length;
+
+        Part(byte[] header, byte[] data, InputStream source, long length) {
+            this.header = header;
+            this.data = data;
+            this.source = source;
+            this.length = length;
+        }
+    }
+
+    public MultipartBody(String boundary) {
+        this.boundary = boundary;
+    }
+
+    public MultipartBody addFormField(String name, String value) {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        parts.add(new Part(header(name, null, null), data, null, data.length));
+        return this;
+    }
+
+    /**
+     * Adds a file part that is read from {@code source} while writing.
+     * Exactly {@code length} bytes are sent.
+     */
+    public MultipartBody addFilePart(String name, String fileName, String contentType,
+                                     InputStream source, long length) {
+        parts.add(new Part(header(name, fileName, contentType), null, source, length));
+        return this;
+    }
+
+    /**
+     * Adds a small file part held in memory, e.g. a thumbnail.
+     */
+    public MultipartBody addFilePart(String name, String fileName, String contentType, byte[] data) {
+        parts.add(new Part(header(name, fileName, contentType), data, null, data.length));
+        return this;
+    }
+
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * Exact number of bytes {@link #writeTo} will produce.
+     */
+    public long getContentLength() {
+        long length = 0;
+        for (Part part : parts) {
+            length += part.header.length + part.length + LINE_END.length();
+        }
+        return length + closingBoundary().length;
+    }
+
+    /**
+     * Writes the body. Streamed parts are copied through a fixed-size buffer,
+     * so memory use does not depend on the file size.
+     *
+     * @param listener notified after each chunk of streamed content, may be null
+     * @throws IOException if a streamed source ends before its declared length
+     */
+    public void writeTo(OutputStream outputStream, ProgressListener listener) throws IOException {
+        byte[] buffer = null;
+        byte[] lineEnd = LINE_END.getBytes(StandardCharsets.US_ASCII);
+
+        for (Part part : parts) {
+            outputStream.write(part.header);
+
+            if (part.data != null) {
+                outputStream.write(part.data);
+            } else {
+                if (buffer == null) buffer = new byte[BUFFER_SIZE];
+                long remaining = part.length;
+                int bytesRead;
+                while (remaining > 0 &&
+                        (bytesRead = part.source.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    outputStream.write(buffer, 0, bytesRead);
+                    remaining -= bytesRead;
+                    if (listener != null) listener.onBytesWritten(bytesRead);
+                }
+                if (remaining > 0) {
+                    throw new IOException("File ended " + remaining + " bytes early");
+                }
+            }
+
+            outputStream.write(lineEnd);
+        }
+
+        outputStream.write(closingBoundary());
+        outputStream.flush();
+    }
+
+    private byte[] header(String name, String fileName, String contentType) {
+        StringBuilder header = new StringBuilder();
+        header.append(TWO_HYPHENS).append(boundary).append(LINE_END);
+        header.append("Content-Disposition: form-data; name=\"").append(escape(name)).append('"');
+        if (fileName != null) {
+            header.append("; filename=\"").append(escape(fileName)).append('"');
+        }
+        header.append(LINE_END);
+        if (contentType != null) {
+            header.append("Content-Type: ").append(contentType).append(LINE_END);
+        }
+        header.append(LINE_END);
+        return header.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] closingBoundary() {
+        return (TWO_HYPHENS + boundary + TWO_HYPHENS + LINE_END).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Quotes and line breaks would end the header value early.
+     */
+    private static String escape(String value) {
+        return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+    }
+}
@@ -8,5 +8,7 @@ public class MyApplication extends Application {
         super.onCreate();
 
         LocaleHelper.applyPersistedLocale(this);
+        TelegramApiClient.configureConnectionPool();
+        TelegramApiClient.setApiServer(SettingsUtils.getApiServer(this));
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.moorixlabs.televault;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the parts of one transfer on a shared executor, never more than
+ * {@code parallelism} at a time, so one large file cannot take over the
+ * pool. Results come back in completion order.
+ *
+ * Not thread-safe: a batch is driven by the thread coordinating its transfer.
+ */
+public class PartBatch<T> {
+
+    private final ExecutorCompletionService<T> completionService;
+    private final int parallelism;
+    private final Deque<Callable<T>> queued = new ArrayDeque<>();
+    private final List<Future<T>> running = new ArrayList<>();
+
+    public PartBatch(Executor executor, int parallelism) {
+        this.completionService = new ExecutorCompletionService<>(executor);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public void add(Callable<T> task) {
+        queued.add(task);
+        fill();
+    }
+
+    /**
+     * Waits for the next part to finish and starts a queued one in its place.
+     *
+     * @throws ExecutionException if the part failed
+     */
+    public T take() throws InterruptedException, ExecutionException {
+        Future<T> future = completionService.take();
+        running.remove(future);
+        fill();
+        return future.get();
+    }
+
+    /**
+     * Drops queued parts and interrupts the ones still running.
+     */
+    public void cancelAll() {
+        queued.clear();
+        for (Future<T> future : running) {
+            future.cancel(true);
+        }
+        running.clear();
+    }
+
+    private void fill() {
+        while (running.size() < parallelism && !queued.isEmpty()) {
+            running.add(completionService.submit(queued.poll()));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.moorixlabs.televault;
+
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sidecar state of a ".part" download: which Telegram file it holds and how
+ * many bytes of each segment are durably on disk. A single document is one
+ * segment; a chunked file has one segment per part.
+ *
+ * Offsets are only recorded after the data has been forced to storage, so a
+ * resumed download can trust everything below them.
+ */
+public class PartialDownload {
+
+    private static final String TAG = "PartialDownload";
+    private static final String STATE_SUFFIX = ".state";
+    static final long UNKNOWN_SIZE = -1;
+
+    private final AtomicFile file;
+    private final String fileId;
+    private final long[] sizes;
+    private final long[] completed;
+
+    private PartialDownload(AtomicFile file, String fileId, long[] sizes) {
+        this.file = file;
+        this.fileId = fileId;
+        this.sizes = sizes.clone();
+        this.completed = new long[sizes.length];
+    }
+
+    /**
+     * Loads the state next to {@code partFile}. When there is none, or it was
+     * written for another file or layout, the part file is discarded and a
+     * fresh state is started.
+     *
+     * @param segmentSizes expected size of each segment, or {@link #UNKNOWN_SIZE}
+     */
+    public static PartialDownload open(File partFile, String fileId, long[] segmentSizes) {
+        AtomicFile stateFile = new AtomicFile(new File(partFile.getPath() + STATE_SUFFIX));
+        PartialDownload state = new PartialDownload(stateFile, fileId, segmentSizes);
+
+        if (partFile.exists() && stateFile.getBaseFile().exists()) {
+            try {
+                JSONObject json = new JSONObject(new String(stateFile.readFully(), StandardCharsets.UTF_8));
+                if (state.restore(json)) {
+                    return state;
+                }
+                Log.i(TAG, partFile.getName() + " belongs to another file, starting over");
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Unreadable state for " + partFile.getName() + ", starting over", e);
+            }
+        }
+
+        partFile.delete();
+        state.save();
+        return state;
+    }
+
+    private boolean restore(JSONObject json) throws JSONException {
+        JSONArray segments = json.getJSONArray("segments");
+        if (!fileId.equals(json.getString("file_id")) || segments.length() != sizes.length) {
+            return false;
+        }
+
+        long[] restoredSizes = new long[sizes.length];
+        long[] restoredCompleted = new long[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            JSONObject segment = segments.getJSONObject(i);
+            restoredSizes[i] = segment.getLong("size");
+            restoredCompleted[i] = segment.getLong("completed");
+            if (sizes[i] != UNKNOWN_SIZE && restoredSizes[i] != sizes[i]) {
+                return false;
+            }
+        }
+        System.arraycopy(restoredSizes, 0, sizes, 0, sizes.length);
+        System.arraycopy(restoredCompleted, 0, completed, 0, sizes.length);
+        return true;
+    }
+
+    public int getSegmentCount() {
+        return sizes.length;
+    }
+
+    public synchronized long getSize(int segment) {
+        return sizes[segment];
+    }
+
+    /**
+     * Records the size of a segment once the server has reported it.
+     */
+    public synchronized void setSize(int segment, long size) {
+        sizes[segment] = size;
+        save();
+    }
+
+    public synchronized long getCompleted(int segment) {
+        return completed[segment];
+    }
+
+    public synchronized boolean isComplete(int segment) {
+        return sizes[segment] != UNKNOWN_SIZE && completed[segment] == sizes[segment];
+    }
+
+    /**
+     * Records that the first {@code bytes} of a segment are on disk. Callers
+     * must force the data to storage first.
+     */
+    public synchronized void checkpoint(int segment, long bytes) {
+        completed[segment] = bytes;
+        save();
+    }
+
+    /**
+     * Sum of the segment sizes known so far.
+     */
+    public synchronized long getKnownTotalSize() {
+        long total = 0;
+        for (long size : sizes) {
+            if (size != UNKNOWN_SIZE) total += size;
+        }
+        return total;
+    }
+
+    public synchronized long getCompletedBytes() {
+        long total = 0;
+        for (long bytes : completed) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    public void delete() {
+        file.delete();
+    }
+
+    private void save() {
+        FileOutputStream stream = null;
+        try {
+            JSONArray segments = new JSONArray();
+            for (int i = 0; i < sizes.length; i++) {
+                segments.put(new JSONObject()
+                        .put("size", sizes[i])
+                        .put("completed", completed[i]));
+            }
+            JSONObject json = new JSONObject()
+                    .put("file_id", fileId)
+                    .put("segments", segments);
+
+            stream = file.startWrite();
+            stream.write(json.toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(stream);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Could not write download state", e);
+            if (stream != null) file.failWrite(stream);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link VaultStore} on the indexed {@link VaultDatabase}.
+ */
+public class RoomVaultStore implements VaultStore {
+
+    private final VaultFileDao dao;
+
+    public RoomVaultStore(Context context) {
+        this.dao = VaultDatabase.getInstance(context).files();
+    }
+
+    @Override
+    public void add(CloudFile file) {
+        dao.upsert(VaultFileEntity.from(file));
+    }
+
+    @Override
+    public void addAll(List<CloudFile> files) {
+        List<VaultFileEntity> entities = new ArrayList<>(files.size());
+        for (CloudFile file : files) {
+            entities.add(VaultFileEntity.from(file));
+        }
+        dao.upsertAll(entities);
+    }
+
+    @Override
+    public void update(CloudFile file) {
+        dao.upsert(VaultFileEntity.from(file));
+    }
+
+    @Override
+    public void delete(String id) {
+        dao.deleteById(id);
+    }
+
+    @Override
+    public List<CloudFile> getAll() {
+        return toCloudFiles(dao.getAllByDate());
+    }
+
+    @Override
+    public List<CloudFile> getByCategory(FileCategory category) {
+        return toCloudFiles(dao.getByCategory(category.name()));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return dao.count() == 0;
+    }
+
+    private static List<CloudFile> toCloudFiles(List<VaultFileEntity> entities) {
+        List<CloudFile> files = new ArrayList<>(entities.size());
+        for (VaultFileEntity entity : entities) {
+            files.add(entity.toCloudFile());
+        }
+        return files;
+    }
+}
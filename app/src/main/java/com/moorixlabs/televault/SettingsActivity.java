@@ -10,6 +10,7 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SwitchCompat;
 import androidx.cardview.widget.CardView;
 import androidx.core.content.ContextCompat;
 
@@ -17,6 +18,10 @@ public class SettingsActivity extends AppCompatActivity {
 
     private EditText etBotToken;
     private EditText etChatId;
+    private EditText etParallelStreams;
+    private EditText etContentCacheMb;
+    private EditText etApiServer;
+    private SwitchCompat switchJournalIndex;
     private TextView tvConnectionStatus;
     private Button btnCheckConnection;
     private Button btnSaveSettings;
@@ -63,6 +68,10 @@ public class SettingsActivity extends AppCompatActivity {
     private void initializeViews() {
         etBotToken = findViewById(R.id.etBotToken);
         etChatId = findViewById(R.id.etChatId);
+        etParallelStreams = findViewById(R.id.etParallelStreams);
+        etContentCacheMb = findViewById(R.id.etContentCacheMb);
+        etApiServer = findViewById(R.id.etApiServer);
+        switchJournalIndex = findViewById(R.id.switchJournalIndex);
         tvConnectionStatus = findViewById(R.id.tvConnectionStatus);
         btnCheckConnection = findViewById(R.id.btnCheckConnection);
         btnSaveSettings = findViewById(R.id.btnSaveSettings);
@@ -85,6 +94,13 @@ public class SettingsActivity extends AppCompatActivity {
 
         etBotToken.setText(token);
         etChatId.setText(chatId);
+        etParallelStreams.setText(String.valueOf(SettingsUtils.getTransferParallelism(this)));
+        etContentCacheMb.setText(String.valueOf(SettingsUtils.getContentCacheMb(this)));
+
+        // The public endpoint shows as the hint, not as text
+        String apiServer = SettingsUtils.getApiServer(this);
+        etApiServer.setText(SettingsUtils.DEFAULT_API_SERVER.equals(apiServer) ? "" : apiServer);
+        switchJournalIndex.setChecked(VaultStore.ENGINE_JOURNAL.equals(SettingsUtils.getIndexEngine(this)));
 
         // Use ContextCompat for color loading
         if (SettingsUtils.isConfigured(this)) {
@@ -167,7 +183,31 @@ public class SettingsActivity extends AppCompatActivity {
             return;
         }
 
+        String apiServer = getEnteredApiServer();
+        if (apiServer == null) {
+            Toast.makeText(this, R.string.api_server_invalid, Toast.LENGTH_LONG).show();
+            return;
+        }
+
         SettingsUtils.saveSettings(this, token, chatId);
+        SettingsUtils.saveApiServer(this, apiServer);
+        TelegramApiClient.setApiServer(apiServer);
+        SettingsUtils.saveIndexEngine(this, switchJournalIndex.isChecked()
+                ? VaultStore.ENGINE_JOURNAL : VaultStore.ENGINE_ROOM);
+
+        // Invalid or empty input keeps the current value
+        try {
+            int parallelism = Integer.parseInt(etParallelStreams.getText().toString().trim());
+            SettingsUtils.saveTransferParallelism(this, parallelism);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            int cacheMb = Integer.parseInt(etContentCacheMb.getText().toString().trim());
+            SettingsUtils.saveContentCacheMb(this, cacheMb);
+            ContentCache.getInstance(this).setMaxBytes(SettingsUtils.getContentCacheBytes(this));
+        } catch (NumberFormatException ignored) {
+        }
+
         Toast.makeText(this, R.string.settings_saved, Toast.LENGTH_LONG).show();
 
         setResult(RESULT_OK);
@@ -183,17 +223,26 @@ public class SettingsActivity extends AppCompatActivity {
             return;
         }
 
+        String apiServer = getEnteredApiServer();
+        if (apiServer == null) {
+            Toast.makeText(this, R.string.api_server_invalid, Toast.LENGTH_LONG).show();
+            return;
+        }
+
         ProgressDialog progressDialog = new ProgressDialog(this);
         progressDialog.setMessage(getString(R.string.test_connection_in_progress));
         progressDialog.setCancelable(false);
         progressDialog.show();
 
-        new TelegramTester().runTest(token, chatId, new TelegramTester.TestCallback() {
+        new TelegramTester().runTest(apiServer, token, chatId, new TelegramTester.TestCallback() {
             @Override
-            public void onTestSuccess(String botName, String messageId) {
+            public void onTestSuccess(String botName, String messageId, boolean localMode) {
+                // Remembered per server, so it holds whether or not the settings are saved
+                SettingsUtils.setLocalApiMode(SettingsActivity.this, apiServer, localMode);
                 runOnUiThread(() -> {
                     progressDialog.dismiss();
-                    tvConnectionStatus.setText(getString(R.string.status_success_format, botName));
+                    tvConnectionStatus.setText(getString(localMode
+                            ? R.string.status_success_local_format : R.string.status_success_format, botName));
                     tvConnectionStatus.setTextColor(ContextCompat.getColor(SettingsActivity.this, android.R.color.holo_green_light));
                     Toast.makeText(SettingsActivity.this, R.string.test_success, Toast.LENGTH_LONG).show();
                 });
@@ -215,4 +264,13 @@ public class SettingsActivity extends AppCompatActivity {
             }
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the normalized server URL, or null if it is not https. The bot
+     *         token travels in every URL, so cleartext stays disabled.
+     */
+    private String getEnteredApiServer() {
+        String apiServer = SettingsUtils.normalizeApiServer(etApiServer.getText().toString());
+        return apiServer.startsWith("https://") ? apiServer : null;
+    }
+}
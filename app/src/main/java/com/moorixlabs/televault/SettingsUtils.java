@@ -8,6 +8,22 @@ public class SettingsUtils {
     private static final String PREFS_NAME = "TelevaultPrefs";
     private static final String KEY_BOT_TOKEN = "bot_token";
     private static final String KEY_CHAT_ID = "chat_id";
+    private static final String KEY_TRANSFER_PARALLELISM = "transfer_parallelism";
+    private static final String KEY_CONTENT_CACHE_MB = "content_cache_mb";
+    private static final String KEY_API_SERVER = "api_server";
+    // Server last seen returning absolute file paths, i.e. running with --local
+    private static final String KEY_LOCAL_API_SERVER = "local_api_server";
+    private static final String KEY_INDEX_ENGINE = "index_engine";
+    // Engine that currently holds the index, to notice when the selection changes
+    private static final String KEY_ACTIVE_INDEX_ENGINE = "active_index_engine";
+
+    public static final String DEFAULT_API_SERVER = "https://api.telegram.org";
+
+    public static final int DEFAULT_TRANSFER_PARALLELISM = 4;
+    public static final int MAX_TRANSFER_PARALLELISM = 6;
+    public static final int DEFAULT_CONTENT_CACHE_MB = 512;
+    public static final int MIN_CONTENT_CACHE_MB = 16;
+    public static final int MAX_CONTENT_CACHE_MB = 16 * 1024;
 
     /**
      * Retrieves the stored Bot Token.
@@ -45,4 +61,122 @@ public class SettingsUtils {
         String chatId = getChatId(context);
         return !token.isEmpty() && !chatId.isEmpty();
     }
+
+    /**
+     * Number of parts of a chunked file transferred at the same time.
+     */
+    public static int getTransferParallelism(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int parallelism = prefs.getInt(KEY_TRANSFER_PARALLELISM, DEFAULT_TRANSFER_PARALLELISM);
+        return Math.max(1, Math.min(MAX_TRANSFER_PARALLELISM, parallelism));
+    }
+
+    /**
+     * Saves the part parallelism, clamped to 1..{@link #MAX_TRANSFER_PARALLELISM}.
+     */
+    public static void saveTransferParallelism(Context context, int parallelism) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putInt(KEY_TRANSFER_PARALLELISM, Math.max(1, Math.min(MAX_TRANSFER_PARALLELISM, parallelism)))
+                .apply();
+    }
+
+    /**
+     * Budget of the {@link ContentCache}, in megabytes.
+     */
+    public static int getContentCacheMb(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int megabytes = prefs.getInt(KEY_CONTENT_CACHE_MB, DEFAULT_CONTENT_CACHE_MB);
+        return Math.max(MIN_CONTENT_CACHE_MB, Math.min(MAX_CONTENT_CACHE_MB, megabytes));
+    }
+
+    public static long getContentCacheBytes(Context context) {
+        return getContentCacheMb(context) * 1024L * 1024L;
+    }
+
+    /**
+     * Saves the cache budget, clamped to {@link #MIN_CONTENT_CACHE_MB}..{@link #MAX_CONTENT_CACHE_MB}.
+     */
+    public static void saveContentCacheMb(Context context, int megabytes) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putInt(KEY_CONTENT_CACHE_MB, Math.max(MIN_CONTENT_CACHE_MB, Math.min(MAX_CONTENT_CACHE_MB, megabytes)))
+                .apply();
+    }
+
+    /**
+     * Base URL of the Bot API server, without a trailing slash. Defaults to
+     * Telegram's public endpoint.
+     */
+    public static String getApiServer(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return normalizeApiServer(prefs.getString(KEY_API_SERVER, DEFAULT_API_SERVER));
+    }
+
+    /**
+     * Saves the Bot API server; blank restores the public endpoint.
+     */
+    public static void saveApiServer(Context context, String server) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putString(KEY_API_SERVER, normalizeApiServer(server))
+                .apply();
+    }
+
+    public static String normalizeApiServer(String server) {
+        String normalized = server == null ? "" : server.trim();
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized.isEmpty() ? DEFAULT_API_SERVER : normalized;
+    }
+
+    /**
+     * Whether the configured server runs in --local mode, which lifts the
+     * 50 MB upload and 20 MB download limits to 2000 MB.
+     */
+    public static boolean isLocalApiMode(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return getApiServer(context).equals(prefs.getString(KEY_LOCAL_API_SERVER, ""));
+    }
+
+    /**
+     * Records whether {@code server} was seen running in --local mode.
+     */
+    public static void setLocalApiMode(Context context, String server, boolean local) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String normalized = normalizeApiServer(server);
+        if (local) {
+            prefs.edit().putString(KEY_LOCAL_API_SERVER, normalized).apply();
+        } else if (normalized.equals(prefs.getString(KEY_LOCAL_API_SERVER, ""))) {
+            prefs.edit().remove(KEY_LOCAL_API_SERVER).apply();
+        }
+    }
+
+    /**
+     * Storage engine of the vault index, one of the VaultStore ENGINE_ values.
+     */
+    public static String getIndexEngine(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return prefs.getString(KEY_INDEX_ENGINE, VaultStore.ENGINE_ROOM);
+    }
+
+    public static void saveIndexEngine(Context context, String engine) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putString(KEY_INDEX_ENGINE, engine)
+                .apply();
+    }
+
+    static String getActiveIndexEngine(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return prefs.getString(KEY_ACTIVE_INDEX_ENGINE, VaultStore.ENGINE_ROOM);
+    }
+
+    static void setActiveIndexEngine(Context context, String engine) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putString(KEY_ACTIVE_INDEX_ENGINE, engine)
+                .commit();
+    }
 }
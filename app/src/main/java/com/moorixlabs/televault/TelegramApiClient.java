@@ -0,0 +1,425 @@
+package com.moorixlabs.televault;
+
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The one place TeleVault talks to the Bot API from: getMe, getFile, file
+ * fetches, sendDocument, sendMessage and deleteMessage.
+ *
+ * Successful calls never disconnect(). Replies are read to the end and
+ * closed, which hands the socket back to HttpURLConnection's keep-alive pool
+ * with its TLS session, so a getFile followed by its download, or a run of
+ * deletes, pays for one handshake instead of one each. Replies are parsed as
+ * they stream in with {@link JsonReader}, keeping only the fields we use;
+ * errors surface as {@link TelegramApiException}.
+ *
+ * The server is Telegram's public endpoint unless a self-hosted
+ * telegram-bot-api server is configured in {@link SettingsUtils}.
+ */
+public final class TelegramApiClient {
+
+    private static final String TAG = "TelegramApiClient";
+
+    // Enough idle sockets for a full set of part workers plus control calls
+    private static final int MAX_IDLE_CONNECTIONS = 16;
+    private static final int API_TIMEOUT = 15000;
+    private static final int TRANSFER_TIMEOUT = 30000;
+    private static final long PREWARM_INTERVAL_MS = 60_000;
+
+    private static volatile TelegramApiClient instance;
+
+    private final String apiServer;
+    private volatile long lastPrewarm = 0;
+
+    /**
+     * The parts of a sent message TeleVault keeps.
+     */
+    public static class SentMessage {
+        public final String messageId;
+        public final String fileId; // document.file_id; null for text messages
+        public final String thumbFileId; // document.thumbnail.file_id; null without a thumbnail
+
+        SentMessage(String messageId, String fileId, String thumbFileId) {
+            this.messageId = messageId;
+            this.fileId = fileId;
+            this.thumbFileId = thumbFileId;
+        }
+    }
+
+    /**
+     * Reads the "result" value of a reply, positioned at its first token.
+     */
+    public interface ResultParser<T> {
+        T parse(JsonReader reader) throws IOException;
+    }
+
+    private TelegramApiClient(String apiServer) {
+        this.apiServer = SettingsUtils.normalizeApiServer(apiServer);
+    }
+
+    /**
+     * The client for the configured server. Until {@link #setApiServer} is
+     * called this talks to Telegram's public endpoint.
+     */
+    public static TelegramApiClient getInstance() {
+        if (instance == null) {
+            synchronized (TelegramApiClient.class) {
+                if (instance == null) {
+                    instance = new TelegramApiClient(SettingsUtils.DEFAULT_API_SERVER);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Points {@link #getInstance} at another server. Transfers already
+     * running finish against the old one.
+     */
+    public static synchronized void setApiServer(String apiServer) {
+        String normalized = SettingsUtils.normalizeApiServer(apiServer);
+        if (instance == null || !instance.apiServer.equals(normalized)) {
+            instance = new TelegramApiClient(normalized);
+        }
+    }
+
+    /**
+     * A client for {@code apiServer} without making it the configured one,
+     * e.g. to test settings before they are saved.
+     */
+    public static TelegramApiClient forServer(String apiServer) {
+        TelegramApiClient current = getInstance();
+        String normalized = SettingsUtils.normalizeApiServer(apiServer);
+        return current.apiServer.equals(normalized) ? current : new TelegramApiClient(normalized);
+    }
+
+    public String getApiServer() {
+        return apiServer;
+    }
+
+    /**
+     * Whether {@code filePath} from getFile is absolute, which only a server
+     * running with --local returns.
+     */
+    public static boolean isLocalPath(String filePath) {
+        return filePath != null && filePath.startsWith("/");
+    }
+
+    /**
+     * Sizes the platform connection pool. Must run before the first request
+     * of the process, so it is called from {@link MyApplication}.
+     */
+    public static void configureConnectionPool() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    /**
+     * Opens a connection to Telegram ahead of the first real request, so a
+     * tap on a file does not wait for TCP and TLS setup. At most once a minute.
+     */
+    public void prewarm(String botToken) {
+        long now = SystemClock.elapsedRealtime();
+        if (botToken == null || botToken.isEmpty() || now - lastPrewarm < PREWARM_INTERVAL_MS) return;
+        lastPrewarm = now;
+
+        TransferManager.getInstance().submitControl(() -> {
+            try {
+                getMe(botToken);
+                Log.d(TAG, "Connection to Telegram pre-warmed");
+            } catch (IOException e) {
+                Log.d(TAG, "Pre-warm failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @return the bot's username
+     */
+    public String getMe(String botToken) throws IOException {
+        return call(botToken, null, "getMe", "", reader -> readStringField(reader, "username"));
+    }
+
+    /**
+     * @return file_path to pass to {@link #openFile}
+     */
+    public String getFilePath(String botToken, String fileId) throws IOException {
+        return call(botToken, null, "getFile", "file_id=" + encode(fileId),
+                reader -> readStringField(reader, "file_path"));
+    }
+
+    public SentMessage sendMessage(String botToken, String chatId, String text) throws IOException {
+        return call(botToken, chatId, "sendMessage", "chat_id=" + encode(chatId) + "&text=" + encode(text),
+                TelegramApiClient::parseMessage);
+    }
+
+    public void deleteMessage(String botToken, String chatId, String messageId) throws IOException {
+        call(botToken, chatId, "deleteMessage", "chat_id=" + encode(chatId) + "&message_id=" + encode(messageId),
+                JsonReader::nextBoolean);
+    }
+
+    /**
+     * Sends a small in-memory document, e.g. the probe of the connection test.
+     */
+    public SentMessage sendDocument(String botToken, String chatId, String fileName, byte[] data)
+            throws IOException {
+        MultipartBody body = new MultipartBody("*****" + System.currentTimeMillis() + "*****")
+                .addFormField("chat_id", chatId)
+                .addFilePart("document", fileName, "text/plain", data);
+
+        TelegramRateLimiter.getInstance().acquire(botToken, chatId);
+        HttpURLConnection connection = openUpload(botToken, "sendDocument", body);
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            body.writeTo(outputStream, null);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+        return readSentMessage(botToken, chatId, connection);
+    }
+
+    /**
+     * Opens a multipart POST for {@code method}. The caller writes the body,
+     * which is streamed with a fixed length, then calls {@link #readSentMessage}.
+     * Pacing is up to the caller, since a retry has to rebuild the body.
+     */
+    public HttpURLConnection openUpload(String botToken, String method, MultipartBody body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                apiServer + "/bot" + botToken + "/" + method).openConnection();
+        connection.setConnectTimeout(API_TIMEOUT);
+        connection.setReadTimeout(TRANSFER_TIMEOUT);
+        connection.setDoInput(true);
+        connection.setDoOutput(true);
+        connection.setUseCaches(false);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", body.getContentType());
+        // Without this the platform buffers the whole body before sending it
+        connection.setFixedLengthStreamingMode(body.getContentLength());
+        return connection;
+    }
+
+    /**
+     * Reads the reply to an upload opened with {@link #openUpload}.
+     *
+     * @param chatId chat the message went to; a 429 blocks its bucket
+     */
+    public SentMessage readSentMessage(String botToken, String chatId, HttpURLConnection connection)
+            throws IOException {
+        return readResult(botToken, chatId, connection, TelegramApiClient::parseMessage);
+    }
+
+    /**
+     * Opens a download of {@code filePath}. The caller checks the status and
+     * reads the body; closing the stream after reading it fully keeps the
+     * connection for reuse.
+     *
+     * @param filePath file_path from getFile. An absolute path from a --local
+     *                 server is fetched from the server's file route relative
+     *                 to the bot's working directory, which is how such servers
+     *                 are usually published (e.g. nginx aliasing /file/bot&lt;token&gt;/)
+     * @param fromByte first byte wanted; above 0 a Range request is sent
+     */
+    public HttpURLConnection openFile(String botToken, String filePath, long fromByte) throws IOException {
+        if (isLocalPath(filePath)) {
+            int botDirectory = filePath.indexOf("/" + botToken + "/");
+            filePath = botDirectory >= 0
+                    ? filePath.substring(botDirectory + botToken.length() + 2)
+                    : filePath.substring(1);
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                apiServer + "/file/bot" + botToken + "/" + filePath).openConnection();
+        connection.setConnectTimeout(TRANSFER_TIMEOUT);
+        connection.setReadTimeout(TRANSFER_TIMEOUT);
+        if (fromByte > 0) {
+            connection.setRequestProperty("Range", "bytes=" + fromByte + "-");
+        }
+        return connection;
+    }
+
+    /**
+     * A paced GET call, retried while Telegram answers with a flood limit.
+     *
+     * @param pacingChatId chat whose bucket the call uses, or null for the bot's only
+     */
+    private <T> T call(String botToken, String pacingChatId, String method, String query,
+                       ResultParser<T> parser) throws IOException {
+        String spec = apiServer + "/bot" + botToken + "/" + method + (query.isEmpty() ? "" : "?" + query);
+        for (int attempt = 1; ; attempt++) {
+            TelegramRateLimiter.getInstance().acquire(botToken, pacingChatId);
+
+            HttpURLConnection connection = (HttpURLConnection) new URL(spec).openConnection();
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(API_TIMEOUT);
+            connection.setReadTimeout(API_TIMEOUT);
+            try {
+                return readResult(botToken, pacingChatId, connection, parser);
+            } catch (TelegramApiException e) {
+                if (!e.isRateLimited() || attempt >= TelegramRateLimiter.MAX_ATTEMPTS) throw e;
+                Log.w(TAG, method + " hit the flood limit, attempt " + attempt);
+            }
+        }
+    }
+
+    /**
+     * Parses a reply envelope, returning its "result" or throwing its error.
+     * The connection is kept for reuse unless the reply could not be read.
+     */
+    private <T> T readResult(String botToken, String chatId, HttpURLConnection connection,
+                             ResultParser<T> parser) throws IOException {
+        boolean reusable = false;
+        try {
+            int responseCode = connection.getResponseCode();
+            InputStream body = responseCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getErrorStream() : connection.getInputStream();
+            if (body == null) {
+                throw new TelegramApiException(responseCode, null, TelegramApiException.NO_RETRY_AFTER);
+            }
+
+            boolean ok = false;
+            T result = null;
+            String description = null;
+            int errorCode = responseCode;
+            int retryAfter = TelegramApiException.NO_RETRY_AFTER;
+
+            try (JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "ok":
+                            ok = reader.nextBoolean();
+                            break;
+                        case "result":
+                            result = parser.parse(reader);
+                            break;
+                        case "description":
+                            description = reader.nextString();
+                            break;
+                        case "error_code":
+                            errorCode = reader.nextInt();
+                            break;
+                        case "parameters":
+                            retryAfter = readRetryAfter(reader);
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                // Whatever follows the envelope must be consumed for the socket to be reused
+                byte[] rest = new byte[256];
+                while (body.read(rest) != -1) {
+                    // Discard
+                }
+            } catch (IllegalStateException | IOException e) {
+                // Not a Bot API envelope, e.g. an HTML error page from a proxy
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    throw new TelegramApiException(responseCode, "Malformed response from Telegram",
+                            TelegramApiException.NO_RETRY_AFTER);
+                }
+                throw new TelegramApiException(responseCode, null, TelegramApiException.NO_RETRY_AFTER);
+            }
+            reusable = true;
+
+            if (!ok || responseCode != HttpURLConnection.HTTP_OK) {
+                TelegramApiException error = new TelegramApiException(errorCode, description, retryAfter);
+                if (error.isRateLimited()) {
+                    TelegramRateLimiter.getInstance().onRateLimited(botToken, chatId, retryAfter);
+                }
+                Log.e(TAG, "API error " + errorCode + ": " + error.getMessage());
+                throw error;
+            }
+            return result;
+
+        } finally {
+            if (!reusable) connection.disconnect();
+        }
+    }
+
+    private static int readRetryAfter(JsonReader reader) throws IOException {
+        int retryAfter = TelegramApiException.NO_RETRY_AFTER;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("retry_after".equals(reader.nextName())) {
+                retryAfter = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return retryAfter;
+    }
+
+    private static SentMessage parseMessage(JsonReader reader) throws IOException {
+        String messageId = null;
+        String[] document = new String[2];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "message_id":
+                    messageId = String.valueOf(reader.nextLong());
+                    break;
+                case "document":
+                    parseDocument(reader, document);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new SentMessage(messageId, document[0], document[1]);
+    }
+
+    /**
+     * Reads a Document into {file_id, thumbnail file_id}. Servers before Bot
+     * API 6.6 call the thumbnail "thumb".
+     */
+    private static void parseDocument(JsonReader reader, String[] ids) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "file_id":
+                    ids[0] = reader.nextString();
+                    break;
+                case "thumbnail":
+                case "thumb":
+                    ids[1] = readStringField(reader, "file_id");
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads an object and returns one of its string fields, skipping the rest.
+     */
+    private static String readStringField(JsonReader reader, String field) throws IOException {
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (field.equals(reader.nextName())) {
+                value = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return value;
+    }
+
+    private static String encode(String value) throws IOException {
+        return URLEncoder.encode(value, "UTF-8");
+    }
+}
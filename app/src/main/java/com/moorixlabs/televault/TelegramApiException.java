@@ -0,0 +1,48 @@
+package com.moorixlabs.televault;
+
+import java.io.IOException;
+
+/**
+ * A Bot API call that Telegram answered with "ok": false, or with an HTTP
+ * error that carried no usable body.
+ */
+public class TelegramApiException extends IOException {
+
+    public static final int NO_RETRY_AFTER = -1;
+
+    private final int errorCode;
+    private final String description;
+    private final int retryAfterSeconds;
+
+    public TelegramApiException(int errorCode, String description, int retryAfterSeconds) {
+        super(description != null ? description : "HTTP Error: " + errorCode);
+        this.errorCode = errorCode;
+        this.description = description;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Telegram's error_code, or the HTTP status when the body had none.
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Telegram's description, e.g. "Bad Request: chat not found"; may be null.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * parameters.retry_after of a flood-limit error, or {@link #NO_RETRY_AFTER}.
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public boolean isRateLimited() {
+        return errorCode == TelegramRateLimiter.HTTP_TOO_MANY_REQUESTS;
+    }
+}
@@ -1,19 +1,16 @@
 package com.moorixlabs.televault;
 
 import android.util.Log;
-import org.json.JSONObject;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 public class TelegramDeleter {
 
     private static final String TAG = "TelegramDeleter";
-    private static final String TELEGRAM_API_BASE = "https://api.telegram.org/bot"; // <-- CORRECT
     private final String botToken; // Now passed in
     private final String chatId;   // Now passed in
-    private final String messageId;
+    private final List<String> messageIds;
     private final DeleteCallback callback;
 
     public interface DeleteCallback {
@@ -22,56 +19,51 @@ public class TelegramDeleter {
     }
 
     public TelegramDeleter(String botToken, String chatId, String messageId, DeleteCallback callback) { // Updated constructor
+        this(botToken, chatId, Collections.singletonList(messageId), callback);
+    }
+
+    /**
+     * Deletes every message backing a file, e.g. all parts of a chunked upload.
+     */
+    public TelegramDeleter(String botToken, String chatId, List<String> messageIds, DeleteCallback callback) {
         this.botToken = botToken;
         this.chatId = chatId;
-        this.messageId = messageId;
+        this.messageIds = messageIds;
         this.callback = callback;
     }
 
     public void delete() {
-        HttpURLConnection connection = null;
-        try {
-            // Construct the URL for the deleteMessage API endpoint
-            String urlString = TELEGRAM_API_BASE + botToken + "/deleteMessage?chat_id=" + chatId + "&message_id=" + messageId;
-            URL url = new URL(urlString);
-
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(15000);
-            connection.setReadTimeout(15000);
-
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                // Read the response
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-                reader.close();
-
-                JSONObject jsonResponse = new JSONObject(response.toString());
-                if (jsonResponse.getBoolean("ok")) {
-                    Log.i(TAG, "Message deleted successfully from Telegram.");
-                    callback.onDeleteSuccess();
-                } else {
-                    String errorDesc = jsonResponse.optString("description", "Unknown API error");
-                    Log.e(TAG, "API Error: " + errorDesc);
-                    callback.onDeleteFailed(errorDesc);
-                }
-            } else {
-                Log.e(TAG, "HTTP Error: " + responseCode);
-                callback.onDeleteFailed("HTTP Error: " + responseCode);
+        String firstError = null;
+        for (String messageId : messageIds) {
+            String error = deleteMessage(messageId);
+            if (error != null && firstError == null) {
+                firstError = error;
             }
+        }
+
+        if (firstError == null) {
+            callback.onDeleteSuccess();
+        } else {
+            callback.onDeleteFailed(firstError);
+        }
+    }
 
-        } catch (Exception e) {
+    /**
+     * Deletes one message, waiting out Telegram's flood limits.
+     *
+     * @return null on success, otherwise an error description
+     */
+    private String deleteMessage(String messageId) {
+        try {
+            TelegramApiClient.getInstance().deleteMessage(botToken, chatId, messageId);
+            Log.i(TAG, "Message " + messageId + " deleted successfully from Telegram.");
+            return null;
+        } catch (TelegramApiException e) {
+            Log.e(TAG, "API Error: " + e.getMessage());
+            return e.getMessage();
+        } catch (IOException e) {
             Log.e(TAG, "Exception during deletion", e);
-            callback.onDeleteFailed("Deletion failed: " + e.getMessage());
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+            return "Deletion failed: " + e.getMessage();
         }
     }
 }
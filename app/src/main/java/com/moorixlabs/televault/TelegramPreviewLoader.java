@@ -0,0 +1,149 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * Lets Glide load a {@link CloudFile} by fetching its preview from Telegram:
+ * the thumbnail sent with it, or the file itself if it is a small image (see
+ * {@link CloudFile#getPreviewFileId}). Previews thus show without the local
+ * source, e.g. for a vault restored on another phone.
+ *
+ * Loads are keyed by the preview's file_id, so once in Glide's disk cache a
+ * preview costs no network, whatever becomes of the CloudFile instance.
+ */
+public class TelegramPreviewLoader implements ModelLoader<CloudFile, InputStream> {
+
+    private static final String KEY_PREFIX = "telegram:";
+
+    private final Context context;
+
+    TelegramPreviewLoader(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public boolean handles(@NonNull CloudFile file) {
+        return file.getPreviewFileId() != null;
+    }
+
+    @Nullable
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull CloudFile file, int width, int height,
+                                               @NonNull Options options) {
+        String fileId = file.getPreviewFileId();
+        if (fileId == null) return null;
+        return new LoadData<>(new ObjectKey(KEY_PREFIX + fileId), new Fetcher(context, fileId));
+    }
+
+    public static class Factory implements ModelLoaderFactory<CloudFile, InputStream> {
+
+        private final Context context;
+
+        public Factory(Context context) {
+            this.context = context.getApplicationContext();
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<CloudFile, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new TelegramPreviewLoader(context);
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+
+    /**
+     * getFile, then a plain download of the result. Runs on Glide's source
+     * executor; cancelled when the row it was for is recycled or rebound.
+     */
+    static class Fetcher implements DataFetcher<InputStream> {
+
+        private final Context context;
+        private final String fileId;
+        private HttpURLConnection connection;
+        private InputStream stream;
+        private volatile boolean cancelled;
+
+        Fetcher(Context context, String fileId) {
+            this.context = context;
+            this.fileId = fileId;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+            try {
+                String botToken = SettingsUtils.getBotToken(context);
+                if (botToken.isEmpty()) {
+                    throw new IOException("No bot token configured");
+                }
+                TelegramApiClient client = TelegramApiClient.getInstance();
+                String filePath = client.getFilePath(botToken, fileId);
+                // Like Glide's own fetchers, a cancelled load hands back no data
+                if (cancelled) {
+                    callback.onDataReady(null);
+                    return;
+                }
+
+                connection = client.openFile(botToken, filePath, 0);
+                int responseCode = connection.getResponseCode();
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Preview download failed with HTTP " + responseCode);
+                }
+                stream = connection.getInputStream();
+                callback.onDataReady(cancelled ? null : stream);
+            } catch (IOException e) {
+                callback.onLoadFailed(e);
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            try {
+                if (stream != null) stream.close();
+            } catch (IOException e) {
+                // Nothing left to read from it
+            }
+            // A response read to the end leaves the socket in the keep-alive pool
+            if (stream == null && connection != null) connection.disconnect();
+        }
+
+        /**
+         * Called on the main thread, so it only flags the load; the socket is
+         * dropped by {@link #cleanup} on Glide's thread.
+         */
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.REMOTE;
+        }
+    }
+}
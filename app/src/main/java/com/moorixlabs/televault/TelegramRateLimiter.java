@@ -0,0 +1,124 @@
+package com.moorixlabs.televault;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Paces Bot API calls to the rates Telegram sustains instead of bursting
+ * into flood limits. Every call takes a token from its bot's bucket; calls
+ * that post a message also take one from the chat's bucket. A 429 reply
+ * blocks the offending bucket for the retry_after the server asked for;
+ * {@link TelegramApiClient} reports those.
+ *
+ * Time spent waiting here is reported to {@link TransferManager} as
+ * throttled time.
+ */
+public final class TelegramRateLimiter {
+
+    private static final String TAG = "TelegramRateLimiter";
+
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+    // Attempts per request before a 429 becomes a failure
+    public static final int MAX_ATTEMPTS = 5;
+
+    // Limits from the Bot API FAQ: ~30 calls/s per bot, 20 messages/min in
+    // groups and channels, about one message/s in a private chat
+    private static final double BOT_CAPACITY = 30;
+    private static final double BOT_PER_SECOND = 30;
+    private static final double GROUP_CAPACITY = 5;
+    private static final double GROUP_PER_SECOND = 20 / 60.0;
+    private static final double PRIVATE_CAPACITY = 3;
+    private static final double PRIVATE_PER_SECOND = 1;
+    // Used when a 429 carries no retry_after
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 3;
+
+    private static volatile TelegramRateLimiter instance;
+
+    private final Map<String, TokenBucket> botBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+
+    private TelegramRateLimiter() {
+    }
+
+    public static TelegramRateLimiter getInstance() {
+        if (instance == null) {
+            synchronized (TelegramRateLimiter.class) {
+                if (instance == null) {
+                    instance = new TelegramRateLimiter();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Blocks until a call may be made.
+     *
+     * @param chatId chat a message is posted to, or null for calls that
+     *               do not post (getFile, deleteMessage)
+     */
+    public void acquire(String botToken, String chatId) throws IOException {
+        TokenBucket botBucket = getBotBucket(botToken);
+        TokenBucket chatBucket = chatId != null ? getChatBucket(chatId) : null;
+
+        long now = SystemClock.elapsedRealtime();
+        long wait = botBucket.reserve(now);
+        if (chatBucket != null) {
+            wait = Math.max(wait, chatBucket.reserve(now));
+        }
+
+        long waited = 0;
+        try {
+            while (wait > 0) {
+                Thread.sleep(wait);
+                waited += wait;
+                // A 429 elsewhere may have blocked the buckets meanwhile
+                now = SystemClock.elapsedRealtime();
+                wait = botBucket.getBlockedWait(now);
+                if (chatBucket != null) {
+                    wait = Math.max(wait, chatBucket.getBlockedWait(now));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for rate limit", e);
+        } finally {
+            if (waited > 0) {
+                TransferManager.getInstance().addThrottledTime(waited);
+            }
+        }
+    }
+
+    /**
+     * Blocks the chat's bucket, or the bot's when no chat is involved, for
+     * the retry_after Telegram asked for in a 429 reply.
+     */
+    public void onRateLimited(String botToken, String chatId, int retryAfterSeconds) {
+        int retryAfter = retryAfterSeconds > 0 ? retryAfterSeconds : DEFAULT_RETRY_AFTER_SECONDS;
+
+        long until = SystemClock.elapsedRealtime() + retryAfter * 1000L;
+        TokenBucket bucket = chatId != null ? getChatBucket(chatId) : getBotBucket(botToken);
+        bucket.blockUntil(until);
+
+        Log.w(TAG, "Rate limited" + (chatId != null ? " in chat " + chatId : "")
+                + ", retrying after " + retryAfter + " s");
+    }
+
+    private TokenBucket getBotBucket(String botToken) {
+        return botBuckets.computeIfAbsent(botToken, token ->
+                new TokenBucket(BOT_CAPACITY, BOT_PER_SECOND, SystemClock.elapsedRealtime()));
+    }
+
+    private TokenBucket getChatBucket(String chatId) {
+        // Group and channel ids are negative
+        boolean isGroup = chatId.startsWith("-");
+        return chatBuckets.computeIfAbsent(chatId, id -> new TokenBucket(
+                isGroup ? GROUP_CAPACITY : PRIVATE_CAPACITY,
+                isGroup ? GROUP_PER_SECOND : PRIVATE_PER_SECOND,
+                SystemClock.elapsedRealtime()));
+    }
+}
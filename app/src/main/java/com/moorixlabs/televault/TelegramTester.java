@@ -2,20 +2,18 @@ package com.moorixlabs.televault;
 
 import android.util.Log;
 
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 
 public class TelegramTester {
 
     private static final String TAG = "TelegramTester";
-    private static final String TELEGRAM_API_BASE = "https://api.telegram.org/bot";
 
     public interface TestCallback {
-        void onTestSuccess(String botName, String messageId);
+        /**
+         * @param localMode whether the server runs with --local; always false
+         *                  for Telegram's public endpoint
+         */
+        void onTestSuccess(String botName, String messageId, boolean localMode);
         void onTestFailed(String error);
     }
 
@@ -23,90 +21,73 @@ public class TelegramTester {
      * Performs a two-step connection test:
      * 1. Uses getMe to verify the bot token.
      * 2. Uses sendMessage to verify the chat ID.
+     * A self-hosted server is then probed for --local mode.
      */
-    public void runTest(String botToken, String chatId, TestCallback callback) {
-        new Thread(() -> {
+    public void runTest(String apiServer, String botToken, String chatId, TestCallback callback) {
+        TelegramApiClient api = TelegramApiClient.forServer(apiServer);
+        TransferManager.getInstance().submitControl(() -> {
             try {
                 // Step 1: Verify Bot Token using getMe
-                String botName = verifyBotToken(botToken);
+                String botName = verifyBotToken(api, botToken);
                 if (botName == null) {
                     callback.onTestFailed("Bot Token Invalid or Connection Error. Check Token.");
                     return;
                 }
 
                 // Step 2: Verify Chat ID by sending a test message
-                String messageId = sendTestMessage(botToken, chatId, botName);
+                String messageId = sendTestMessage(api, botToken, chatId, botName);
                 if (messageId == null) {
                     callback.onTestFailed("Chat ID Invalid. Ensure the bot is an admin in the channel/group, and the ID is correct.");
                     return;
                 }
 
-                callback.onTestSuccess(botName, messageId);
+                boolean localMode = !SettingsUtils.DEFAULT_API_SERVER.equals(api.getApiServer())
+                        && detectLocalMode(api, botToken, chatId);
+                callback.onTestSuccess(botName, messageId, localMode);
 
             } catch (Exception e) {
                 Log.e(TAG, "Test failed due to exception", e);
                 callback.onTestFailed("General Test Failure: " + e.getMessage());
             }
-        }).start();
+        });
     }
 
-    private String verifyBotToken(String botToken) throws Exception {
-        String urlString = TELEGRAM_API_BASE + botToken + "/getMe";
-        HttpURLConnection connection = null;
+    private String verifyBotToken(TelegramApiClient api, String botToken) throws Exception {
         try {
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-
-            if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                String response = getResponse(connection);
-                JSONObject jsonResponse = new JSONObject(response);
-                if (jsonResponse.getBoolean("ok")) {
-                    return jsonResponse.getJSONObject("result").getString("username");
-                }
-            }
-        } finally {
-            if (connection != null) connection.disconnect();
+            return api.getMe(botToken);
+        } catch (TelegramApiException e) {
+            Log.w(TAG, "getMe rejected: " + e.getMessage());
+            return null;
         }
-        return null;
     }
 
-    private String sendTestMessage(String botToken, String chatId, String botName) throws Exception {
+    private String sendTestMessage(TelegramApiClient api, String botToken, String chatId,
+                                   String botName) throws Exception {
         String testMessage = "✅ TeleVault connection successful! Bot: @" + botName;
-        String urlString = TELEGRAM_API_BASE + botToken + "/sendMessage?chat_id=" + chatId +
-                "&text=" + java.net.URLEncoder.encode(testMessage, "UTF-8");
-
-        HttpURLConnection connection = null;
         try {
-            URL url = new URL(urlString);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-
-            if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                String response = getResponse(connection);
-                JSONObject jsonResponse = new JSONObject(response);
-                if (jsonResponse.getBoolean("ok")) {
-                    return jsonResponse.getJSONObject("result").getString("message_id");
-                }
-            }
-        } finally {
-            if (connection != null) connection.disconnect();
+            return api.sendMessage(botToken, chatId, testMessage).messageId;
+        } catch (TelegramApiException e) {
+            Log.w(TAG, "sendMessage rejected: " + e.getMessage());
+            return null;
         }
-        return null;
     }
 
-    private String getResponse(HttpURLConnection connection) throws Exception {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            response.append(line);
+    /**
+     * Sends a tiny document and asks for its path: only a server running with
+     * --local answers with an absolute one. The probe is deleted afterwards.
+     */
+    private boolean detectLocalMode(TelegramApiClient api, String botToken, String chatId) {
+        try {
+            TelegramApiClient.SentMessage probe = api.sendDocument(botToken, chatId,
+                    "televault-probe.txt", "TeleVault".getBytes(StandardCharsets.UTF_8));
+            try {
+                return TelegramApiClient.isLocalPath(api.getFilePath(botToken, probe.fileId));
+            } finally {
+                api.deleteMessage(botToken, chatId, probe.messageId);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not probe for --local mode", e);
+            return false;
         }
-        reader.close();
-        return response.toString();
     }
 }
@@ -2,50 +2,108 @@ package com.moorixlabs.televault;
 
 import android.content.Context;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
-import org.json.JSONObject;
-
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection; // Make sure this is imported
-import java.net.URL;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public class TelegramUploader {
 
     private static final String TAG = "TelegramUploader";
-    private static final String TELEGRAM_API_BASE = "https://api.telegram.org/bot"; // <-- CORRECT
+
+    /**
+     * Largest document we send in one piece. getFile refuses files over 20 MB,
+     * so anything bigger is split into parts of at most this size.
+     */
+    public static final long MAX_PART_SIZE = 19L * 1024 * 1024;
+
+    /**
+     * Part size for a Bot API server running with --local, which takes
+     * documents of up to 2000 MB and serves them back at any size. Leaves
+     * room for the multipart framing.
+     */
+    public static final long MAX_LOCAL_PART_SIZE = 1990L * 1024 * 1024;
+
+    // Multipart name the thumbnail file is sent under
+    static final String THUMBNAIL_ATTACH_NAME = "thumb";
+
     private final Context context;
     private final String botToken;
     private final String chatId;
     private final Uri fileUri;
     private final String fileName;
     private final UploadCallback callback;
+    private final UploadJournal journal; // Null when the upload need not survive a restart
+    private final long maxPartSize;
 
     // --- NEW FIELDS ---
     private volatile boolean isCancelled = false;
-    private HttpURLConnection connection = null;
+    private volatile boolean isAborted = false; // Another part failed; stop the rest
+    // One connection per part in flight; all of them are dropped on cancel
+    private final Set<HttpURLConnection> activeConnections = ConcurrentHashMap.newKeySet();
     // --- END NEW FIELDS ---
 
+    // Lane of the current upload; its parts and throttling follow it
+    private TransferManager.Lane lane = TransferManager.Lane.USER;
+
+    // Progress across all parts of the current upload
+    private long totalSize = 0;
+    private String progressKey;
+    private TransferProgress.Task progress;
+    private final List<FilePart> uploadedParts = new ArrayList<>();
+
+    // JPEG sent with the document holding the first byte; null for other files
+    private byte[] thumbnail;
+    private volatile String thumbFileId;
 
     public interface UploadCallback {
-        void onUploadProgress(int progress);
-        void onUploadSuccess(String fileId, String messageId);
+        /**
+         * @param parts part manifest for chunked files; empty for single documents
+         * @param thumbFileId file_id of the thumbnail Telegram kept, or null
+         */
+        void onUploadSuccess(String fileId, String messageId, List<FilePart> parts, String thumbFileId);
         void onUploadFailed(String error);
         void onUploadCancelled(); // --- NEW CALLBACK ---
     }
 
     public TelegramUploader(Context context, String botToken, String chatId,
                             Uri fileUri, String fileName, UploadCallback callback) {
+        this(context, botToken, chatId, fileUri, fileName, null, callback);
+    }
+
+    /**
+     * Uploads that record their progress in {@code journal}. Parts already
+     * listed there are not sent again.
+     */
+    public TelegramUploader(Context context, String botToken, String chatId,
+                            Uri fileUri, String fileName, UploadJournal journal, UploadCallback callback) {
         this.context = context;
         this.botToken = botToken;
         this.chatId = chatId;
         this.fileUri = fileUri;
         this.fileName = fileName;
+        this.journal = journal;
         this.callback = callback;
+        this.maxPartSize = SettingsUtils.isLocalApiMode(context) ? MAX_LOCAL_PART_SIZE : MAX_PART_SIZE;
+    }
+
+    /**
+     * Publishes the upload's progress on {@link TransferProgress} under {@code key}.
+     */
+    public void setProgressKey(String key) {
+        this.progressKey = key;
     }
 
     // --- NEW METHOD ---
@@ -53,155 +111,83 @@ public class TelegramUploader {
         isCancelled = true;
         Log.d(TAG, "Cancel() called. Flag set to true.");
 
-        // Disconnect HTTP connection from a new thread to interrupt blocking IO
-        if (connection != null) {
-            new Thread(() -> {
-                try {
-                    Log.d(TAG, "Attempting to disconnect connection from cancel() thread.");
-                    connection.disconnect();
-                } catch (Exception e) {
-                    Log.e(TAG, "Error disconnecting on cancel", e);
-                }
-            }).start();
+        // Disconnect HTTP connections from a new thread to interrupt blocking IO
+        if (!activeConnections.isEmpty()) {
+            TransferManager.getInstance().submitControl(this::disconnectAll);
         }
     }
     // --- END NEW METHOD ---
 
+    private void disconnectAll() {
+        for (HttpURLConnection connection : activeConnections) {
+            try {
+                Log.d(TAG, "Attempting to disconnect connection from cancel() thread.");
+                connection.disconnect();
+            } catch (Exception e) {
+                Log.e(TAG, "Error disconnecting on cancel", e);
+            }
+        }
+    }
+
 
     public void upload() {
-        // HttpURLConnection connection = null; // <-- Now a class field
-        DataOutputStream outputStream = null;
-        InputStream inputStream = null;
-
+        lane = TransferManager.getCurrentLane();
+        // Untracked uploads still count, under a key nobody listens for
+        progress = TransferProgress.getInstance().begin(
+                progressKey != null ? progressKey : fileUri.toString(), 0);
         try {
-            // Initial progress
-            callback.onUploadProgress(0);
             Log.d(TAG, "Starting upload for: " + fileName);
 
-            // Get file input stream and size
-            inputStream = context.getContentResolver().openInputStream(fileUri);
-            if (inputStream == null) {
-                callback.onUploadFailed("Could not read file");
-                return;
-            }
-
-            long fileSize = FileUtils.getFileSize(context, fileUri);
-            Log.d(TAG, "File size: " + fileSize + " bytes");
+            totalSize = FileUtils.getFileSize(context, fileUri);
+            progress.setTotalBytes(totalSize);
+            Log.d(TAG, "File size: " + totalSize + " bytes");
 
-            // Prepare multipart request
-            String boundary = "*****" + System.currentTimeMillis() + "*****";
-            String lineEnd = "\r\n";
-            String twoHyphens = "--";
-
-            URL url = new URL(TELEGRAM_API_BASE + botToken + "/sendDocument");
-            connection = (HttpURLConnection) url.openConnection(); // <-- Assign to class field
-            connection.setDoInput(true);
-            connection.setDoOutput(true);
-            connection.setUseCaches(false);
-            connection.setRequestMethod("POST");
-            connection.setRequestProperty("Connection", "Keep-Alive");
-            connection.setRequestProperty("Content-Type", "multipart/form-data;boundary=" + boundary);
-
-            outputStream = new DataOutputStream(connection.getOutputStream());
-
-            // Add chat_id parameter
-            outputStream.writeBytes(twoHyphens + boundary + lineEnd);
-            outputStream.writeBytes("Content-Disposition: form-data; name=\"chat_id\"" + lineEnd);
-            outputStream.writeBytes(lineEnd);
-            outputStream.writeBytes(chatId + lineEnd);
-
-            // Add document file
-            outputStream.writeBytes(twoHyphens + boundary + lineEnd);
-            outputStream.writeBytes("Content-Disposition: form-data; name=\"document\";filename=\""
-                    + fileName + "\"" + lineEnd);
-            outputStream.writeBytes("Content-Type: application/octet-stream" + lineEnd);
-            outputStream.writeBytes(lineEnd);
-
-            // Read and write file with progress tracking
-            int bytesRead;
-            long totalBytesRead = 0;
-            int lastReportedProgress = 0;
-            byte[] buffer = new byte[8192];
-            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
-
-            Log.d(TAG, "Starting file transfer...");
-
-            while ((bytesRead = bufferedInputStream.read(buffer)) != -1) {
-                // If cancelled, loop will be broken by an exception from connection.disconnect()
-                outputStream.write(buffer, 0, bytesRead);
-                totalBytesRead += bytesRead;
-
-                if (fileSize > 0) {
-                    int progress = (int) ((totalBytesRead * 100) / fileSize);
-                    if (progress != lastReportedProgress) {
-                        lastReportedProgress = progress;
-                        callback.onUploadProgress(progress);
-                        Log.d(TAG, "Upload progress: " + progress + "% (" + totalBytesRead + "/" + fileSize + " bytes)");
-                    }
+            if (journal != null) {
+                // The source changed since the parts were sent; they are of no use now
+                List<FilePart> staleParts = journal.begin(totalSize, maxPartSize);
+                if (!staleParts.isEmpty()) {
+                    Log.w(TAG, "Source of " + fileName + " changed, discarding " + staleParts.size() + " parts");
+                    deleteParts(staleParts);
                 }
+                thumbFileId = journal.getThumbFileId();
             }
-
-            // Check for cancellation *before* trying to get response
-            if (isCancelled) {
-                Log.d(TAG, "Upload cancelled after loop, before getting response.");
-                callback.onUploadCancelled();
-                return;
+            if (thumbFileId == null) {
+                thumbnail = UploadThumbnail.create(context, fileUri, fileName);
             }
 
-            // ... (rest of the upload logic is fine, but we wrap it)
-
-            outputStream.writeBytes(lineEnd);
-            outputStream.writeBytes(twoHyphens + boundary + twoHyphens + lineEnd);
-
-            outputStream.flush();
-            outputStream.close();
-            bufferedInputStream.close();
-            inputStream.close();
-            inputStream = null; // Set to null
-
-            Log.d(TAG, "File transfer complete, waiting for server response...");
-
-            // Get response
-            int responseCode = connection.getResponseCode();
-
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                // ... (JSON parsing logic remains the same)
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
+            if (totalSize <= maxPartSize) {
+                // Small file: a single sendDocument, exactly as before
+                TelegramApiClient.SentMessage result = uploadSlice(0, totalSize, fileName);
+                if (result == null) {
+                    abandon();
+                    callback.onUploadCancelled();
+                    return;
                 }
-                reader.close();
-
-                // Parse JSON response to get file_id and message_id
-                JSONObject jsonResponse = new JSONObject(response.toString());
 
-                if (jsonResponse.getBoolean("ok")) {
-                    JSONObject result = jsonResponse.getJSONObject("result");
-                    String messageId = result.getString("message_id");
+                String messageId = result.messageId;
+                String fileId = result.fileId;
 
-                    // Get file_id from the document object
-                    JSONObject document = result.getJSONObject("document");
-                    String fileId = document.getString("file_id");
+                Log.i(TAG, "✅ Upload successful! File ID: " + fileId + ", Message ID: " + messageId);
+                callback.onUploadSuccess(fileId, messageId, new ArrayList<>(), thumbFileId);
+                return;
+            }
 
-                    Log.i(TAG, "✅ Upload successful! File ID: " + fileId + ", Message ID: " + messageId);
-                    callback.onUploadSuccess(fileId, messageId);
-                } else {
-                    String errorDesc = jsonResponse.optString("description", "Unknown error");
-                    Log.e(TAG, "❌ Upload failed: " + errorDesc);
-                    callback.onUploadFailed(errorDesc);
-                }
-            } else {
-                Log.e(TAG, "❌ HTTP Error: " + responseCode);
-                callback.onUploadFailed("HTTP Error: " + responseCode);
+            // Large file: one document per part, each small enough for getFile
+            List<FilePart> parts = uploadParts();
+            if (parts == null) {
+                abandon();
+                callback.onUploadCancelled();
+                return;
             }
 
+            FilePart firstPart = parts.get(0);
+            Log.i(TAG, "✅ Chunked upload successful! " + parts.size() + " parts for " + fileName);
+            callback.onUploadSuccess(firstPart.getFileId(), firstPart.getMessageId(), parts, thumbFileId);
+
         } catch (java.net.SocketException e) {
             // This exception is often thrown when connection.disconnect() is called
             if (isCancelled) {
+                abandon();
                 Log.d(TAG, "Upload cancelled (SocketException caught).");
                 callback.onUploadCancelled();
             } else {
@@ -211,6 +197,7 @@ public class TelegramUploader {
         } catch (java.io.IOException e) {
             // This can also be thrown
             if (isCancelled) {
+                abandon();
                 Log.d(TAG, "Upload cancelled (IOException caught).");
                 callback.onUploadCancelled();
             } else {
@@ -222,17 +209,320 @@ public class TelegramUploader {
                 Log.e(TAG, "❌ Upload exception", e);
                 callback.onUploadFailed("Upload failed: " + e.getMessage());
             } else {
+                abandon();
                 Log.d(TAG, "Upload cancelled (Generic Exception caught).");
                 callback.onUploadCancelled();
             }
         } finally {
+            progress.finish();
+        }
+    }
+
+    /**
+     * Sends all parts of a large file, several at a time. Each worker reads its
+     * own slice of the source, so no part waits for the one before it.
+     *
+     * @return the manifest in part order, or null if the upload was cancelled
+     */
+    private List<FilePart> uploadParts() throws Exception {
+        int partCount = (int) ((totalSize + maxPartSize - 1) / maxPartSize);
+        FilePart[] parts = new FilePart[partCount];
+
+        // Parts sent before an interruption count as done
+        int resumedCount = 0;
+        if (journal != null) {
+            for (FilePart part : journal.getCompletedParts()) {
+                if (part.getIndex() >= partCount || parts[part.getIndex()] != null) continue;
+                parts[part.getIndex()] = part;
+                synchronized (uploadedParts) {
+                    uploadedParts.add(part);
+                }
+                reportProgress(part.getSize());
+                resumedCount++;
+            }
+        }
+        int pendingCount = partCount - resumedCount;
+        if (pendingCount == 0) {
+            return Arrays.asList(parts);
+        }
+
+        int parallelism = Math.min(SettingsUtils.getTransferParallelism(context), pendingCount);
+        Log.d(TAG, "Chunked upload: " + partCount + " parts of up to " + maxPartSize
+                + " bytes, " + resumedCount + " already sent, " + parallelism + " at a time");
+
+        PartBatch<FilePart> batch = new PartBatch<>(
+                TransferManager.getInstance().getPartExecutor(lane, totalSize - progress.getBytes()), parallelism);
+
+        try {
+            for (int index = 0; index < partCount; index++) {
+                if (parts[index] != null) continue;
+                final int partIndex = index;
+                final long offset = (long) index * maxPartSize;
+                final long partSize = Math.min(maxPartSize, totalSize - offset);
+                batch.add(() -> uploadPart(partIndex, offset, partSize));
+            }
+
+            for (int completed = 0; completed < pendingCount; completed++) {
+                FilePart part;
+                try {
+                    part = batch.take();
+                } catch (ExecutionException e) {
+                    // First failure aborts the parts still in flight
+                    isAborted = true;
+                    disconnectAll();
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+
+                if (part == null) {
+                    return null; // Cancelled
+                }
+                parts[part.getIndex()] = part;
+                synchronized (uploadedParts) {
+                    uploadedParts.add(part);
+                }
+                if (journal != null) journal.recordPart(part);
+                Log.d(TAG, "Part " + (part.getIndex() + 1) + "/" + partCount + " uploaded: " + part);
+            }
+
+            return Arrays.asList(parts);
+
+        } finally {
+            batch.cancelAll();
+        }
+    }
+
+    /**
+     * Uploads one part, reading only its slice of the source file.
+     *
+     * @return the uploaded part, or null if the upload was cancelled
+     */
+    private FilePart uploadPart(int index, long offset, long partSize) throws Exception {
+        TelegramApiClient.SentMessage result = uploadSlice(offset, partSize, getPartName(fileName, index));
+        if (result == null) return null;
+
+        return new FilePart(index, partSize, result.messageId, result.fileId);
+    }
+
+    /**
+     * Sends {@code length} bytes of the source from {@code offset} as one
+     * document, with the thumbnail if it starts the file. Paced by
+     * {@link TelegramRateLimiter}; a 429 reply is retried from the start of
+     * the slice once its retry_after has passed.
+     *
+     * @return the sent message, or null if the upload was cancelled
+     */
+    private TelegramApiClient.SentMessage uploadSlice(long offset, long length, String documentName) throws Exception {
+        byte[] sliceThumbnail = offset == 0 ? thumbnail : null;
+        for (int attempt = 1; ; attempt++) {
+            TelegramRateLimiter.getInstance().acquire(botToken, chatId);
+            try (InputStream source = openAt(offset)) {
+                TelegramApiClient.SentMessage result =
+                        sendDocument(new BufferedInputStream(source), length, documentName, sliceThumbnail);
+                if (result != null && sliceThumbnail != null && result.thumbFileId != null) {
+                    thumbFileId = result.thumbFileId;
+                    if (journal != null) journal.recordThumbnail(thumbFileId);
+                }
+                return result;
+            } catch (TelegramApiException e) {
+                if (!e.isRateLimited() || attempt >= TelegramRateLimiter.MAX_ATTEMPTS
+                        || isCancelled || isAborted) throw e;
+                Log.w(TAG, documentName + " hit the flood limit, attempt " + attempt);
+            }
+        }
+    }
+
+    /**
+     * Opens the source positioned at {@code offset}. Seeks through the file
+     * descriptor when the provider supports it, otherwise skips forward.
+     */
+    private InputStream openAt(long offset) throws IOException {
+        ParcelFileDescriptor descriptor = null;
+        try {
+            descriptor = context.getContentResolver().openFileDescriptor(fileUri, "r");
+        } catch (Exception e) {
+            Log.w(TAG, "No file descriptor for " + fileUri + ", falling back to skip()");
+        }
+
+        if (descriptor != null) {
+            FileInputStream stream = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+            try {
+                stream.getChannel().position(offset);
+                return stream;
+            } catch (IOException e) {
+                // Pipes and sockets cannot seek
+                stream.close();
+            }
+        }
+
+        InputStream stream = context.getContentResolver().openInputStream(fileUri);
+        if (stream == null) {
+            throw new IOException("Could not read file");
+        }
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0) {
+                if (stream.read() == -1) {
+                    stream.close();
+                    throw new IOException("File ended before offset " + offset);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return stream;
+    }
+
+    /**
+     * The sendDocument request for {@code length} bytes from {@code source}.
+     *
+     * @param thumbnail JPEG attached as the document's thumbnail, or null
+     */
+    static MultipartBody documentBody(String boundary, String chatId, InputStream source, long length,
+                                      String documentName, byte[] thumbnail) {
+        MultipartBody body = new MultipartBody(boundary)
+                .addFormField("chat_id", chatId)
+                .addFilePart("document", documentName, "application/octet-stream", source, length);
+        if (thumbnail != null) {
+            // Thumbnails cannot be passed by file_id, only attached to the same request;
+            // the file goes under a name of its own so the field cannot shadow it
+            body.addFormField("thumbnail", "attach://" + THUMBNAIL_ATTACH_NAME)
+                    .addFilePart(THUMBNAIL_ATTACH_NAME, "thumbnail.jpg", "image/jpeg", thumbnail);
+        }
+        return body;
+    }
+
+    /**
+     * Sends {@code length} bytes from {@code source} as one document.
+     *
+     * @param thumbnail JPEG attached as the document's thumbnail, or null
+     * @return the sent message, or null if the upload was cancelled
+     * @throws IOException on network errors or when Telegram rejects the document
+     */
+    private TelegramApiClient.SentMessage sendDocument(InputStream source, long length, String documentName,
+                                                       byte[] thumbnail) throws Exception {
+        HttpURLConnection connection = null;
+        OutputStream outputStream = null;
+        boolean completed = false;
+        long[] bytesSent = {0};
+        long startTime = System.currentTimeMillis();
+
+        try {
+            // Prepare multipart request; its exact size is known up front
+            String boundary = "*****" + System.currentTimeMillis() + "*****";
+            MultipartBody body = documentBody(boundary, chatId, source, length, documentName, thumbnail);
+
+            connection = TelegramApiClient.getInstance().openUpload(botToken, "sendDocument", body);
+            activeConnections.add(connection);
+
+            outputStream = connection.getOutputStream();
+
+            Log.d(TAG, "Starting transfer of " + documentName + " (" + body.getContentLength() + " bytes)...");
+
+            // If cancelled, writing will be broken by an exception from connection.disconnect()
+            body.writeTo(outputStream, bytes -> {
+                bytesSent[0] += bytes;
+                reportProgress(bytes);
+                // Yields the radio while a more urgent lane is transferring
+                TransferManager.getInstance().throttle(lane, bytes);
+            });
+
+            // Check for cancellation *before* trying to get response
+            if (isCancelled || isAborted) {
+                Log.d(TAG, "Upload cancelled after loop, before getting response.");
+                return null;
+            }
+
+            outputStream.close();
+            outputStream = null;
+
+            Log.d(TAG, "Transfer of " + documentName + " complete, waiting for server response...");
+
+            TelegramApiClient.SentMessage result;
+            try {
+                result = TelegramApiClient.getInstance().readSentMessage(botToken, chatId, connection);
+            } catch (TelegramApiException e) {
+                // Telegram answered, so the exchange finished cleanly
+                completed = true;
+                if (e.isRateLimited()) {
+                    // The document will be sent again; take its bytes back out of the progress
+                    reportProgress(-bytesSent[0]);
+                } else {
+                    Log.e(TAG, "❌ Upload failed: " + e.getMessage());
+                }
+                throw e;
+            }
+            completed = true;
+            return result;
+
+        } finally {
+            TransferManager.getInstance().addTransferTime(System.currentTimeMillis() - startTime);
             try {
                 if (outputStream != null) outputStream.close();
-                if (inputStream != null) inputStream.close();
-                if (connection != null) connection.disconnect();
+                if (connection != null) {
+                    activeConnections.remove(connection);
+                    // A finished exchange leaves the socket in the keep-alive pool
+                    if (!completed) connection.disconnect();
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error closing connections", e);
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Adds to the aggregate byte count. Called concurrently by part workers;
+     * takes no lock, the count is sampled once a frame.
+     */
+    private void reportProgress(long bytesSent) {
+        progress.add(bytesSent);
+    }
+
+    /**
+     * Name of the document holding one part, e.g. "video.mp4.part003".
+     */
+    static String getPartName(String fileName, int index) {
+        return String.format(Locale.US, "%s.part%03d", fileName, index + 1);
+    }
+
+    /**
+     * Gives up on the upload for good: its parts and journal are removed.
+     * Only for an explicit cancel; after other failures the sent parts and
+     * the journal stay, so the next attempt resumes from them.
+     */
+    private void abandon() {
+        List<FilePart> parts;
+        synchronized (uploadedParts) {
+            parts = new ArrayList<>(uploadedParts);
+            uploadedParts.clear();
+        }
+        deleteParts(parts);
+        if (journal != null) journal.delete();
+    }
+
+    /**
+     * Removes parts that were already sent when a chunked upload does not
+     * complete, so the chat is not left with orphaned fragments.
+     */
+    private void deleteParts(List<FilePart> parts) {
+        if (parts.isEmpty()) return;
+        List<String> messageIds = new ArrayList<>();
+        for (FilePart part : parts) {
+            messageIds.add(part.getMessageId());
+        }
+
+        Log.d(TAG, "Deleting " + messageIds.size() + " orphaned parts of " + fileName);
+        new TelegramDeleter(botToken, chatId, messageIds, new TelegramDeleter.DeleteCallback() {
+            @Override
+            public void onDeleteSuccess() {
+                Log.d(TAG, "Orphaned parts deleted.");
+            }
+
+            @Override
+            public void onDeleteFailed(String error) {
+                Log.w(TAG, "Could not delete orphaned parts: " + error);
+            }
+        }).delete();
+    }
+}
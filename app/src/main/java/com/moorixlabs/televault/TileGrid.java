@@ -0,0 +1,86 @@
+package com.moorixlabs.televault;
+
+import java.util.List;
+
+/**
+ * Which tiles of a large image are on screen, and at what sample size.
+ * Pure arithmetic, kept apart from {@link TiledImageView} so it can be
+ * tested without a device.
+ *
+ * A tile covers {@link #TILE_SIZE} decoded pixels a side, so at sample size
+ * s it covers TILE_SIZE * s image pixels. Sample sizes are powers of two.
+ */
+public final class TileGrid {
+
+    public static final int TILE_SIZE = 512;
+
+    /**
+     * One tile; {@code left} to {@code bottom} are in full-resolution image pixels.
+     */
+    public static final class Tile {
+        public final long key;
+        public final int sampleSize;
+        public final int left, top, right, bottom;
+
+        Tile(int sampleSize, int column, int row, int imageWidth, int imageHeight) {
+            this.key = keyOf(sampleSize, column, row);
+            this.sampleSize = sampleSize;
+            int span = TILE_SIZE * sampleSize;
+            this.left = column * span;
+            this.top = row * span;
+            this.right = Math.min(left + span, imageWidth);
+            this.bottom = Math.min(top + span, imageHeight);
+        }
+    }
+
+    private TileGrid() {
+    }
+
+    /**
+     * The largest sample size that still gives at least one decoded pixel per
+     * screen pixel.
+     *
+     * @param scale screen pixels per full-resolution image pixel
+     */
+    public static int sampleSizeFor(float scale) {
+        int sampleSize = 1;
+        while (scale * sampleSize * 2 <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Adds the tiles that intersect the view to {@code out}, which is cleared first.
+     *
+     * @param displayLeft where the image's left edge is on screen, may be negative
+     * @param scale       screen pixels per full-resolution image pixel
+     */
+    public static void visibleTiles(int imageWidth, int imageHeight, float displayLeft, float displayTop,
+                                    float scale, int viewWidth, int viewHeight, int sampleSize, List<Tile> out) {
+        out.clear();
+        if (scale <= 0 || imageWidth <= 0 || imageHeight <= 0) return;
+
+        // The view's bounds in image pixels
+        float left = Math.max(0, -displayLeft / scale);
+        float top = Math.max(0, -displayTop / scale);
+        float right = Math.min(imageWidth, (viewWidth - displayLeft) / scale);
+        float bottom = Math.min(imageHeight, (viewHeight - displayTop) / scale);
+        if (right <= left || bottom <= top) return;
+
+        int span = TILE_SIZE * sampleSize;
+        int firstColumn = (int) (left / span);
+        int lastColumn = (int) Math.ceil(right / span) - 1;
+        int firstRow = (int) (top / span);
+        int lastRow = (int) Math.ceil(bottom / span) - 1;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                out.add(new Tile(sampleSize, column, row, imageWidth, imageHeight));
+            }
+        }
+    }
+
+    static long keyOf(int sampleSize, int column, int row) {
+        return ((long) Integer.numberOfTrailingZeros(sampleSize) << 48) | ((long) column << 24) | row;
+    }
+}
@@ -0,0 +1,195 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Draws full-resolution tiles of a large image over the downsampled copy a
+ * PhotoView shows, once the zoom asks for more detail than that copy has.
+ * Only tiles on screen are decoded, at the sample size the zoom needs, on
+ * {@link ImageDecoding}'s pool. Decoded tiles are kept in an LRU cache of
+ * bounded size; tiles that scroll away before their turn are skipped.
+ *
+ * Placed over the PhotoView and fed its display rect; takes no touches.
+ */
+public class TiledImageView extends View {
+
+    private static final String TAG = "TiledImageView";
+
+    private final List<TileGrid.Tile> visibleTiles = new ArrayList<>();
+    // Tiles the next decode should still bother with; read on the decode threads
+    private final Set<Long> wantedTiles = ConcurrentHashMap.newKeySet();
+    // Queued or decoding; main thread only
+    private final Set<Long> pendingTiles = new HashSet<>();
+    private final LruCache<Long, Bitmap> tileCache;
+    private final RectF displayRect = new RectF();
+    private final Rect source = new Rect();
+    private final RectF destination = new RectF();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private BitmapRegionDecoder decoder;
+    private int imageWidth;
+    private int imageHeight;
+    // Sample size of the copy underneath; tiles are only drawn below it
+    private int baseSampleSize;
+
+    public TiledImageView(Context context) {
+        this(context, null);
+    }
+
+    public TiledImageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        // An eighth of the heap; tiles of RGB_565 are half a megabyte each
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        tileCache = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap tile) {
+                return tile.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Starts drawing tiles of the image {@code decoder} reads. Takes
+     * ownership of the decoder.
+     *
+     * @param baseSampleSize sample size of the copy shown underneath
+     */
+    public void setSource(BitmapRegionDecoder decoder, int baseSampleSize) {
+        release();
+        this.decoder = decoder;
+        this.imageWidth = decoder.getWidth();
+        this.imageHeight = decoder.getHeight();
+        this.baseSampleSize = baseSampleSize;
+        updateTiles();
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Where the image is on screen; from PhotoView's OnMatrixChangedListener.
+     */
+    public void setDisplayRect(RectF rect) {
+        displayRect.set(rect);
+        updateTiles();
+    }
+
+    private void updateTiles() {
+        visibleTiles.clear();
+        if (decoder != null && imageWidth > 0 && !displayRect.isEmpty()) {
+            float scale = displayRect.width() / imageWidth;
+            int sampleSize = TileGrid.sampleSizeFor(scale);
+            if (sampleSize < baseSampleSize) {
+                TileGrid.visibleTiles(imageWidth, imageHeight, displayRect.left, displayRect.top,
+                        scale, getWidth(), getHeight(), sampleSize, visibleTiles);
+            }
+        }
+
+        wantedTiles.clear();
+        for (TileGrid.Tile tile : visibleTiles) {
+            wantedTiles.add(tile.key);
+            if (tileCache.get(tile.key) == null && pendingTiles.add(tile.key)) {
+                decodeLater(tile);
+            }
+        }
+        invalidate();
+    }
+
+    private void decodeLater(TileGrid.Tile tile) {
+        BitmapRegionDecoder tileDecoder = decoder;
+        ImageDecoding.getExecutor().execute(() -> {
+            Bitmap bitmap = null;
+            // Scrolled or zoomed away while it waited
+            if (wantedTiles.contains(tile.key)) {
+                bitmap = decodeTile(tileDecoder, tile);
+            }
+            Bitmap decoded = bitmap;
+            post(() -> {
+                pendingTiles.remove(tile.key);
+                if (decoded == null || tileDecoder != decoder) return;
+                tileCache.put(tile.key, decoded);
+                if (wantedTiles.contains(tile.key)) invalidate();
+            });
+        });
+    }
+
+    private static Bitmap decodeTile(BitmapRegionDecoder decoder, TileGrid.Tile tile) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = tile.sampleSize;
+        // Region decodes cannot go to hardware bitmaps; halve them instead
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        try {
+            return decoder.decodeRegion(new Rect(tile.left, tile.top, tile.right, tile.bottom), options);
+        } catch (IllegalStateException e) {
+            // Released meanwhile
+            return null;
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory decoding a tile", e);
+            return null;
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        updateTiles();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (visibleTiles.isEmpty()) return;
+        float scale = displayRect.width() / imageWidth;
+        for (int i = 0; i < visibleTiles.size(); i++) {
+            TileGrid.Tile tile = visibleTiles.get(i);
+            Bitmap bitmap = tileCache.get(tile.key);
+            // The copy underneath shows until the tile is decoded
+            if (bitmap == null) continue;
+            source.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            destination.set(displayRect.left + tile.left * scale, displayRect.top + tile.top * scale,
+                    displayRect.left + tile.right * scale, displayRect.top + tile.bottom * scale);
+            canvas.drawBitmap(bitmap, source, destination, paint);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        release();
+    }
+
+    /**
+     * Drops the tiles and the decoder; nothing is drawn until the next
+     * {@link #setSource}.
+     */
+    public void release() {
+        imageWidth = 0;
+        imageHeight = 0;
+        wantedTiles.clear();
+        visibleTiles.clear();
+        tileCache.evictAll();
+        if (decoder != null) {
+            BitmapRegionDecoder released = decoder;
+            decoder = null;
+            // Waits for a decode in progress, so not on the main thread
+            ImageDecoding.getExecutor().execute(released::recycle);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.moorixlabs.televault;
+
+/**
+ * Token bucket that hands out reservations instead of refusing requests:
+ * a caller takes a token now and is told how long to wait before using it.
+ * Tokens may go negative, so concurrent callers queue up behind each other
+ * at the refill rate instead of all retrying at once.
+ *
+ * Times are passed in by the caller, in milliseconds.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerMilli;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+
+    /**
+     * @param capacity        largest burst allowed after an idle period
+     * @param tokensPerSecond sustained rate
+     */
+    public TokenBucket(double capacity, double tokensPerSecond, long now) {
+        this.capacity = capacity;
+        this.tokensPerMilli = tokensPerSecond / 1000.0;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Takes one token.
+     *
+     * @return milliseconds the caller must wait before sending
+     */
+    public synchronized long reserve(long now) {
+        refill(now);
+        tokens -= 1;
+        // Refill may be scheduled past now after a block, so count from there
+        long wait = tokens >= 0 ? 0 : lastRefill + (long) Math.ceil(-tokens / tokensPerMilli) - now;
+        return Math.max(0, Math.max(wait, blockedUntil - now));
+    }
+
+    /**
+     * Milliseconds until the bucket accepts requests again after
+     * {@link #blockUntil}, or 0.
+     */
+    public synchronized long getBlockedWait(long now) {
+        return Math.max(0, blockedUntil - now);
+    }
+
+    /**
+     * Stops the bucket until {@code until}, e.g. for a server-side retry_after.
+     * Tokens saved up before the block are dropped so the burst that caused it
+     * is not repeated right after.
+     */
+    public synchronized void blockUntil(long until) {
+        refill(until);
+        blockedUntil = Math.max(blockedUntil, until);
+        tokens = Math.min(tokens, 1);
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.moorixlabs.televault;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide home of all Telegram traffic. Uploads, downloads and short
+ * control calls (delete, connection test) each get a small bounded pool, so
+ * picking thirty files queues thirty uploads instead of starting thirty
+ * threads. Parts of chunked transfers run in one more pool per lane, see
+ * {@link PartBatch}.
+ *
+ * Transfers run in a {@link Lane}. Queued work is started highest lane first
+ * and, within a lane, smallest first. Interactive downloads have a pool of
+ * their own, and while a lane has transfers running, the lanes below it are
+ * throttled so the radio goes to what the user is looking at. A throttled
+ * part sleeps on its own lane's part pool, so it never holds a thread a
+ * higher lane's parts are waiting for.
+ *
+ * Running uploads are kept in a registry so any screen can cancel them.
+ */
+public final class TransferManager {
+
+    private static final String TAG = "TransferManager";
+
+    private static final int UPLOAD_THREADS = 2;
+    private static final int DOWNLOAD_THREADS = 2;
+    private static final int INTERACTIVE_THREADS = 2;
+    private static final int CONTROL_THREADS = 2;
+    // Per lane; enough for two of its transfers at full parallelism
+    private static final int PART_THREADS = 2 * SettingsUtils.MAX_TRANSFER_PARALLELISM;
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+    // Per worker, for lower lanes while a higher lane is busy
+    private static final long THROTTLED_BYTES_PER_SECOND = 128 * 1024;
+
+    /**
+     * Scheduling class of a transfer, most urgent first.
+     */
+    public enum Lane {
+        INTERACTIVE, // Previews and shares the user is waiting on
+        USER,        // Uploads and downloads the user started
+        BACKGROUND   // Resumed and other unattended work
+    }
+
+    public enum Pool {
+        UPLOAD, DOWNLOAD, INTERACTIVE, CONTROL, INTERACTIVE_PART, USER_PART, BACKGROUND_PART
+    }
+
+    private static volatile TransferManager instance;
+    private static final ThreadLocal<Lane> currentLane = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor uploadExecutor = createPool("upload", UPLOAD_THREADS, true);
+    private final ThreadPoolExecutor downloadExecutor = createPool("download", DOWNLOAD_THREADS, true);
+    private final ThreadPoolExecutor interactiveExecutor = createPool("interactive", INTERACTIVE_THREADS, true);
+    private final ThreadPoolExecutor controlExecutor = createPool("control", CONTROL_THREADS, false);
+    private final ThreadPoolExecutor interactivePartExecutor = createPool("interactive-part", PART_THREADS, true);
+    private final ThreadPoolExecutor userPartExecutor = createPool("user-part", PART_THREADS, true);
+    private final ThreadPoolExecutor backgroundPartExecutor = createPool("background-part", PART_THREADS, true);
+
+    // CloudFile id -> running upload
+    private final Map<String, TelegramUploader> activeUploads = new ConcurrentHashMap<>();
+    // Running transfers per lane, indexed by ordinal
+    private final AtomicIntegerArray activeTransfers = new AtomicIntegerArray(Lane.values().length);
+    private final AtomicLong sequence = new AtomicLong();
+    // Time spent moving bytes versus waiting on rate limits and lanes
+    private final AtomicLong transferMillis = new AtomicLong();
+    private final AtomicLong throttledMillis = new AtomicLong();
+
+    private TransferManager() {
+    }
+
+    public static TransferManager getInstance() {
+        if (instance == null) {
+            synchronized (TransferManager.class) {
+                if (instance == null) {
+                    instance = new TransferManager();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Queues an upload and registers it under {@code cloudFileId} until it ends.
+     *
+     * @param remainingBytes bytes still to send, used to order the lane
+     */
+    public void submitUpload(String cloudFileId, TelegramUploader uploader, Lane lane, long remainingBytes) {
+        activeUploads.put(cloudFileId, uploader);
+        // Rows find their progress by file id
+        uploader.setProgressKey(cloudFileId);
+        uploadExecutor.execute(new LaneTask(lane, remainingBytes, true, () -> {
+            try {
+                uploader.upload();
+            } finally {
+                activeUploads.remove(cloudFileId, uploader);
+            }
+        }));
+        logMetrics();
+    }
+
+    /**
+     * @return false if no upload is registered for the file
+     */
+    public boolean cancelUpload(String cloudFileId) {
+        TelegramUploader uploader = activeUploads.get(cloudFileId);
+        if (uploader == null) return false;
+        uploader.cancel();
+        return true;
+    }
+
+    public boolean isUploading(String cloudFileId) {
+        return activeUploads.containsKey(cloudFileId);
+    }
+
+    /**
+     * Queues a download. Interactive ones never wait behind bulk downloads.
+     *
+     * @param remainingBytes bytes still to fetch, used to order the lane
+     */
+    public void submitDownload(Lane lane, long remainingBytes, Runnable task) {
+        ThreadPoolExecutor executor = lane == Lane.INTERACTIVE ? interactiveExecutor : downloadExecutor;
+        executor.execute(new LaneTask(lane, remainingBytes, true, task));
+        logMetrics();
+    }
+
+    public void submitControl(Runnable task) {
+        controlExecutor.execute(task);
+    }
+
+    /**
+     * Pool for the parts of chunked transfers in {@code lane}, ordered like
+     * the transfers themselves.
+     */
+    public Executor getPartExecutor(Lane lane, long remainingBytes) {
+        ThreadPoolExecutor executor = getPartPool(lane);
+        return runnable -> executor.execute(new LaneTask(lane, remainingBytes, false, runnable));
+    }
+
+    private ThreadPoolExecutor getPartPool(Lane lane) {
+        switch (lane) {
+            case INTERACTIVE: return interactivePartExecutor;
+            case USER: return userPartExecutor;
+            default: return backgroundPartExecutor;
+        }
+    }
+
+    /**
+     * Lane of the transfer running on the calling thread; USER outside one.
+     */
+    public static Lane getCurrentLane() {
+        Lane lane = currentLane.get();
+        return lane != null ? lane : Lane.USER;
+    }
+
+    /**
+     * Called by transfers after moving {@code bytes}. Sleeps long enough to
+     * hold the worker to {@link #THROTTLED_BYTES_PER_SECOND} while a higher
+     * lane has transfers running; returns at once otherwise.
+     */
+    public void throttle(Lane lane, int bytes) {
+        if (!isHigherLaneActive(lane)) return;
+        long pause = bytes * 1000L / THROTTLED_BYTES_PER_SECOND;
+        try {
+            Thread.sleep(pause);
+            addThrottledTime(pause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds time a transfer spent sending or receiving, summed over workers.
+     */
+    public void addTransferTime(long millis) {
+        transferMillis.addAndGet(millis);
+    }
+
+    /**
+     * Adds time a transfer spent held back by rate limits or lane throttling.
+     */
+    public void addThrottledTime(long millis) {
+        throttledMillis.addAndGet(millis);
+    }
+
+    public long getTransferTime() {
+        return transferMillis.get();
+    }
+
+    public long getThrottledTime() {
+        return throttledMillis.get();
+    }
+
+    private boolean isHigherLaneActive(Lane lane) {
+        for (int i = 0; i < lane.ordinal(); i++) {
+            if (activeTransfers.get(i) > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Transfers of {@code lane} currently running.
+     */
+    public int getActiveCount(Lane lane) {
+        return activeTransfers.get(lane.ordinal());
+    }
+
+    /**
+     * Tasks waiting for a thread in {@code pool}.
+     */
+    public int getQueueDepth(Pool pool) {
+        return getExecutor(pool).getQueue().size();
+    }
+
+    /**
+     * Tasks currently running in {@code pool}.
+     */
+    public int getActiveCount(Pool pool) {
+        return getExecutor(pool).getActiveCount();
+    }
+
+    public String getMetricsSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Pool pool : Pool.values()) {
+            if (summary.length() > 0) summary.append(", ");
+            summary.append(pool.name().toLowerCase(Locale.US)).append(' ')
+                    .append(getActiveCount(pool)).append(" active/")
+                    .append(getQueueDepth(pool)).append(" queued");
+        }
+        summary.append("; lanes");
+        for (Lane lane : Lane.values()) {
+            summary.append(' ').append(lane.name().toLowerCase(Locale.US))
+                    .append('=').append(getActiveCount(lane));
+        }
+        summary.append("; transfer ").append(getTransferTime())
+                .append(" ms, throttled ").append(getThrottledTime()).append(" ms");
+        return summary.toString();
+    }
+
+    private void logMetrics() {
+        Log.d(TAG, getMetricsSummary());
+    }
+
+    private ThreadPoolExecutor getExecutor(Pool pool) {
+        switch (pool) {
+            case UPLOAD: return uploadExecutor;
+            case DOWNLOAD: return downloadExecutor;
+            case INTERACTIVE: return interactiveExecutor;
+            case CONTROL: return controlExecutor;
+            case INTERACTIVE_PART: return interactivePartExecutor;
+            case USER_PART: return userPartExecutor;
+            default: return backgroundPartExecutor;
+        }
+    }
+
+    /**
+     * @param prioritized order queued {@link LaneTask}s by lane and size
+     *                    instead of first come, first served
+     */
+    private static ThreadPoolExecutor createPool(String name, int threads, boolean prioritized) {
+        BlockingQueue<Runnable> queue = prioritized ? new PriorityBlockingQueue<>() : new LinkedBlockingQueue<>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, queue,
+                new TransferThreadFactory(name));
+        // Idle pools give their threads back
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Queue entry of a prioritized pool: lane first, then fewest remaining
+     * bytes, then submission order.
+     */
+    private final class LaneTask implements Runnable, Comparable<LaneTask> {
+        private final Lane lane;
+        private final long remainingBytes;
+        private final boolean countsAsTransfer; // False for the parts of a transfer
+        private final long order = sequence.getAndIncrement();
+        private final Runnable task;
+
+        LaneTask(Lane lane, long remainingBytes, boolean countsAsTransfer, Runnable task) {
+            this.lane = lane;
+            this.remainingBytes = remainingBytes;
+            this.countsAsTransfer = countsAsTransfer;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            currentLane.set(lane);
+            if (countsAsTransfer) activeTransfers.incrementAndGet(lane.ordinal());
+            try {
+                task.run();
+            } finally {
+                if (countsAsTransfer) activeTransfers.decrementAndGet(lane.ordinal());
+                currentLane.remove();
+            }
+        }
+
+        @Override
+        public int compareTo(LaneTask other) {
+            if (lane != other.lane) return Integer.compare(lane.ordinal(), other.lane.ordinal());
+            if (remainingBytes != other.remainingBytes) return Long.compare(remainingBytes, other.remainingBytes);
+            return Long.compare(order, other.order);
+        }
+    }
+
+    private static class TransferThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        TransferThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(() -> {
+                // Keep transfers from competing with the UI thread
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "televault-" + name + "-" + count.incrementAndGet());
+        }
+    }
+}
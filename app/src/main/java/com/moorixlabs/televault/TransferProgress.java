@@ -0,0 +1,258 @@
+package com.moorixlabs.televault;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress of running transfers. Workers only add to a per-transfer
+ * byte counter, which takes no lock and posts nothing. Once per display
+ * frame the counters are sampled on the main thread, and listeners get the
+ * transfers that moved since the last frame in one call, along with their
+ * rate and time left. Twenty transfers thus cost one main thread callback a
+ * frame, however often their workers report.
+ *
+ * Frames are only requested while transfers are running.
+ */
+public final class TransferProgress {
+
+    // Rates are measured over windows of this length and then smoothed
+    static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+    public static final long UNKNOWN = -1;
+
+    /**
+     * Receives changes on the main thread, at most once per frame.
+     */
+    public interface Listener {
+        /**
+         * @param changed transfers that moved or finished since the last
+         *                frame; the list and samples are reused, so copy
+         *                what is needed past the call
+         */
+        void onTransferProgress(List<Sample> changed);
+    }
+
+    /**
+     * The state of one transfer as of the last frame. Only touched on the main thread.
+     */
+    public static final class Sample {
+        public final String key;
+        public long bytes;
+        public long totalBytes;
+        public long bytesPerSecond;
+        // Time left; UNKNOWN until a rate is known
+        public long etaMillis = UNKNOWN;
+        public boolean finished;
+
+        Sample(String key) {
+            this.key = key;
+        }
+
+        public int getPercent() {
+            if (totalBytes <= 0) return 0;
+            return (int) Math.max(0, Math.min(100, bytes * 100 / totalBytes));
+        }
+    }
+
+    /**
+     * The counter a worker reports to. Safe to use from any thread.
+     */
+    public static final class Task {
+        private final TransferProgress owner;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong totalBytes = new AtomicLong();
+        private volatile boolean finished;
+
+        // Main thread only
+        private final Sample sample;
+        private long windowStartNanos = UNKNOWN;
+        private long windowStartBytes;
+
+        Task(TransferProgress owner, String key, long totalBytes) {
+            this.owner = owner;
+            this.totalBytes.set(totalBytes);
+            this.sample = new Sample(key);
+        }
+
+        /**
+         * Adds sent or received bytes; negative to take back bytes that will be sent again.
+         *
+         * @return the bytes transferred so far
+         */
+        public long add(long delta) {
+            return bytes.addAndGet(delta);
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public void setTotalBytes(long totalBytes) {
+            this.totalBytes.set(totalBytes);
+        }
+
+        /**
+         * For transfers that learn their size piece by piece.
+         */
+        public void addTotalBytes(long delta) {
+            totalBytes.addAndGet(delta);
+        }
+
+        public long getTotalBytes() {
+            return totalBytes.get();
+        }
+
+        /**
+         * Reports the transfer as done, whatever the outcome. It is dropped after the next frame.
+         */
+        public void finish() {
+            finished = true;
+            owner.requestFrame();
+        }
+    }
+
+    private static volatile TransferProgress instance;
+
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Reused for every frame
+    private final List<Sample> changed = new ArrayList<>();
+    private final AtomicBoolean frameRequested = new AtomicBoolean();
+    private final Runnable frameRequester;
+    private volatile Handler mainHandler;
+    private Choreographer.FrameCallback frameCallback;
+
+    public static TransferProgress getInstance() {
+        if (instance == null) {
+            synchronized (TransferProgress.class) {
+                if (instance == null) {
+                    instance = new TransferProgress(null);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param frameRequester run instead of asking the Choreographer for a
+     *                       frame; for tests, which call {@link #sample}
+     */
+    TransferProgress(Runnable frameRequester) {
+        this.frameRequester = frameRequester != null ? frameRequester : this::postFrameCallback;
+    }
+
+    /**
+     * Starts tracking a transfer, replacing any earlier one under the same key.
+     *
+     * @param totalBytes 0 if not known yet
+     */
+    public Task begin(String key, long totalBytes) {
+        Task task = new Task(this, key, totalBytes);
+        tasks.put(key, task);
+        requestFrame();
+        return task;
+    }
+
+    /**
+     * Main thread only.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void requestFrame() {
+        if (frameRequested.compareAndSet(false, true)) {
+            frameRequester.run();
+        }
+    }
+
+    private void postFrameCallback() {
+        if (mainHandler == null) {
+            synchronized (this) {
+                if (mainHandler == null) {
+                    frameCallback = frameTimeNanos -> {
+                        dispatch(sample(frameTimeNanos));
+                        scheduleNextFrame();
+                    };
+                    mainHandler = new Handler(Looper.getMainLooper());
+                }
+            }
+        }
+        // Choreographer is per thread; get the main thread's
+        mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(frameCallback));
+    }
+
+    private void scheduleNextFrame() {
+        if (!tasks.isEmpty()) {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+            return;
+        }
+        frameRequested.set(false);
+        // A transfer may have begun after the check; it found a frame still requested
+        if (!tasks.isEmpty()) requestFrame();
+    }
+
+    private void dispatch(List<Sample> samples) {
+        if (samples.isEmpty()) return;
+        for (Listener listener : listeners) {
+            listener.onTransferProgress(samples);
+        }
+    }
+
+    /**
+     * Reads every counter once and returns the transfers that changed,
+     * dropping finished ones. Main thread only; package-private for tests.
+     */
+    List<Sample> sample(long nowNanos) {
+        changed.clear();
+        for (Task task : tasks.values()) {
+            // Read before the counter, so the last sample has all the bytes
+            boolean finished = task.finished;
+            long bytes = task.bytes.get();
+            long totalBytes = task.totalBytes.get();
+            Sample sample = task.sample;
+
+            boolean moved = bytes != sample.bytes || totalBytes != sample.totalBytes;
+            if (task.windowStartNanos == UNKNOWN) {
+                task.windowStartNanos = nowNanos;
+                task.windowStartBytes = bytes;
+                moved = true;
+            } else if (nowNanos - task.windowStartNanos >= RATE_WINDOW_NANOS) {
+                long rate = (bytes - task.windowStartBytes) * 1_000_000_000L / (nowNanos - task.windowStartNanos);
+                rate = Math.max(0, rate);
+                // Halves the weight of older windows, so stalls show within a few seconds
+                long smoothed = sample.bytesPerSecond == 0 ? rate : (sample.bytesPerSecond + rate) / 2;
+                moved |= smoothed != sample.bytesPerSecond;
+                sample.bytesPerSecond = smoothed;
+                task.windowStartNanos = nowNanos;
+                task.windowStartBytes = bytes;
+            }
+
+            sample.bytes = bytes;
+            sample.totalBytes = totalBytes;
+            sample.etaMillis = sample.bytesPerSecond > 0 && totalBytes > 0
+                    ? Math.max(0, totalBytes - bytes) * 1000 / sample.bytesPerSecond
+                    : UNKNOWN;
+            if (finished) {
+                sample.finished = true;
+                // Only if not replaced by a new transfer under the same key
+                tasks.remove(sample.key, task);
+                moved = true;
+            }
+            if (moved) changed.add(sample);
+        }
+        return changed;
+    }
+}
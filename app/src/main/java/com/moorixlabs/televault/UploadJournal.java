@@ -0,0 +1,215 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Durable record of an upload in flight: where the bytes come from, where
+ * they go and which parts Telegram already has. Written after every part so
+ * an upload interrupted by a process death continues from the last finished
+ * part on the next start instead of from zero.
+ *
+ * One JSON file per CloudFile under filesDir/upload_journal, replaced
+ * atomically so a crash mid-write leaves the previous state intact.
+ */
+public class UploadJournal {
+
+    private static final String TAG = "UploadJournal";
+    private static final String JOURNAL_FOLDER = "upload_journal";
+    private static final String EXTENSION = ".json";
+
+    private final AtomicFile file;
+    private final String cloudFileId;
+    private final Uri sourceUri;
+    private final String fileName;
+    private final String chatId;
+    private long size;
+    private long partSize;
+    private final List<FilePart> completedParts = new ArrayList<>();
+    private String thumbFileId; // Sent with the first part; null until then
+
+    private UploadJournal(AtomicFile file, String cloudFileId, Uri sourceUri, String fileName, String chatId) {
+        this.file = file;
+        this.cloudFileId = cloudFileId;
+        this.sourceUri = sourceUri;
+        this.fileName = fileName;
+        this.chatId = chatId;
+    }
+
+    /**
+     * Creates and persists a journal for a new upload.
+     */
+    public static UploadJournal create(Context context, String cloudFileId, Uri sourceUri,
+                                       String fileName, String chatId) {
+        UploadJournal journal = new UploadJournal(getFile(context, cloudFileId),
+                cloudFileId, sourceUri, fileName, chatId);
+        journal.save();
+        return journal;
+    }
+
+    /**
+     * Every journal left behind by uploads that did not finish.
+     */
+    public static List<UploadJournal> loadAll(Context context) {
+        List<UploadJournal> journals = new ArrayList<>();
+        File[] files = getFolder(context).listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) return journals;
+
+        for (File journalFile : files) {
+            AtomicFile atomicFile = new AtomicFile(journalFile);
+            try {
+                journals.add(fromJson(atomicFile,
+                        new JSONObject(new String(atomicFile.readFully(), StandardCharsets.UTF_8))));
+            } catch (IOException | JSONException e) {
+                Log.w(TAG, "Discarding unreadable journal " + journalFile.getName(), e);
+                atomicFile.delete();
+            }
+        }
+        return journals;
+    }
+
+    /**
+     * Removes the journal of a finished, failed or cancelled upload.
+     */
+    public static void delete(Context context, String cloudFileId) {
+        getFile(context, cloudFileId).delete();
+    }
+
+    public void delete() {
+        file.delete();
+    }
+
+    public String getCloudFileId() {
+        return cloudFileId;
+    }
+
+    public Uri getSourceUri() {
+        return sourceUri;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getChatId() {
+        return chatId;
+    }
+
+    /**
+     * Binds the journal to the source size and part layout of this attempt.
+     * Parts recorded for a different layout cannot be reused.
+     *
+     * @return parts that no longer match and should be removed from the chat
+     */
+    public synchronized List<FilePart> begin(long size, long partSize) {
+        List<FilePart> staleParts = new ArrayList<>();
+        if (this.size != size || this.partSize != partSize) {
+            staleParts.addAll(completedParts);
+            completedParts.clear();
+            thumbFileId = null;
+        }
+        this.size = size;
+        this.partSize = partSize;
+        save();
+        return staleParts;
+    }
+
+    public synchronized List<FilePart> getCompletedParts() {
+        return new ArrayList<>(completedParts);
+    }
+
+    /**
+     * Records a part Telegram has accepted. Called from part workers.
+     */
+    public synchronized void recordPart(FilePart part) {
+        completedParts.add(part);
+        save();
+    }
+
+    public synchronized String getThumbFileId() {
+        return thumbFileId;
+    }
+
+    /**
+     * Records the thumbnail Telegram kept from the first part, which is not sent again on resume.
+     */
+    public synchronized void recordThumbnail(String thumbFileId) {
+        this.thumbFileId = thumbFileId;
+        save();
+    }
+
+    private void save() {
+        FileOutputStream stream = null;
+        try {
+            file.getBaseFile().getParentFile().mkdirs();
+            stream = file.startWrite();
+            stream.write(toJson().toString().getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(stream);
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Could not write journal for " + fileName, e);
+            if (stream != null) file.failWrite(stream);
+        }
+    }
+
+    private JSONObject toJson() throws JSONException {
+        JSONArray parts = new JSONArray();
+        for (FilePart part : completedParts) {
+            parts.put(new JSONObject()
+                    .put("index", part.getIndex())
+                    .put("size", part.getSize())
+                    .put("message_id", part.getMessageId())
+                    .put("file_id", part.getFileId()));
+        }
+        return new JSONObject()
+                .put("cloud_file_id", cloudFileId)
+                .put("uri", sourceUri.toString())
+                .put("name", fileName)
+                .put("chat_id", chatId)
+                .put("size", size)
+                .put("part_size", partSize)
+                .put("parts", parts)
+                .putOpt("thumb_file_id", thumbFileId);
+    }
+
+    private static UploadJournal fromJson(AtomicFile file, JSONObject json) throws JSONException {
+        UploadJournal journal = new UploadJournal(file,
+                json.getString("cloud_file_id"),
+                Uri.parse(json.getString("uri")),
+                json.getString("name"),
+                json.getString("chat_id"));
+        journal.size = json.optLong("size");
+        journal.partSize = json.optLong("part_size");
+        journal.thumbFileId = json.optString("thumb_file_id", null);
+
+        JSONArray parts = json.optJSONArray("parts");
+        if (parts != null) {
+            for (int i = 0; i < parts.length(); i++) {
+                JSONObject part = parts.getJSONObject(i);
+                journal.completedParts.add(new FilePart(part.getInt("index"), part.getLong("size"),
+                        part.getString("message_id"), part.getString("file_id")));
+            }
+        }
+        return journal;
+    }
+
+    private static File getFolder(Context context) {
+        return new File(context.getFilesDir(), JOURNAL_FOLDER);
+    }
+
+    private static AtomicFile getFile(Context context, String cloudFileId) {
+        return new AtomicFile(new File(getFolder(context), cloudFileId + EXTENSION));
+    }
+}
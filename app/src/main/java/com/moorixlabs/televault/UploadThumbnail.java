@@ -0,0 +1,127 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.util.Size;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+/**
+ * Makes the thumbnail sent along with an image or video, so the list can
+ * show a few KB from Telegram instead of decoding the original.
+ *
+ * Telegram only takes a JPEG of at most 320 px a side and under 200 KB as a
+ * document thumbnail; anything else is silently dropped.
+ */
+public final class UploadThumbnail {
+
+    private static final String TAG = "UploadThumbnail";
+
+    public static final int MAX_SIDE = 320;
+    static final int MAX_BYTES = 200 * 1024;
+    private static final int[] QUALITIES = {85, 70, 50};
+
+    private UploadThumbnail() {
+    }
+
+    /**
+     * @return the JPEG, or null if the file is no image or video or cannot be decoded
+     */
+    public static byte[] create(Context context, Uri uri, String fileName) {
+        FileCategory category = FileCategory.of(fileName);
+        if (category != FileCategory.IMAGE && category != FileCategory.VIDEO) return null;
+
+        Bitmap bitmap = null;
+        try {
+            bitmap = decode(context, uri, category);
+            if (bitmap == null) {
+                Log.w(TAG, "No thumbnail for " + fileName);
+                return null;
+            }
+            Bitmap scaled = fitInto(bitmap, MAX_SIDE);
+            try {
+                return compress(scaled);
+            } finally {
+                if (scaled != bitmap) scaled.recycle();
+            }
+        } catch (Exception | OutOfMemoryError e) {
+            // The upload goes on without one
+            Log.w(TAG, "Could not make a thumbnail for " + fileName, e);
+            return null;
+        } finally {
+            if (bitmap != null) bitmap.recycle();
+        }
+    }
+
+    private static Bitmap decode(Context context, Uri uri, FileCategory category) throws Exception {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            try {
+                // Served from the provider's own thumbnail when it keeps one; applies EXIF rotation
+                return context.getContentResolver().loadThumbnail(uri, new Size(MAX_SIDE, MAX_SIDE), null);
+            } catch (Exception e) {
+                Log.d(TAG, "Provider has no thumbnail for " + uri + ", decoding it");
+            }
+        }
+        return category == FileCategory.VIDEO ? decodeVideoFrame(context, uri) : decodeImage(context, uri);
+    }
+
+    /**
+     * Decodes at the largest power-of-two reduction that still covers {@link #MAX_SIDE}.
+     */
+    private static Bitmap decodeImage(Context context, Uri uri) throws Exception {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream stream = context.getContentResolver().openInputStream(uri)) {
+            BitmapFactory.decodeStream(stream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        int sampleSize = 1;
+        while (Math.min(options.outWidth, options.outHeight) / (sampleSize * 2) >= MAX_SIDE) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        try (InputStream stream = context.getContentResolver().openInputStream(uri)) {
+            return BitmapFactory.decodeStream(stream, null, options);
+        }
+    }
+
+    private static Bitmap decodeVideoFrame(Context context, Uri uri) throws Exception {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                return retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC,
+                        MAX_SIDE, MAX_SIDE);
+            }
+            return retriever.getFrameAtTime();
+        } finally {
+            retriever.release();
+        }
+    }
+
+    private static Bitmap fitInto(Bitmap bitmap, int maxSide) {
+        int longSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longSide <= maxSide) return bitmap;
+        int width = Math.max(1, bitmap.getWidth() * maxSide / longSide);
+        int height = Math.max(1, bitmap.getHeight() * maxSide / longSide);
+        return Bitmap.createScaledBitmap(bitmap, width, height, true);
+    }
+
+    private static byte[] compress(Bitmap bitmap) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        for (int quality : QUALITIES) {
+            out.reset();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out);
+            if (out.size() <= MAX_BYTES) return out.toByteArray();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,59 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.os.Environment;
+
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.io.File;
+
+/**
+ * The vault index. Lives next to the legacy text index in
+ * Documents/TeleVault, so like before it survives reinstalling the app;
+ * requires the storage permission the app already asks for.
+ */
+@Database(entities = {VaultFileEntity.class}, version = 2, exportSchema = false)
+public abstract class VaultDatabase extends RoomDatabase {
+
+    private static final String APP_FOLDER = "TeleVault";
+    static final String DATABASE_NAME = "televault_index.db";
+
+    // Version 2 keeps the thumbnail sent with images and videos
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE files ADD COLUMN thumbFileId TEXT");
+        }
+    };
+
+    private static volatile VaultDatabase instance;
+
+    public abstract VaultFileDao files();
+
+    public static VaultDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (VaultDatabase.class) {
+                if (instance == null) {
+                    File appFolder = getAppFolder();
+                    appFolder.mkdirs();
+                    instance = Room.databaseBuilder(context.getApplicationContext(), VaultDatabase.class,
+                                    new File(appFolder, DATABASE_NAME).getAbsolutePath())
+                            // WAL needs shared memory, which shared storage does not reliably offer
+                            .setJournalMode(JournalMode.TRUNCATE)
+                            .addMigrations(MIGRATION_1_2)
+                            .build();
+                }
+            }
+        }
+        return instance;
+    }
+
+    static File getAppFolder() {
+        File documentsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
+        return new File(documentsDir, APP_FOLDER);
+    }
+}
@@ -0,0 +1,46 @@
+package com.moorixlabs.televault;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import androidx.room.Upsert;
+
+import java.util.List;
+
+@Dao
+public interface VaultFileDao {
+
+    @Upsert
+    void upsert(VaultFileEntity file);
+
+    /**
+     * Writes all rows in one transaction.
+     */
+    @Upsert
+    void upsertAll(List<VaultFileEntity> files);
+
+    @Query("DELETE FROM files WHERE id = :id")
+    int deleteById(String id);
+
+    @Query("SELECT * FROM files WHERE id = :id")
+    VaultFileEntity getById(String id);
+
+    @Query("SELECT * FROM files ORDER BY date DESC")
+    List<VaultFileEntity> getAllByDate();
+
+    @Query("SELECT * FROM files WHERE category = :category ORDER BY date DESC")
+    List<VaultFileEntity> getByCategory(String category);
+
+    @Query("SELECT COUNT(*) FROM files")
+    int count();
+
+    /**
+     * Deletes several rows in one transaction.
+     */
+    @Transaction
+    default void deleteAll(List<String> ids) {
+        for (String id : ids) {
+            deleteById(id);
+        }
+    }
+}
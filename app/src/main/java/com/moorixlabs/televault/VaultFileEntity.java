@@ -0,0 +1,74 @@
+package com.moorixlabs.televault;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * One row of the vault index. Mirrors {@link CloudFile}; the part manifest
+ * is kept in its {@link FilePart#encodeManifest} form.
+ */
+@Entity(tableName = "files",
+        indices = {
+                @Index("date"),
+                @Index("category"),
+                @Index("size"),
+                @Index("name")
+        })
+public class VaultFileEntity {
+
+    @PrimaryKey
+    @NonNull
+    public String id = "";
+
+    @NonNull
+    @ColumnInfo(collate = ColumnInfo.NOCASE)
+    public String name = "";
+
+    public long size;
+
+    public long date;
+
+    public String path;
+
+    public boolean uploaded;
+
+    public String fileId;
+
+    public String messageId;
+
+    public String manifest;
+
+    public String thumbFileId;
+
+    /**
+     * {@link FileCategory} name, derived from the name.
+     */
+    @NonNull
+    public String category = FilteredFilesActivity.TYPE_OTHER;
+
+    public static VaultFileEntity from(CloudFile file) {
+        VaultFileEntity entity = new VaultFileEntity();
+        entity.id = file.getId();
+        entity.name = file.getName();
+        entity.size = file.getSize();
+        entity.date = file.getDate();
+        entity.path = file.getPath();
+        entity.uploaded = file.isUploaded();
+        entity.fileId = file.getFileId();
+        entity.messageId = file.getMessageId();
+        entity.manifest = FilePart.encodeManifest(file.getParts());
+        entity.thumbFileId = file.getThumbFileId();
+        entity.category = file.getCategory().name();
+        return entity;
+    }
+
+    public CloudFile toCloudFile() {
+        CloudFile file = new CloudFile(id, name, size, date, path, uploaded, fileId, messageId);
+        file.setParts(FilePart.decodeManifest(manifest));
+        file.setThumbFileId(thumbFileId);
+        return file;
+    }
+}
@@ -0,0 +1,446 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The vault index for the whole process. It is read from the
+ * {@link VaultStore} on a background thread and then served from memory, so
+ * moving between screens costs no disk I/O. {@link #load} reads it again
+ * only when the index files' sizes or modification times have changed since.
+ * Changes apply to memory and are announced to listeners with the ids they
+ * touched at once; the store is written afterwards on the loader thread.
+ *
+ * The {@link CloudFile} instances handed out are the repository's own and
+ * are shared by every screen. Callers that change one pass it to
+ * {@link #update} to store the change.
+ */
+public final class VaultRepository {
+
+    private static final String TAG = "VaultRepository";
+
+    // Newest files kept in the home snapshot
+    public static final int RECENT_FILES_LIMIT = 10;
+    // Quiet period before a change is written to the home snapshot
+    private static final long SNAPSHOT_DELAY_MS = 2000;
+    // Tries of a store write before it is given up, and the wait before the first retry
+    private static final int STORE_WRITE_ATTEMPTS = 3;
+    private static final long STORE_RETRY_DELAY_MS = 500;
+
+    public enum ChangeType {
+        // The whole index was (re)read; ids is empty
+        LOADED,
+        INSERTED,
+        UPDATED,
+        REMOVED
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread.
+         *
+         * @param ids files the change touched; removed ones are no longer in the repository
+         */
+        void onVaultChanged(ChangeType type, List<String> ids);
+    }
+
+    private static volatile VaultRepository instance;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // Loads the index and writes the home snapshot, one thing at a time
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "vault-loader"));
+    private final AtomicBoolean loadQueued = new AtomicBoolean();
+    private final Runnable saveSnapshot = () -> loader.execute(this::writeHomeSnapshot);
+
+    private final Map<String, CloudFile> filesById = new HashMap<>();
+    // Newest first
+    private final List<CloudFile> filesByDate = new ArrayList<>();
+    private final Map<FileCategory, CategoryIndex> categories = new EnumMap<>(FileCategory.class);
+    private boolean loaded = false;
+    // Index stamp the memory matches
+    private String loadedStamp;
+    // Writes not in the store yet; replayed over what a load reads
+    private final List<CloudFile> pendingWrites = new ArrayList<>();
+    private final List<String> pendingRemovals = new ArrayList<>();
+
+    /**
+     * Ids of one category, newest first, and their byte total.
+     */
+    private static final class CategoryIndex {
+        final List<String> ids = new ArrayList<>();
+        long totalSize;
+    }
+
+    private VaultRepository(Context context) {
+        this.context = context.getApplicationContext();
+        for (FileCategory category : FileCategory.values()) {
+            categories.put(category, new CategoryIndex());
+        }
+    }
+
+    public static VaultRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (VaultRepository.class) {
+                if (instance == null) {
+                    instance = new VaultRepository(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the index in the background, unless it is already in memory and
+     * unchanged on disk. Listeners get {@link ChangeType#LOADED} when a read
+     * finishes. Needs the storage permission.
+     */
+    public void load() {
+        if (!loadQueued.compareAndSet(false, true)) return;
+        loader.execute(() -> {
+            // Requests from here on queue another check
+            loadQueued.set(false);
+            loadIfChanged();
+        });
+    }
+
+    private void loadIfChanged() {
+        try {
+            LegacyIndexImporter.importIfNeeded(context);
+            String stamp = VaultStores.getIndexStamp(context);
+            synchronized (this) {
+                if (loaded && stamp.equals(loadedStamp)) {
+                    Log.d(TAG, "Index unchanged, skipping load");
+                    return;
+                }
+            }
+
+            List<CloudFile> files = VaultStores.get(context).getAll();
+
+            synchronized (this) {
+                filesById.clear();
+                filesByDate.clear();
+                for (CategoryIndex index : categories.values()) {
+                    index.ids.clear();
+                    index.totalSize = 0;
+                }
+                for (CloudFile file : files) {
+                    filesById.put(file.getId(), file);
+                    filesByDate.add(file);
+                    // Already newest first
+                    CategoryIndex index = categories.get(file.getCategory());
+                    index.ids.add(file.getId());
+                    index.totalSize += file.getSize();
+                }
+                // Their store writes queued behind this load; each updates the stamp when done
+                for (CloudFile file : pendingWrites) {
+                    putInMemory(file);
+                }
+                for (String id : pendingRemovals) {
+                    removeFromMemory(id);
+                }
+
+                loaded = true;
+                loadedStamp = stamp;
+                Log.d(TAG, "Loaded " + filesByDate.size() + " files");
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not load the index", e);
+            return;
+        }
+
+        mainHandler.post(() -> dispatch(ChangeType.LOADED, Collections.emptyList()));
+        writeHomeSnapshot();
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // ==================== READS ====================
+
+    public synchronized CloudFile get(String id) {
+        return filesById.get(id);
+    }
+
+    /**
+     * All files, newest first.
+     */
+    public synchronized List<CloudFile> getAll() {
+        return new ArrayList<>(filesByDate);
+    }
+
+    /**
+     * The {@code limit} newest files.
+     */
+    public synchronized List<CloudFile> getRecent(int limit) {
+        return new ArrayList<>(filesByDate.subList(0, Math.min(limit, filesByDate.size())));
+    }
+
+    /**
+     * Files of one category, newest first.
+     */
+    public synchronized List<CloudFile> getByCategory(FileCategory category) {
+        List<String> ids = categories.get(category).ids;
+        List<CloudFile> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            result.add(filesById.get(id));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return filesByDate.size();
+    }
+
+    /**
+     * The dashboard counters, kept up to date on every change.
+     */
+    public synchronized VaultSummary getSummary() {
+        long totalSize = 0;
+        for (CategoryIndex index : categories.values()) {
+            totalSize += index.totalSize;
+        }
+        return new VaultSummary(
+                categories.get(FileCategory.IMAGE).ids.size(),
+                categories.get(FileCategory.VIDEO).ids.size(),
+                categories.get(FileCategory.PDF).ids.size(),
+                categories.get(FileCategory.OTHER).ids.size(),
+                totalSize);
+    }
+
+    /**
+     * The home screen as last saved, for drawing before the index has
+     * loaded. Null when there is none or the index has changed since.
+     */
+    public HomeSnapshot readHomeSnapshot() {
+        HomeSnapshot snapshot = HomeSnapshot.read(context);
+        if (snapshot == null || !snapshot.indexStamp.equals(VaultStores.getIndexStamp(context))) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    private void writeHomeSnapshot() {
+        HomeSnapshot snapshot;
+        synchronized (this) {
+            if (!loaded) return;
+            snapshot = new HomeSnapshot(VaultStores.getIndexStamp(context), getSummary(),
+                    getRecent(RECENT_FILES_LIMIT));
+        }
+        snapshot.write(context);
+    }
+
+    // ==================== WRITES ====================
+
+    public void add(CloudFile file) {
+        synchronized (this) {
+            putInMemory(file);
+            pendingWrites.add(file);
+        }
+        CloudFile stored = new CloudFile(file);
+        writeLater(store -> store.add(stored), () -> pendingWrites.remove(file),
+                "Could not store " + file.getName(), null);
+        publish(ChangeType.INSERTED, file.getId());
+    }
+
+    /**
+     * Stores the upload state of {@code file}, which takes the place of the
+     * repository's instance if it is a different one.
+     */
+    public void update(CloudFile file) {
+        update(file, null);
+    }
+
+    /**
+     * Like {@link #update(CloudFile)}, and runs {@code onStored} on the main
+     * thread once the change is in the store, e.g. to drop what else kept
+     * it durable until then. It never runs if the write fails or the file
+     * was removed meanwhile.
+     */
+    public void update(CloudFile file, Runnable onStored) {
+        synchronized (this) {
+            CloudFile previous = filesById.get(file.getId());
+            if (previous == null && loaded) {
+                // Removed meanwhile, e.g. deleted while its upload finished
+                return;
+            }
+            if (previous != null && previous != file) {
+                filesById.put(file.getId(), file);
+                filesByDate.set(filesByDate.indexOf(previous), file);
+                categories.get(file.getCategory()).totalSize += file.getSize() - previous.getSize();
+            }
+            pendingWrites.add(file);
+        }
+        CloudFile stored = new CloudFile(file);
+        writeLater(store -> store.update(stored), () -> pendingWrites.remove(file),
+                "Could not store " + file.getName(), onStored);
+        publish(ChangeType.UPDATED, file.getId());
+    }
+
+    public void remove(String id) {
+        synchronized (this) {
+            CloudFile removed = removeFromMemory(id);
+            if (removed == null && loaded) return;
+            pendingRemovals.add(id);
+        }
+        writeLater(store -> store.delete(id), () -> pendingRemovals.remove(id),
+                "Could not remove " + id + " from the store", null);
+        publish(ChangeType.REMOVED, id);
+    }
+
+    private interface StoreWrite {
+        void writeTo(VaultStore store);
+    }
+
+    /**
+     * Writes to the store on the loader thread, in call order and after any
+     * load already queued, so callers on the main thread never wait on disk.
+     * The memory is already up to date by then. A failed write is retried
+     * on the spot, so later writes cannot overtake it; one that keeps failing
+     * is given up and lives on in memory only until the index is next read.
+     *
+     * @param done     drops the write from the pending ones; runs under the lock
+     * @param onStored posted to the main thread if the write succeeded; may be null
+     */
+    private void writeLater(StoreWrite write, Runnable done, String failure, Runnable onStored) {
+        loader.execute(() -> {
+            boolean stored = false;
+            long delay = STORE_RETRY_DELAY_MS;
+            for (int attempt = 1; !stored && attempt <= STORE_WRITE_ATTEMPTS; attempt++) {
+                try {
+                    write.writeTo(VaultStores.get(context));
+                    stored = true;
+                } catch (RuntimeException e) {
+                    Log.e(TAG, failure + " (attempt " + attempt + " of " + STORE_WRITE_ATTEMPTS + ")", e);
+                    if (attempt < STORE_WRITE_ATTEMPTS && !sleep(delay)) break;
+                    delay *= 2;
+                }
+            }
+            synchronized (this) {
+                done.run();
+            }
+            onWritten();
+            if (stored && onStored != null) mainHandler.post(onStored);
+        });
+    }
+
+    /**
+     * @return false if interrupted
+     */
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void putInMemory(CloudFile file) {
+        removeFromMemory(file.getId());
+        filesById.put(file.getId(), file);
+        filesByDate.add(insertionIndex(file.getDate()), file);
+
+        CategoryIndex index = categories.get(file.getCategory());
+        index.ids.add(categoryInsertionIndex(index.ids, file.getDate()), file.getId());
+        index.totalSize += file.getSize();
+    }
+
+    private CloudFile removeFromMemory(String id) {
+        CloudFile removed = filesById.remove(id);
+        if (removed == null) return null;
+        filesByDate.remove(removed);
+
+        CategoryIndex index = categories.get(removed.getCategory());
+        index.ids.remove(id);
+        index.totalSize -= removed.getSize();
+        return removed;
+    }
+
+    /**
+     * Our own writes change the index files; they must not look like an
+     * outside change to the next {@link #load}.
+     */
+    private void onWritten() {
+        String stamp = VaultStores.getIndexStamp(context);
+        synchronized (this) {
+            if (loaded) loadedStamp = stamp;
+        }
+        mainHandler.removeCallbacks(saveSnapshot);
+        mainHandler.postDelayed(saveSnapshot, SNAPSHOT_DELAY_MS);
+    }
+
+    /**
+     * Position keeping {@link #filesByDate} newest first; ties go first.
+     */
+    private int insertionIndex(long date) {
+        int low = 0;
+        int high = filesByDate.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (filesByDate.get(middle).getDate() > date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Like {@link #insertionIndex} within one category's ids.
+     */
+    private int categoryInsertionIndex(List<String> ids, long date) {
+        int low = 0;
+        int high = ids.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (filesById.get(ids.get(middle)).getDate() > date) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void publish(ChangeType type, String id) {
+        List<String> ids = Collections.singletonList(id);
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            dispatch(type, ids);
+        } else {
+            mainHandler.post(() -> dispatch(type, ids));
+        }
+    }
+
+    private void dispatch(ChangeType type, List<String> ids) {
+        for (Listener listener : listeners) {
+            listener.onVaultChanged(type, ids);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.moorixlabs.televault;
+
+import java.util.List;
+
+/**
+ * Storage engine for the vault index. {@link VaultStores#get} returns the
+ * one selected in settings.
+ *
+ * Callers get their own {@link CloudFile} instances; changing one does not
+ * change the store until it is passed to {@link #update}.
+ */
+public interface VaultStore {
+
+    String ENGINE_ROOM = "room";
+    String ENGINE_JOURNAL = "journal";
+
+    void add(CloudFile file);
+
+    /**
+     * Adds many files as one durable write.
+     */
+    void addAll(List<CloudFile> files);
+
+    /**
+     * Stores the upload state of an existing file: uploaded, file and
+     * message ids, part manifest. Adds the file if it is not stored yet.
+     */
+    void update(CloudFile file);
+
+    void delete(String id);
+
+    /**
+     * All files, newest first.
+     */
+    List<CloudFile> getAll();
+
+    /**
+     * Files of one category, newest first.
+     */
+    List<CloudFile> getByCategory(FileCategory category);
+
+    boolean isEmpty();
+}
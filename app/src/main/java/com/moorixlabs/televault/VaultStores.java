@@ -0,0 +1,72 @@
+package com.moorixlabs.televault;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Hands out the {@link VaultStore} selected in settings. When the selection
+ * changes, the index is copied from the engine that held it into the new one.
+ */
+public final class VaultStores {
+
+    private static final String TAG = "VaultStores";
+
+    private static VaultStore instance;
+    private static String instanceEngine;
+
+    private VaultStores() {
+    }
+
+    public static synchronized VaultStore get(Context context) {
+        Context appContext = context.getApplicationContext();
+        String engine = SettingsUtils.getIndexEngine(appContext);
+        if (instance != null && engine.equals(instanceEngine)) {
+            return instance;
+        }
+
+        VaultStore store = open(appContext, engine);
+        String previousEngine = SettingsUtils.getActiveIndexEngine(appContext);
+        if (!engine.equals(previousEngine)) {
+            VaultStore previous = instance != null && previousEngine.equals(instanceEngine)
+                    ? instance : open(appContext, previousEngine);
+            if (store.isEmpty() && !previous.isEmpty()) {
+                store.addAll(previous.getAll());
+                Log.i(TAG, "Copied the index from " + previousEngine + " to " + engine);
+            }
+            SettingsUtils.setActiveIndexEngine(appContext, engine);
+        }
+
+        instance = store;
+        instanceEngine = engine;
+        return store;
+    }
+
+    /**
+     * Sizes and modification times of the selected engine's files. Changes
+     * whenever the index is written, by this process or anything else.
+     */
+    public static String getIndexStamp(Context context) {
+        String engine = SettingsUtils.getIndexEngine(context);
+        String[] names = VaultStore.ENGINE_JOURNAL.equals(engine)
+                ? new String[]{JournalVaultStore.SNAPSHOT_NAME, JournalVaultStore.LOG_NAME}
+                : new String[]{VaultDatabase.DATABASE_NAME};
+
+        File folder = VaultDatabase.getAppFolder();
+        StringBuilder stamp = new StringBuilder(engine);
+        for (String name : names) {
+            File file = new File(folder, name);
+            stamp.append(';').append(file.length()).append(',').append(file.lastModified());
+        }
+        return stamp.toString();
+    }
+
+    private static VaultStore open(Context context, String engine) {
+        if (VaultStore.ENGINE_JOURNAL.equals(engine)) {
+            File folder = VaultDatabase.getAppFolder();
+            return new JournalVaultStore(folder, TransferManager.getInstance()::submitControl);
+        }
+        return new RoomVaultStore(context);
+    }
+}
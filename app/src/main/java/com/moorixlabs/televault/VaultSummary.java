@@ -0,0 +1,25 @@
+package com.moorixlabs.televault;
+
+/**
+ * The counters on the home screen.
+ */
+public final class VaultSummary {
+
+    public final int imageCount;
+    public final int videoCount;
+    public final int pdfCount;
+    public final int otherCount;
+    public final long totalSize;
+
+    public VaultSummary(int imageCount, int videoCount, int pdfCount, int otherCount, long totalSize) {
+        this.imageCount = imageCount;
+        this.videoCount = videoCount;
+        this.pdfCount = pdfCount;
+        this.otherCount = otherCount;
+        this.totalSize = totalSize;
+    }
+
+    public int getFileCount() {
+        return imageCount + videoCount + pdfCount + otherCount;
+    }
+}
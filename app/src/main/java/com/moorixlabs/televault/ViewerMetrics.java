@@ -0,0 +1,75 @@
+package com.moorixlabs.televault;
+
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How long opened images take to show, from the viewer opening, or the
+ * swipe to them, to the frame that draws them. Logged after every view, like the transfer and
+ * cache metrics.
+ */
+public final class ViewerMetrics {
+
+    private static final String TAG = "ViewerMetrics";
+
+    public enum Stage {
+        FIRST_PIXEL, // Preview or full image, whichever came first
+        FULL_IMAGE,
+        SWIPE        // Full image of a page swiped to; a frame when it was prefetched
+    }
+
+    private static final ViewerMetrics instance = new ViewerMetrics();
+
+    private final AtomicLong[] counts = newCounters();
+    private final AtomicLong[] totalMillis = newCounters();
+    private final AtomicLong[] maxMillis = newCounters();
+
+    private ViewerMetrics() {
+    }
+
+    public static ViewerMetrics getInstance() {
+        return instance;
+    }
+
+    public void record(Stage stage, long millis) {
+        int i = stage.ordinal();
+        counts[i].incrementAndGet();
+        totalMillis[i].addAndGet(millis);
+        maxMillis[i].accumulateAndGet(millis, Math::max);
+        Log.d(TAG, stage.name().toLowerCase(Locale.US) + " after " + millis + " ms; " + getMetricsSummary());
+    }
+
+    public long getCount(Stage stage) {
+        return counts[stage.ordinal()].get();
+    }
+
+    public long getAverageMillis(Stage stage) {
+        long count = getCount(stage);
+        return count == 0 ? 0 : totalMillis[stage.ordinal()].get() / count;
+    }
+
+    public long getMaxMillis(Stage stage) {
+        return maxMillis[stage.ordinal()].get();
+    }
+
+    public String getMetricsSummary() {
+        StringBuilder summary = new StringBuilder("viewer:");
+        for (Stage stage : Stage.values()) {
+            summary.append(' ').append(stage.name().toLowerCase(Locale.US))
+                    .append(' ').append(getCount(stage)).append("x avg ")
+                    .append(getAverageMillis(stage)).append(" ms max ")
+                    .append(getMaxMillis(stage)).append(" ms");
+        }
+        return summary.toString();
+    }
+
+    private static AtomicLong[] newCounters() {
+        AtomicLong[] counters = new AtomicLong[Stage.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicLong();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,146 @@
+package com.moorixlabs.televault;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ContentCache}, on a temporary folder.
+ */
+public class ContentCacheTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("content").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    private File download(ContentCache cache, String name, int size) throws IOException {
+        File file = new File(cache.getStagingFolder(), name + ".part");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void put_servesLaterLookups() throws IOException {
+        ContentCache cache = new ContentCache(root, 1000);
+        assertNull(cache.get("f1"));
+
+        File staged = download(cache, "a", 100);
+        File cached = cache.put("f1", "photo.jpg", staged);
+
+        assertFalse(staged.exists());
+        assertEquals("photo.jpg", cached.getName());
+        assertEquals(cached, cache.get("f1"));
+        assertEquals(100, cache.getTotalBytes());
+        assertTrue(cache.getMetricsSummary().contains("1 hits of 2 lookups"));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws IOException {
+        ContentCache cache = new ContentCache(root, 250);
+        cache.put("f1", "a.bin", download(cache, "a", 100));
+        cache.put("f2", "b.bin", download(cache, "b", 100));
+        cache.get("f1");
+
+        cache.put("f3", "c.bin", download(cache, "c", 100));
+
+        assertNull("Least recently used", cache.get("f2"));
+        assertNotNull(cache.get("f1"));
+        assertNotNull(cache.get("f3"));
+        assertEquals(200, cache.getTotalBytes());
+        assertTrue(cache.getMetricsSummary().contains("1 evicted (100 bytes)"));
+    }
+
+    @Test
+    public void put_keepsNewestFileOverBudget() throws IOException {
+        ContentCache cache = new ContentCache(root, 50);
+        cache.put("f1", "a.bin", download(cache, "a", 40));
+
+        cache.put("f2", "b.bin", download(cache, "b", 100));
+
+        assertNull(cache.get("f1"));
+        assertNotNull(cache.get("f2"));
+    }
+
+    @Test
+    public void put_replacesEarlierCopy() throws IOException {
+        ContentCache cache = new ContentCache(root, 1000);
+        cache.put("f1", "old.bin", download(cache, "a", 100));
+
+        File cached = cache.put("f1", "new.bin", download(cache, "b", 30));
+
+        assertEquals(cached, cache.get("f1"));
+        assertEquals(30, cache.getTotalBytes());
+    }
+
+    @Test
+    public void setMaxBytes_trimsToNewBudget() throws IOException {
+        ContentCache cache = new ContentCache(root, 1000);
+        cache.put("f1", "a.bin", download(cache, "a", 100));
+        cache.put("f2", "b.bin", download(cache, "b", 100));
+
+        cache.setMaxBytes(150);
+
+        assertNull(cache.get("f1"));
+        assertNotNull(cache.get("f2"));
+    }
+
+    @Test
+    public void load_restoresUseOrderFromDisk() throws IOException {
+        ContentCache first = new ContentCache(root, 1000);
+        File a = first.put("f1", "a.bin", download(first, "a", 100));
+        File b = first.put("f2", "b.bin", download(first, "b", 100));
+        // f1 was used last in an earlier run
+        b.getParentFile().setLastModified(1_000_000L);
+        a.getParentFile().setLastModified(2_000_000L);
+
+        ContentCache second = new ContentCache(root, 150);
+
+        assertEquals(100, second.getTotalBytes());
+        assertNull(second.get("f2"));
+        assertEquals(a, second.get("f1"));
+    }
+
+    @Test
+    public void get_forgetsFilesDeletedBehindItsBack() throws IOException {
+        ContentCache cache = new ContentCache(root, 1000);
+        File cached = cache.put("f1", "a.bin", download(cache, "a", 100));
+
+        assertTrue(cached.delete());
+
+        assertNull(cache.get("f1"));
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    public void keyOf_replacesUnsafeCharacters() {
+        assertEquals("AgAD-x_9", ContentCache.keyOf("AgAD-x_9"));
+        assertEquals("a__b", ContentCache.keyOf("a/.b"));
+    }
+}
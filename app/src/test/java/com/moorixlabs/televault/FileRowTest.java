@@ -0,0 +1,244 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Local unit tests for {@link FileRow}.
+ */
+public class FileRowTest {
+
+    private static final DateFormat DATE_FORMAT = new SimpleDateFormat("MMM dd, yyyy", Locale.US);
+
+    private static CloudFile uploading() {
+        return new CloudFile("id-1", "photo.jpg", 42, 1700000000000L, "content://x", false);
+    }
+
+    private static FileRow rowOf(CloudFile file) {
+        return new FileRow(file, 0, DATE_FORMAT);
+    }
+
+    @Test
+    public void snapshot_isNotChangedByLaterEdits() {
+        CloudFile file = uploading();
+        FileRow before = rowOf(file);
+
+        file.setUploaded(true);
+        file.setFileId("f1");
+        FileRow after = rowOf(file);
+
+        assertFalse(before.uploaded);
+        assertFalse("The shared file changed, so its rows differ", before.sameContent(after));
+    }
+
+    @Test
+    public void sameContent_ignoresUploadProgress() {
+        CloudFile file = uploading();
+        FileRow before = rowOf(file);
+
+        file.setUploadProgress(60);
+
+        assertTrue(before.sameContent(rowOf(file)));
+    }
+
+    @Test
+    public void sameContent_seesRenames() {
+        CloudFile file = uploading();
+        CloudFile renamed = new CloudFile("id-1", "holiday.jpg", 42, 1700000000000L, "content://x", false);
+
+        assertFalse(rowOf(file).sameContent(rowOf(renamed)));
+    }
+
+    @Test
+    public void of_reusesRowUntilFileChanges() {
+        CloudFile file = uploading();
+        FileRow row = rowOf(file);
+
+        file.setUploadProgress(30);
+        assertSame(row, FileRow.of(file, row, 0, DATE_FORMAT));
+
+        file.setUploaded(true);
+        assertNotSame(row, FileRow.of(file, row, 0, DATE_FORMAT));
+        assertNotSame("Another file with the same content", row,
+                FileRow.of(uploading(), row, 0, DATE_FORMAT));
+    }
+
+    @Test
+    public void displayFields_pickThumbnailOrIcon() {
+        FileRow photo = rowOf(uploading());
+        assertEquals("content://x", photo.thumbnail);
+
+        FileRow unsaved = rowOf(new CloudFile("id-2", "clip.mp4", 42, 0, "", true));
+        assertNull("No local copy to take a thumbnail from", unsaved.thumbnail);
+
+        FileRow pdf = rowOf(new CloudFile("id-3", "Report.PDF", 2048, 0, "content://y", true));
+        assertNull(pdf.thumbnail);
+        assertEquals(FileIcon.PDF, pdf.icon);
+        assertEquals(FileUtils.formatFileSize(2048), pdf.sizeText);
+        assertEquals(FileIcon.GENERAL, rowOf(new CloudFile("id-4", "notes", 1, 0, "", true)).icon);
+    }
+
+    @Test
+    public void displayFields_preferTelegramThumbnail() {
+        CloudFile photo = new CloudFile("id-5", "photo.jpg", 5_000_000, 0, "content://gone", true, "f5", "9");
+        photo.setThumbFileId("t5");
+        FileRow row = rowOf(photo);
+        assertSame(photo, row.thumbnail);
+        assertEquals("Local copy if Telegram fails", "content://gone", row.fallbackThumbnail);
+
+        CloudFile small = new CloudFile("id-6", "icon.png", 20_000, 0, "content://here", true, "f6", "10");
+        assertEquals("content://here", rowOf(small).thumbnail);
+        assertSame("The file itself if the local copy is gone", small, rowOf(small).fallbackThumbnail);
+
+        CloudFile restored = new CloudFile("id-7", "icon.png", 20_000, 0, "", true, "f7", "11");
+        assertSame(restored, rowOf(restored).thumbnail);
+
+        CloudFile large = new CloudFile("id-8", "scan.png", 5_000_000, 0, "", true, "f8", "12");
+        assertNull("Too big to fetch as a preview", rowOf(large).thumbnail);
+        assertEquals(FileIcon.GENERAL, rowOf(large).icon);
+    }
+
+    @Test
+    public void describes_seesNewThumbnail() {
+        CloudFile file = uploading();
+        FileRow row = rowOf(file);
+
+        file.setThumbFileId("t1");
+
+        assertFalse(row.describes(file));
+    }
+
+    @Test
+    public void bindProgressTo_showsPausedWithoutRunningUpload() {
+        CloudFile file = uploading();
+        // Left over from an earlier attempt; says nothing about the parts sent
+        file.setUploadProgress(0);
+        CountingTarget target = new CountingTarget();
+
+        rowOf(file).bindProgressTo(target, null);
+
+        assertEquals(1, target.paused);
+        assertEquals(-1, target.lastProgress);
+
+        TransferProgress bus = new TransferProgress(() -> { });
+        bus.begin("id-1", 1000).add(400);
+        rowOf(file).bindProgressTo(target, bus.sample(0).get(0));
+
+        assertEquals(1, target.paused);
+        assertEquals(40, target.lastProgress);
+    }
+
+    @Test
+    public void bindTo_allocatesNothing() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        assumeTrue("Allocation counting not supported by this JVM",
+                threads != null && threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        FileRow[] rows = new FileRow[64];
+        for (int i = 0; i < rows.length; i++) {
+            String name = i % 3 == 0 ? "IMG_" + i + ".jpg" : i % 3 == 1 ? "doc" + i + ".pdf" : "song" + i + ".mp3";
+            CloudFile file = new CloudFile("id-" + i, name, 1000L * i, 1700000000000L + i, "content://" + i, i % 2 == 0);
+            file.setUploadProgress(i);
+            rows[i] = rowOf(file);
+        }
+        TransferProgress bus = new TransferProgress(() -> { });
+        bus.begin("id-1", 1000).add(250);
+        TransferProgress.Sample transfer = bus.sample(0).get(0);
+        CountingTarget target = new CountingTarget();
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up, so class loading and compilation are not counted
+        bindAll(rows, transfer, target, 20_000);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        bindAll(rows, transfer, target, 100_000);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(target.calls > 0);
+        // The counter reading itself may cost a few bytes; a per-bind allocation would cost megabytes
+        assertTrue("Binding allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void bindAll(FileRow[] rows, TransferProgress.Sample transfer, CountingTarget target, int binds) {
+        for (int i = 0; i < binds; i++) {
+            FileRow row = rows[i % rows.length];
+            // Rows with and without a running transfer
+            TransferProgress.Sample rowTransfer = (i & 2) == 0 ? transfer : null;
+            if ((i & 1) == 0) {
+                row.bindTo(target, rowTransfer);
+            } else {
+                row.bindProgressTo(target, rowTransfer);
+            }
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+    }
+
+    /**
+     * Stands in for the view holder; only touches what the rows pass in.
+     */
+    private static final class CountingTarget implements FileRow.Target {
+        long calls;
+        long checksum;
+        long paused;
+        int lastProgress = -1;
+
+        @Override
+        public void setName(String name) {
+            calls++;
+            checksum += name.length();
+        }
+
+        @Override
+        public void setSize(String size) {
+            calls++;
+            checksum += size.length();
+        }
+
+        @Override
+        public void setDate(String date) {
+            calls++;
+            checksum += date.length();
+        }
+
+        @Override
+        public void showThumbnail(Object model, Object fallback) {
+            calls++;
+            checksum += model.hashCode();
+        }
+
+        @Override
+        public void showIcon(FileIcon icon) {
+            calls++;
+            checksum += icon.backgroundColor;
+        }
+
+        @Override
+        public void showUploaded() {
+            calls++;
+        }
+
+        @Override
+        public void showUploading(int progress, long bytesPerSecond, long etaMillis) {
+            calls++;
+            checksum += progress + bytesPerSecond + etaMillis;
+            lastProgress = progress;
+        }
+
+        @Override
+        public void showUploadPaused() {
+            calls++;
+            paused++;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link FileSort}.
+ */
+public class FileSortTest {
+
+    private static CloudFile newFile(String id, String name, long size, long date) {
+        return new CloudFile(id, name, size, date, "", true, "file-" + id, "1");
+    }
+
+    private static List<String> ids(List<CloudFile> files) {
+        List<String> ids = new ArrayList<>();
+        for (CloudFile file : files) {
+            ids.add(file.getId());
+        }
+        return ids;
+    }
+
+    private final List<CloudFile> files = new ArrayList<>(Arrays.asList(
+            newFile("a", "beach.jpg", 300, 2000),
+            newFile("b", "Alps.jpg", 100, 3000),
+            newFile("c", "city.jpg", 200, 1000)));
+
+    @Test
+    public void sort_byEachOrder() {
+        FileSort.sort(files, FileSort.NAME_ASC);
+        assertEquals(Arrays.asList("b", "a", "c"), ids(files));
+        FileSort.sort(files, FileSort.NAME_DESC);
+        assertEquals(Arrays.asList("c", "a", "b"), ids(files));
+        FileSort.sort(files, FileSort.NEWEST);
+        assertEquals(Arrays.asList("b", "a", "c"), ids(files));
+        FileSort.sort(files, FileSort.OLDEST);
+        assertEquals(Arrays.asList("c", "a", "b"), ids(files));
+        FileSort.sort(files, FileSort.LARGEST);
+        assertEquals(Arrays.asList("a", "c", "b"), ids(files));
+        FileSort.sort(files, FileSort.SMALLEST);
+        assertEquals(Arrays.asList("b", "c", "a"), ids(files));
+    }
+
+    @Test
+    public void sort_noneKeepsTheOrder() {
+        FileSort.sort(files, FileSort.NONE);
+        assertEquals(Arrays.asList("a", "b", "c"), ids(files));
+        assertNull(FileSort.comparator(42));
+    }
+}
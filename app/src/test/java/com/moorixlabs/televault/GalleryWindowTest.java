@@ -0,0 +1,57 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link GalleryWindow}.
+ */
+public class GalleryWindowTest {
+
+    private static final long PAGE_BYTES = 1080 * 2400 * 4;
+
+    @Test
+    public void positions_currentFirstThenNearestForwardFirst() {
+        assertEquals(Arrays.asList(5, 6, 4, 7, 3), GalleryWindow.positions(5, 50, 2));
+    }
+
+    @Test
+    public void positions_stopAtTheEnds() {
+        assertEquals(Arrays.asList(0, 1, 2), GalleryWindow.positions(0, 50, 2));
+        assertEquals(Arrays.asList(49, 48, 47), GalleryWindow.positions(49, 50, 2));
+        assertEquals(Arrays.asList(0, 1), GalleryWindow.positions(0, 2, 2));
+    }
+
+    @Test
+    public void positions_onlyCurrentWithoutRadius() {
+        assertEquals(Collections.singletonList(3), GalleryWindow.positions(3, 10, 0));
+    }
+
+    @Test
+    public void positions_emptyOutOfRange() {
+        assertTrue(GalleryWindow.positions(-1, 10, 2).isEmpty());
+        assertTrue(GalleryWindow.positions(10, 10, 2).isEmpty());
+        assertTrue(GalleryWindow.positions(0, 0, 2).isEmpty());
+    }
+
+    @Test
+    public void radiusFor_fitsTheBudget() {
+        // Five pages: two each side
+        assertEquals(2, GalleryWindow.radiusFor(5 * PAGE_BYTES, PAGE_BYTES, 2));
+        assertEquals(1, GalleryWindow.radiusFor(4 * PAGE_BYTES, PAGE_BYTES, 2));
+        assertEquals(1, GalleryWindow.radiusFor(3 * PAGE_BYTES, PAGE_BYTES, 2));
+        assertEquals(0, GalleryWindow.radiusFor(2 * PAGE_BYTES, PAGE_BYTES, 2));
+        // Not even the current page fits; it is still shown
+        assertEquals(0, GalleryWindow.radiusFor(PAGE_BYTES / 2, PAGE_BYTES, 2));
+    }
+
+    @Test
+    public void radiusFor_neverBeyondMax() {
+        assertEquals(2, GalleryWindow.radiusFor(100 * PAGE_BYTES, PAGE_BYTES, 2));
+        assertEquals(2, GalleryWindow.radiusFor(PAGE_BYTES, 0, 2));
+    }
+}
@@ -0,0 +1,21 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link ImageDecoding}.
+ */
+public class ImageDecodingTest {
+
+    @Test
+    public void sampleSize_bringsLargerSideWithinLimit() {
+        assertEquals(1, ImageDecoding.sampleSize(2048, 1536, 2048));
+        assertEquals(2, ImageDecoding.sampleSize(4000, 3000, 2048));
+        assertEquals("Portrait", 2, ImageDecoding.sampleSize(3000, 4000, 2048));
+        // 48 MP
+        assertEquals(4, ImageDecoding.sampleSize(8000, 6000, 2048));
+        assertEquals(1, ImageDecoding.sampleSize(10, 10, 2048));
+    }
+}
@@ -0,0 +1,171 @@
+package com.moorixlabs.televault;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Parse and serialize throughput of {@link IndexCodec} on a 100k-row index,
+ * against the split()/String.format() code the old parseFileLine and
+ * rewriteDatabase used. Skipped unless asked for:
+ *
+ *   ./gradlew :app:testDebugUnitTest -Pbenchmark --tests '*IndexCodecBenchmark'
+ */
+public class IndexCodecBenchmark {
+
+    private static final int ROWS = 100_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private List<CloudFile> files;
+    private List<String> rows;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue("Run with -Pbenchmark", Boolean.getBoolean("televault.benchmark"));
+
+        files = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            CloudFile file = new CloudFile("3f2504e0-4f89-11d3-9a0c-" + String.format(Locale.ROOT, "%012d", i),
+                    "IMG_2024_" + i + (i % 3 == 0 ? " (copy).jpg" : ".mp4"),
+                    1_000_000L + i, 1_700_000_000_000L + i,
+                    "content://com.android.providers.media.documents/document/image%3A" + i,
+                    true, "BQACAgQAAxkDAAI" + i, String.valueOf(1000 + i));
+            if (i % 10 == 0) {
+                file.setParts(Arrays.asList(new FilePart(0, 19L << 20, "1", "BQAC0"),
+                        new FilePart(1, 7L << 20, "2", "BQAC1")));
+            }
+            files.add(file);
+        }
+
+        rows = new ArrayList<>(ROWS);
+        for (CloudFile file : files) {
+            rows.add(legacyFormat(file).trim());
+        }
+    }
+
+    @Test
+    public void parse() {
+        IndexCodec.Tokenizer fields = new IndexCodec.Tokenizer();
+        double legacy = measure("parse, split", () -> {
+            int parsed = 0;
+            for (String row : rows) {
+                if (legacyParse(row) != null) parsed++;
+            }
+            assertEquals(ROWS, parsed);
+        });
+        double codec = measure("parse, IndexCodec", () -> {
+            int parsed = 0;
+            for (String row : rows) {
+                if (IndexCodec.readFile(fields.reset(row)) != null) parsed++;
+            }
+            assertEquals(ROWS, parsed);
+        });
+        report("parse", legacy, codec);
+    }
+
+    @Test
+    public void serialize() {
+        CountingStream sink = new CountingStream();
+        IndexCodec.RowWriter writer = new IndexCodec.RowWriter(sink);
+        double legacy = measure("serialize, String.format", () -> {
+            for (CloudFile file : files) {
+                sink.write(legacyFormat(file).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        double codec = measure("serialize, IndexCodec", () -> {
+            for (CloudFile file : files) {
+                IndexCodec.writeFile(writer, file);
+                writer.endRow();
+            }
+            writer.flush();
+        });
+        report("serialize", legacy, codec);
+    }
+
+    // ==================== BASELINE ====================
+
+    private static String legacyFormat(CloudFile file) {
+        return String.format("%s|%s|%d|%d|%s|%b|%s|%s|%s\n",
+                file.getId(), file.getName(), file.getSize(), file.getDate(), file.getPath(),
+                file.isUploaded(), file.getFileId(), file.getMessageId(),
+                FilePart.encodeManifest(file.getParts()));
+    }
+
+    private static CloudFile legacyParse(String line) {
+        String[] parts = line.split("\\|");
+        try {
+            if (parts.length >= 8) {
+                CloudFile file = new CloudFile(parts[0], parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                        parts[4], Boolean.parseBoolean(parts[5]), parts[6], parts[7]);
+                if (parts.length >= 9) {
+                    file.setParts(FilePart.decodeManifest(parts[8]));
+                }
+                return file;
+            } else if (parts.length == 6) {
+                return new CloudFile(parts[0], parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3]),
+                        parts[4], Boolean.parseBoolean(parts[5]));
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return null;
+    }
+
+    // ==================== HARNESS ====================
+
+    private interface Round {
+        void run() throws IOException;
+    }
+
+    /**
+     * @return median rows per second over the measured rounds
+     */
+    private static double measure(String name, Round round) {
+        double[] rowsPerSecond = new double[MEASURED_ROUNDS];
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                round.run();
+            }
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                long start = System.nanoTime();
+                round.run();
+                rowsPerSecond[i] = ROWS / ((System.nanoTime() - start) / 1e9);
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        Arrays.sort(rowsPerSecond);
+        double median = rowsPerSecond[MEASURED_ROUNDS / 2];
+        System.out.printf(Locale.ROOT, "%-26s %,12.0f rows/s%n", name, median);
+        return median;
+    }
+
+    private static void report(String name, double legacy, double codec) {
+        System.out.printf(Locale.ROOT, "%-26s %12.2fx%n", name + " speedup", codec / legacy);
+    }
+
+    private static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
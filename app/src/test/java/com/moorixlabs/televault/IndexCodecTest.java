@@ -0,0 +1,134 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link IndexCodec}.
+ */
+public class IndexCodecTest {
+
+    private static String writeRow(CloudFile file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // A small buffer makes rows cross buffer boundaries
+        IndexCodec.RowWriter writer = new IndexCodec.RowWriter(out, 16);
+        IndexCodec.writeFile(writer, file);
+        writer.endRow();
+        writer.flush();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static CloudFile readRow(String row) {
+        String line = row.endsWith("\n") ? row.substring(0, row.length() - 1) : row;
+        return IndexCodec.readFile(new IndexCodec.Tokenizer().reset(line));
+    }
+
+    @Test
+    public void roundTrip_keepsReservedCharactersInNames() throws IOException {
+        CloudFile file = new CloudFile("id-1", "a|b\\c\nd\re \\p.txt", 42, 1700000000000L,
+                "content://x|y", true, "file|1", "7");
+        file.setParts(Arrays.asList(new FilePart(0, 20, "7", "f0"), new FilePart(1, 22, "8", "f1")));
+        file.setThumbFileId("thumb|1");
+
+        String row = writeRow(file);
+        assertEquals("Only the row's own newline is left", row.length() - 1, row.indexOf('\n'));
+
+        CloudFile read = readRow(row);
+        assertEquals(file.getName(), read.getName());
+        assertEquals(file.getPath(), read.getPath());
+        assertEquals(file.getFileId(), read.getFileId());
+        assertEquals(42, read.getSize());
+        assertEquals(1700000000000L, read.getDate());
+        assertTrue(read.isUploaded());
+        assertEquals(2, read.getParts().size());
+        assertEquals("f1", read.getParts().get(1).getFileId());
+        assertEquals("thumb|1", read.getThumbFileId());
+    }
+
+    @Test
+    public void writer_encodesUtf8LikeGetBytes() throws IOException {
+        String name = "résumé ümlaut 日本語 \uD83D\uDCF7 lone\uD800 end.jpg";
+        CloudFile file = new CloudFile("id", name, 1, 2, "p", false);
+
+        String expected = "id|" + name + "|1|2|p|false||||\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IndexCodec.RowWriter writer = new IndexCodec.RowWriter(out, 16);
+        IndexCodec.writeFile(writer, file);
+        writer.endRow().flush();
+
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void writer_writesExtremeNumbers() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IndexCodec.RowWriter writer = new IndexCodec.RowWriter(out);
+        writer.field(0).field(-7).field(Long.MAX_VALUE).field(Long.MIN_VALUE).endRow().flush();
+
+        String row = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("0|-7|" + Long.MAX_VALUE + "|" + Long.MIN_VALUE + "\n", row);
+
+        IndexCodec.Tokenizer fields = new IndexCodec.Tokenizer().reset(row.trim());
+        assertEquals(0, fields.nextLong());
+        assertEquals(-7, fields.nextLong());
+        assertEquals(Long.MAX_VALUE, fields.nextLong());
+        assertEquals(Long.MIN_VALUE, fields.nextLong());
+        assertEquals(0, fields.remaining());
+    }
+
+    @Test
+    public void readFile_readsLegacyRows() {
+        CloudFile sixFields = readRow("a|photo.jpg|10|20|content://p|false");
+        assertEquals("photo.jpg", sixFields.getName());
+        assertEquals("", sixFields.getFileId());
+
+        CloudFile eightFields = readRow("b|doc.pdf|10|20|content://p|true|file-b|99");
+        assertEquals("file-b", eightFields.getFileId());
+        assertEquals("99", eightFields.getMessageId());
+        assertTrue(eightFields.getParts().isEmpty());
+
+        CloudFile emptyTrailingFields = readRow("c|x.bin|10|20|content://p|false|||");
+        assertEquals("", emptyTrailingFields.getMessageId());
+
+        CloudFile beforeThumbnails = readRow("d|clip.mp4|10|20|content://p|true|file-d|5|");
+        assertEquals("file-d", beforeThumbnails.getFileId());
+        assertFalse(beforeThumbnails.hasThumbnail());
+    }
+
+    @Test
+    public void readFile_rejectsMalformedRows() {
+        assertNull(readRow("a|photo.jpg|10|20|content://p"));
+        assertNull(readRow("a|photo.jpg|ten|20|content://p|false"));
+        assertNull(readRow("a|photo.jpg|99999999999999999999|20|content://p|false"));
+        assertNull(readRow(""));
+    }
+
+    @Test
+    public void tokenizer_keepsUnknownEscapes() {
+        IndexCodec.Tokenizer fields = new IndexCodec.Tokenizer().reset("C:\\dir\\x|b\\");
+
+        assertEquals(2, fields.remaining());
+        assertEquals("C:\\dir\\x", fields.next());
+        assertEquals("b\\", fields.next());
+    }
+
+    @Test
+    public void tokenizer_canBeReusedAcrossRows() {
+        IndexCodec.Tokenizer fields = new IndexCodec.Tokenizer();
+
+        fields.reset("one|two");
+        fields.skip();
+        assertEquals("two", fields.next());
+
+        fields.reset("three");
+        assertEquals(1, fields.remaining());
+        assertEquals("three", fields.next());
+        assertEquals(0, fields.remaining());
+    }
+}
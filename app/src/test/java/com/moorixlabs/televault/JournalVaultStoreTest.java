@@ -0,0 +1,132 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the {@link JournalVaultStore} log records and write failures.
+ */
+public class JournalVaultStoreTest {
+
+    private static CloudFile newFile(String id, String name) {
+        return new CloudFile(id, name, 1234, 1000, "content://source/" + id, false);
+    }
+
+    private static void applyAll(Map<String, CloudFile> files, String log) {
+        for (String record : JournalVaultStore.splitCompleteLines(log.getBytes(StandardCharsets.UTF_8))) {
+            assertTrue(record, JournalVaultStore.applyRecord(files, record));
+        }
+    }
+
+    @Test
+    public void applyRecord_updateChangesOnlyUploadFields() {
+        CloudFile file = newFile("a", "report.pdf");
+        String log = JournalVaultStore.encodeAdd(file);
+        file.setUploaded(true);
+        file.setFileId("file-1");
+        file.setMessageId("42");
+        file.setParts(Collections.singletonList(new FilePart(0, 1234, "42", "file-1")));
+        file.setThumbFileId("thumb-1");
+        log += JournalVaultStore.encodeUpdate(file);
+
+        Map<String, CloudFile> files = new HashMap<>();
+        applyAll(files, log);
+
+        CloudFile stored = files.get("a");
+        assertEquals("report.pdf", stored.getName());
+        assertEquals(1234, stored.getSize());
+        assertTrue(stored.isUploaded());
+        assertEquals("file-1", stored.getFileId());
+        assertEquals("42", stored.getMessageId());
+        assertEquals(1, stored.getParts().size());
+        assertEquals("thumb-1", stored.getThumbFileId());
+    }
+
+    @Test
+    public void applyRecord_readsUpdatesWrittenBeforeThumbnails() {
+        Map<String, CloudFile> files = new HashMap<>();
+        applyAll(files, JournalVaultStore.encodeAdd(newFile("a", "clip.mp4")) + "U|a|true|file-1|42|\n");
+
+        CloudFile stored = files.get("a");
+        assertEquals("file-1", stored.getFileId());
+        assertFalse(stored.hasThumbnail());
+    }
+
+    @Test
+    public void applyRecord_tombstoneRemovesFile() {
+        Map<String, CloudFile> files = new HashMap<>();
+        applyAll(files, JournalVaultStore.encodeAdd(newFile("a", "a.txt"))
+                + JournalVaultStore.encodeAdd(newFile("b", "b.txt"))
+                + "D|a\n");
+
+        assertFalse(files.containsKey("a"));
+        assertTrue(files.containsKey("b"));
+    }
+
+    @Test
+    public void applyRecord_replayOverItsOwnResultChangesNothing() {
+        CloudFile file = newFile("a", "a.txt");
+        String log = JournalVaultStore.encodeAdd(file) + JournalVaultStore.encodeAdd(newFile("b", "b.txt"));
+        file.setUploaded(true);
+        file.setFileId("file-1");
+        log += JournalVaultStore.encodeUpdate(file) + "D|b\n";
+
+        Map<String, CloudFile> files = new HashMap<>();
+        applyAll(files, log);
+        // A compaction interrupted after writing its snapshot replays the same log again
+        applyAll(files, log);
+
+        assertEquals(1, files.size());
+        assertTrue(files.get("a").isUploaded());
+        assertEquals("file-1", files.get("a").getFileId());
+    }
+
+    @Test
+    public void applyRecord_rejectsUnknownOperation() {
+        assertFalse(JournalVaultStore.applyRecord(new HashMap<>(), "X|a"));
+        assertFalse(JournalVaultStore.applyRecord(new HashMap<>(), "garbage"));
+    }
+
+    @Test
+    public void splitCompleteLines_dropsTornLastRecord() {
+        List<String> lines = JournalVaultStore.splitCompleteLines(
+                "D|a\nD|b\nA|c|tor".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, lines.size());
+        assertEquals("D|b", lines.get(1));
+    }
+
+    @Test
+    public void add_failedAppendThrowsAndLeavesNothingInMemory() throws IOException {
+        File folder = Files.createTempDirectory("journal").toFile();
+        // A directory where the log should be cannot be appended to
+        assertTrue(new File(folder, JournalVaultStore.LOG_NAME).mkdir());
+        JournalVaultStore store = new JournalVaultStore(folder, Runnable::run);
+
+        try {
+            store.add(newFile("a", "a.txt"));
+            fail("the failed append must reach the caller");
+        } catch (UncheckedIOException expected) {
+            // As intended
+        }
+        try {
+            store.addAll(Collections.singletonList(newFile("b", "b.txt")));
+            fail("the failed append must reach the caller");
+        } catch (UncheckedIOException expected) {
+            // As intended
+        }
+
+        assertTrue(store.isEmpty());
+    }
+}
@@ -0,0 +1,153 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MultipartBody}. The declared Content-Length must
+ * match the written bytes exactly, otherwise fixed-length streaming fails.
+ */
+public class MultipartBodyTest {
+
+    @Test
+    public void contentLength_matchesWrittenBytes() throws IOException {
+        byte[] document = new byte[12345];
+        MultipartBody body = new MultipartBody("*****boundary*****")
+                .addFormField("chat_id", "-1001234567890")
+                .addFilePart("document", "report.pdf", "application/octet-stream",
+                        new ByteArrayInputStream(document), document.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, null);
+
+        assertEquals(body.getContentLength(), out.size());
+    }
+
+    @Test
+    public void contentLength_countsUtf8FileNamesInBytes() throws IOException {
+        byte[] document = new byte[10];
+        MultipartBody body = new MultipartBody("b")
+                .addFormField("chat_id", "42")
+                .addFilePart("document", "صورة été.jpg", "application/octet-stream",
+                        new ByteArrayInputStream(document), document.length)
+                .addFilePart("thumbnail", "thumb.jpg", "image/jpeg", new byte[]{1, 2, 3});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, null);
+
+        assertEquals(body.getContentLength(), out.size());
+        assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).contains("filename=\"صورة été.jpg\""));
+    }
+
+    @Test
+    public void documentBody_attachesThumbnailUnderItsOwnName() throws IOException {
+        byte[] document = new byte[10];
+        MultipartBody body = TelegramUploader.documentBody("b", "42",
+                new ByteArrayInputStream(document), document.length, "photo.jpg", new byte[]{1, 2, 3});
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, null);
+        String written = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+
+        assertEquals(body.getContentLength(), out.size());
+        // The field points at the file part, and no two parts share a name
+        assertTrue(written.contains("name=\"thumbnail\"\r\n\r\nattach://thumb\r\n"));
+        assertTrue(written.contains("name=\"thumb\"; filename=\"thumbnail.jpg\"\r\nContent-Type: image/jpeg"));
+        assertEquals(written.indexOf("name=\"thumbnail\""), written.lastIndexOf("name=\"thumbnail\""));
+        assertEquals(written.indexOf("name=\"thumb\""), written.lastIndexOf("name=\"thumb\""));
+    }
+
+    @Test
+    public void documentBody_withoutThumbnail() throws IOException {
+        MultipartBody body = TelegramUploader.documentBody("b", "42",
+                new ByteArrayInputStream(new byte[10]), 10, "notes.txt", null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, null);
+
+        assertFalse(new String(out.toByteArray(), StandardCharsets.ISO_8859_1).contains("thumb"));
+    }
+
+    @Test
+    public void writeTo_sendsOnlyDeclaredLength() throws IOException {
+        byte[] source = new byte[100];
+        MultipartBody body = new MultipartBody("b")
+                .addFilePart("document", "part", "application/octet-stream",
+                        new ByteArrayInputStream(source), 40);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, null);
+
+        assertEquals(body.getContentLength(), out.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void writeTo_failsWhenSourceIsShort() throws IOException {
+        MultipartBody body = new MultipartBody("b")
+                .addFilePart("document", "part", "application/octet-stream",
+                        new ByteArrayInputStream(new byte[10]), 20);
+
+        body.writeTo(new ByteArrayOutputStream(), null);
+    }
+
+    @Test
+    public void writeTo_streamsLargeFilesThroughFixedBuffer() throws IOException {
+        final long size = 256L * 1024 * 1024;
+        InputStream zeros = new InputStream() {
+            long remaining = size;
+
+            @Override
+            public int read() {
+                if (remaining == 0) return -1;
+                remaining--;
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (remaining == 0) return -1;
+                int n = (int) Math.min(len, remaining);
+                remaining -= n;
+                return n;
+            }
+        };
+        CountingOutputStream out = new CountingOutputStream();
+        long[] largestChunk = {0};
+
+        MultipartBody body = new MultipartBody("b")
+                .addFormField("chat_id", "42")
+                .addFilePart("document", "archive.bin", "application/octet-stream", zeros, size);
+
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        body.writeTo(out, bytes -> largestChunk[0] = Math.max(largestChunk[0], bytes));
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        assertEquals(body.getContentLength(), out.count);
+        assertTrue("chunks are bounded by the copy buffer", largestChunk[0] <= 8192);
+        // The body is never materialised, so heap growth is far below the file size
+        assertTrue("heap grew by " + (heapAfter - heapBefore), heapAfter - heapBefore < size / 4);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
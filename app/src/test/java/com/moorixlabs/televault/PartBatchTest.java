@@ -0,0 +1,84 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link PartBatch}.
+ */
+public class PartBatchTest {
+
+    @Test
+    public void take_neverRunsMoreThanParallelism() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        PartBatch<Integer> batch = new PartBatch<>(executor, 2);
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            batch.add(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return index;
+            });
+        }
+
+        Set<Integer> results = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(batch.take());
+        }
+        executor.shutdown();
+
+        assertEquals(10, results.size());
+        assertTrue("peak was " + peak.get(), peak.get() <= 2);
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void take_reportsFailedParts() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        PartBatch<Integer> batch = new PartBatch<>(executor, 1);
+        batch.add(() -> {
+            throw new java.io.IOException("network down");
+        });
+        try {
+            batch.take();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelAll_dropsQueuedParts() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        PartBatch<Integer> batch = new PartBatch<>(executor, 1);
+        batch.add(() -> {
+            runs.incrementAndGet();
+            started.countDown();
+            Thread.sleep(10_000);
+            return 0;
+        });
+        batch.add(() -> runs.incrementAndGet());
+
+        started.await();
+        batch.cancelAll();
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+}
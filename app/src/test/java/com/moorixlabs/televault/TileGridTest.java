@@ -0,0 +1,80 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TileGrid}.
+ */
+public class TileGridTest {
+
+    private final List<TileGrid.Tile> tiles = new ArrayList<>();
+
+    @Test
+    public void sampleSizeFor_keepsAtLeastOnePixelPerScreenPixel() {
+        assertEquals(1, TileGrid.sampleSizeFor(2f));
+        assertEquals(1, TileGrid.sampleSizeFor(1f));
+        assertEquals(1, TileGrid.sampleSizeFor(0.6f));
+        assertEquals(2, TileGrid.sampleSizeFor(0.5f));
+        assertEquals(4, TileGrid.sampleSizeFor(0.2f));
+        // A 40000 px panorama fitted to 1080 px
+        assertEquals(32, TileGrid.sampleSizeFor(1080f / 40000));
+    }
+
+    @Test
+    public void visibleTiles_coverOnlyTheView() {
+        // 8000x6000 at 1:1, scrolled 1000 px right and 600 px down, in a 1080x1920 view
+        TileGrid.visibleTiles(8000, 6000, -1000, -600, 1f, 1080, 1920, 1, tiles);
+
+        // Columns 1..4 (512..2559), rows 1..4 (512..2559)
+        assertEquals(16, tiles.size());
+        for (TileGrid.Tile tile : tiles) {
+            assertTrue(tile.right > 1000 && tile.left < 2080);
+            assertTrue(tile.bottom > 600 && tile.top < 2520);
+        }
+    }
+
+    @Test
+    public void visibleTiles_clipToTheImage() {
+        // 1000x700 image drawn at 2x from the top left corner
+        TileGrid.visibleTiles(1000, 700, 0, 0, 2f, 4000, 4000, 1, tiles);
+
+        assertEquals(4, tiles.size());
+        TileGrid.Tile last = tiles.get(3);
+        assertEquals(1000, last.right);
+        assertEquals(700, last.bottom);
+    }
+
+    @Test
+    public void visibleTiles_spanMorePixelsAtHigherSampleSizes() {
+        TileGrid.visibleTiles(8000, 6000, 0, 0, 0.25f, 2000, 1500, 4, tiles);
+
+        // 2048 image pixels per tile
+        assertEquals(12, tiles.size());
+        assertEquals(2048, tiles.get(1).left);
+        Set<Long> keys = new HashSet<>();
+        for (TileGrid.Tile tile : tiles) {
+            assertEquals(4, tile.sampleSize);
+            keys.add(tile.key);
+        }
+        assertEquals("Keys are unique", tiles.size(), keys.size());
+    }
+
+    @Test
+    public void visibleTiles_emptyWhenImageIsOffScreen() {
+        TileGrid.visibleTiles(1000, 1000, 2000, 0, 1f, 1080, 1920, 1, tiles);
+        assertTrue(tiles.isEmpty());
+    }
+
+    @Test
+    public void keyOf_differsBySampleSize() {
+        assertNotEquals(TileGrid.keyOf(1, 3, 4), TileGrid.keyOf(2, 3, 4));
+        assertNotEquals(TileGrid.keyOf(1, 3, 4), TileGrid.keyOf(1, 4, 3));
+    }
+}
@@ -0,0 +1,55 @@
+package com.moorixlabs.televault;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TokenBucket}.
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void reserve_allowsBurstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(3, 1, 0);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(1000, bucket.reserve(0));
+    }
+
+    @Test
+    public void reserve_spacesQueuedCallersAtRefillRate() {
+        TokenBucket bucket = new TokenBucket(1, 2, 0);
+
+        assertEquals(0, bucket.reserve(0));
+        assertEquals(500, bucket.reserve(0));
+        assertEquals(1000, bucket.reserve(0));
+        // Time passing pays back the debt
+        assertEquals(500, bucket.reserve(1000));
+    }
+
+    @Test
+    public void reserve_refillsAfterIdlePeriodButNotBeyondCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 1, 0);
+        bucket.reserve(0);
+        bucket.reserve(0);
+
+        assertEquals(0, bucket.reserve(60_000));
+        assertEquals(0, bucket.reserve(60_000));
+        assertEquals(1000, bucket.reserve(60_000));
+    }
+
+    @Test
+    public void blockUntil_holdsRequestsUntilRetryAfterExpires() {
+        TokenBucket bucket = new TokenBucket(10, 10, 0);
+        bucket.blockUntil(5_000);
+
+        assertEquals(5_000, bucket.getBlockedWait(0));
+        assertEquals(5_000, bucket.reserve(0));
+        // Saved-up burst is gone; the next caller waits one refill interval more
+        assertEquals(5_100, bucket.reserve(0));
+        assertEquals(0, bucket.getBlockedWait(5_000));
+    }
+}
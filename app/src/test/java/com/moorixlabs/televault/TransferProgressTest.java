@@ -0,0 +1,131 @@
+package com.moorixlabs.televault;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link TransferProgress}. Frames are driven by hand.
+ */
+public class TransferProgressTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicInteger frameRequests = new AtomicInteger();
+    private TransferProgress progress;
+
+    @Before
+    public void setUp() {
+        progress = new TransferProgress(frameRequests::incrementAndGet);
+    }
+
+    private static List<String> keys(List<TransferProgress.Sample> samples) {
+        List<String> keys = new ArrayList<>();
+        for (TransferProgress.Sample sample : samples) {
+            keys.add(sample.key);
+        }
+        return keys;
+    }
+
+    @Test
+    public void sample_returnsOnlyTransfersThatMoved() {
+        TransferProgress.Task a = progress.begin("a", 100);
+        progress.begin("b", 100);
+        assertEquals(2, progress.sample(0).size());
+
+        a.add(10);
+        a.add(5);
+        List<TransferProgress.Sample> changed = progress.sample(SECOND / 60);
+        assertEquals(1, changed.size());
+        assertEquals("a", changed.get(0).key);
+        assertEquals(15, changed.get(0).bytes);
+        assertEquals(15, changed.get(0).getPercent());
+
+        assertTrue("Nothing moved", progress.sample(2 * SECOND / 60).isEmpty());
+    }
+
+    @Test
+    public void sample_measuresRateAndTimeLeft() {
+        TransferProgress.Task task = progress.begin("a", 10_000_000);
+        progress.sample(0);
+
+        task.add(1_000_000);
+        TransferProgress.Sample sample = progress.sample(SECOND / 2).get(0);
+        assertEquals("Window not over yet", 0, sample.bytesPerSecond);
+        assertEquals(TransferProgress.UNKNOWN, sample.etaMillis);
+
+        sample = progress.sample(SECOND).get(0);
+        assertEquals(1_000_000, sample.bytesPerSecond);
+        assertEquals(9_000, sample.etaMillis);
+
+        // A stalled second halves the smoothed rate
+        sample = progress.sample(2 * SECOND).get(0);
+        assertEquals(500_000, sample.bytesPerSecond);
+        assertEquals(18_000, sample.etaMillis);
+    }
+
+    @Test
+    public void finish_isReportedOnceWithAllBytes() {
+        TransferProgress.Task task = progress.begin("a", 100);
+        progress.sample(0);
+
+        task.add(100);
+        task.finish();
+        List<TransferProgress.Sample> changed = progress.sample(SECOND / 60);
+        assertEquals(1, changed.size());
+        assertTrue(changed.get(0).finished);
+        assertEquals(100, changed.get(0).getPercent());
+
+        assertTrue(progress.sample(2 * SECOND / 60).isEmpty());
+    }
+
+    @Test
+    public void finish_ofReplacedTransferKeepsTheNewOne() {
+        TransferProgress.Task old = progress.begin("a", 100);
+        TransferProgress.Task retry = progress.begin("a", 100);
+        old.finish();
+        retry.add(40);
+
+        assertEquals(Collections.singletonList("a"), keys(progress.sample(0)));
+        retry.add(10);
+        assertEquals(50, progress.sample(SECOND / 60).get(0).bytes);
+    }
+
+    @Test
+    public void add_fromManyThreadsLosesNothing() throws InterruptedException {
+        TransferProgress.Task task = progress.begin("a", 0);
+        Thread[] workers = new Thread[8];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    task.add(1);
+                    task.addTotalBytes(2);
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        TransferProgress.Sample sample = progress.sample(0).get(0);
+        assertEquals(800_000, sample.bytes);
+        assertEquals(1_600_000, sample.totalBytes);
+        assertEquals(50, sample.getPercent());
+    }
+
+    @Test
+    public void begin_requestsOneFrameForManyTransfers() {
+        for (int i = 0; i < 20; i++) {
+            progress.begin("t" + i, 100).add(i);
+        }
+        assertEquals(1, frameRequests.get());
+        assertEquals(20, progress.sample(0).size());
+    }
+}